@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * {@link Log} which records all messages, so they can be sent back from {@link ConfigDaemon} and replayed into client's log
+ *
+ * @author lzoubek
+ *
+ */
+public class BufferedLog implements Log {
+
+    private final Properties messages = new Properties();
+    private int count = 0;
+
+    private void add(String level, CharSequence content, Throwable error) {
+        StringBuilder message = new StringBuilder();
+        if (content != null) {
+            message.append(content);
+        }
+        if (error != null) {
+            StringWriter sw = new StringWriter();
+            error.printStackTrace(new PrintWriter(sw));
+            message.append(message.length() == 0 ? "" : "\n").append(sw.toString());
+        }
+        synchronized (messages) {
+            messages.setProperty("log." + count + ".level", level);
+            messages.setProperty("log." + count + ".message", message.toString());
+            count++;
+        }
+    }
+
+    /**
+     * copies recorded messages to given properties
+     *
+     * @param target
+     */
+    public void storeTo(Properties target) {
+        synchronized (messages) {
+            target.putAll(messages);
+        }
+    }
+
+    /**
+     * replays messages previously stored by {@link #storeTo(Properties)} into given log
+     *
+     * @param props
+     * @param log
+     */
+    public static void replay(Properties props, Log log) {
+        for (int i = 0; props.getProperty("log." + i + ".level") != null; i++) {
+            String level = props.getProperty("log." + i + ".level");
+            String message = props.getProperty("log." + i + ".message");
+            if ("debug".equals(level)) {
+                log.debug(message);
+            } else if ("info".equals(level)) {
+                log.info(message);
+            } else if ("warn".equals(level)) {
+                log.warn(message);
+            } else {
+                log.error(message);
+            }
+        }
+    }
+
+    public boolean isDebugEnabled() {
+        return true;
+    }
+
+    public void debug(CharSequence content) {
+        add("debug", content, null);
+    }
+
+    public void debug(CharSequence content, Throwable error) {
+        add("debug", content, error);
+    }
+
+    public void debug(Throwable error) {
+        add("debug", null, error);
+    }
+
+    public boolean isInfoEnabled() {
+        return true;
+    }
+
+    public void info(CharSequence content) {
+        add("info", content, null);
+    }
+
+    public void info(CharSequence content, Throwable error) {
+        add("info", content, error);
+    }
+
+    public void info(Throwable error) {
+        add("info", null, error);
+    }
+
+    public boolean isWarnEnabled() {
+        return true;
+    }
+
+    public void warn(CharSequence content) {
+        add("warn", content, null);
+    }
+
+    public void warn(CharSequence content, Throwable error) {
+        add("warn", content, error);
+    }
+
+    public void warn(Throwable error) {
+        add("warn", null, error);
+    }
+
+    public boolean isErrorEnabled() {
+        return true;
+    }
+
+    public void error(CharSequence content) {
+        add("error", content, null);
+    }
+
+    public void error(CharSequence content, Throwable error) {
+        add("error", content, error);
+    }
+
+    public void error(Throwable error) {
+        add("error", null, error);
+    }
+}
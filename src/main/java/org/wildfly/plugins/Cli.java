@@ -0,0 +1,297 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Command line entry point, which allows editing server configuration and installing modules without Maven. It uses the same
+ * {@link RegisterOptions} model as the plugin goals.
+ *
+ * @author lzoubek
+ *
+ */
+public class Cli {
+
+    private static final String USAGE = "Usage: java -jar wildfly-extension-maven-plugin-cli.jar <command> [options]\n"
+            + "Commands:\n"
+            + "  insert --config <file> --select <xpath> (--content <file> | --xml <xml>) [--attribute <name>]\n"
+            + "  remove --config <file> --select <xpath>\n"
+            + "  register-extension --config <file> --module <module id>\n"
+            + "  install-module --zip <file> --modules-home <dir>\n"
+            + "  apply <options.properties>\n"
+            + "  apply <edits.xml|edits.json> --config <file>\n"
+            + "  cds <archive.jsa> <command> [options]   creates AppCDS archive by running given command (requires Java 13+)\n"
+            + "Common options:\n"
+            + "  --backup <file>    where to backup original config, defaults to <config>.old\n"
+            + "  --fail-no-match    fail in case select expression does not match any element\n"
+            + "  --edits <file>     apply also edit operations from given XML or JSON file\n"
+            + "  --daemon <port>    delegate to config daemon listening on given port if available\n"
+            + "  --verbose          print debug messages";
+
+    private final Log log;
+    private final Map<String, String> options = new HashMap<String, String>();
+    private final List<String> arguments = new ArrayList<String>();
+
+    Cli(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                String name = args[i].substring(2);
+                if (isFlag(name) || i + 1 == args.length) {
+                    options.put(name, "true");
+                } else {
+                    options.put(name, args[++i]);
+                }
+            } else {
+                arguments.add(args[i]);
+            }
+        }
+        final boolean verbose = options.containsKey("verbose");
+        this.log = new SystemStreamLog() {
+
+            @Override
+            public boolean isDebugEnabled() {
+                return verbose;
+            }
+
+            @Override
+            public void debug(CharSequence content) {
+                if (verbose) {
+                    super.debug(content);
+                }
+            }
+
+            @Override
+            public void debug(CharSequence content, Throwable error) {
+                if (verbose) {
+                    super.debug(content, error);
+                }
+            }
+
+            @Override
+            public void debug(Throwable error) {
+                if (verbose) {
+                    super.debug(error);
+                }
+            }
+        };
+    }
+
+    private static boolean isFlag(String name) {
+        return "fail-no-match".equals(name) || "verbose".equals(name);
+    }
+
+    private String required(String name) {
+        String value = options.get(name);
+        if (value == null) {
+            throw new UsageException("Option --" + name + " is required");
+        }
+        return value;
+    }
+
+    private File requiredFile(String name) {
+        return new File(required(name)).getAbsoluteFile();
+    }
+
+    /**
+     * executes command given on command line
+     *
+     * @throws Exception
+     */
+    void run() throws Exception {
+        if (arguments.isEmpty()) {
+            throw new UsageException("No command given");
+        }
+        String command = arguments.get(0);
+        if ("install-module".equals(command)) {
+            installModule();
+        } else if ("cds".equals(command)) {
+            createCdsArchive();
+        } else {
+            register(createOptions(command));
+        }
+    }
+
+    private RegisterOptions createOptions(String command) throws Exception {
+        RegisterOptions registerOptions = new RegisterOptions();
+        if ("apply".equals(command)) {
+            if (arguments.size() < 2) {
+                throw new UsageException("apply command requires options or edits file");
+            }
+            if (!arguments.get(1).endsWith(".properties")) {
+                registerOptions.editsFile(new File(arguments.get(1)).getAbsoluteFile());
+            } else {
+                registerOptions = loadOptions(arguments.get(1));
+            }
+        } else if ("insert".equals(command)) {
+            Insert insert = options.containsKey("content") ? new Insert(required("select"), requiredFile("content")) : new Insert(
+                    required("select"), required("xml"));
+            registerOptions.inserts(new Insert[] { insert.withAttribute(options.get("attribute")) });
+        } else if ("remove".equals(command)) {
+            registerOptions.removes(new String[] { required("select") });
+        } else if ("register-extension".equals(command)) {
+            registerOptions.withExtension(required("module"));
+        } else {
+            throw new UsageException("Unknown command [" + command + "]");
+        }
+        if (options.containsKey("edits")) {
+            registerOptions.editsFile(requiredFile("edits"));
+        }
+        if (options.containsKey("config")) {
+            registerOptions.serverConfig(requiredFile("config"));
+        }
+        if (registerOptions.getServerConfig() == null) {
+            throw new UsageException("Option --config is required");
+        }
+        if (options.containsKey("backup")) {
+            registerOptions.serverConfigBackup(requiredFile("backup"));
+        } else if (registerOptions.getServerConfigBackup() == null) {
+            registerOptions.serverConfigBackup(new File(registerOptions.getServerConfig().getAbsolutePath() + ".old"));
+        }
+        if (options.containsKey("fail-no-match")) {
+            registerOptions.failNoMatch(true);
+        }
+        return registerOptions;
+    }
+
+    private static RegisterOptions loadOptions(String file) throws Exception {
+        Properties props = new Properties();
+        InputStream is = new FileInputStream(file);
+        try {
+            props.load(is);
+        } finally {
+            IOUtil.close(is);
+        }
+        return RegisterOptions.fromProperties(props);
+    }
+
+    private DaemonClient daemon() {
+        if (!options.containsKey("daemon")) {
+            return null;
+        }
+        DaemonClient daemon = new DaemonClient(log, Integer.parseInt(options.get("daemon")));
+        if (!daemon.isAvailable()) {
+            log.debug("Config daemon is not listening on port " + options.get("daemon"));
+            return null;
+        }
+        return daemon;
+    }
+
+    private void register(RegisterOptions registerOptions) throws Exception {
+        DaemonClient daemon = daemon();
+        if (daemon != null) {
+            daemon.register(registerOptions);
+        } else {
+            new RegisterExtension(log).register(registerOptions);
+        }
+    }
+
+    private void installModule() throws Exception {
+        File zip = requiredFile("zip");
+        File modulesHome = requiredFile("modules-home");
+        DaemonClient daemon = daemon();
+        if (daemon != null) {
+            log.info("Installed module " + Arrays.toString(daemon.install(zip, modulesHome).getModuleIds()));
+        } else {
+            JBossModule module = JBossModule.readFromZipFile(log, zip);
+            module.installTo(modulesHome);
+            log.info("Installed modules " + module.getModules());
+        }
+    }
+
+    /**
+     * runs given command in a new JVM, which dumps all loaded classes to AppCDS archive on exit. Such archive can be then used by
+     * <code>java -XX:SharedArchiveFile=archive.jsa -jar ...</code> to cut JVM startup time
+     *
+     * @throws Exception
+     */
+    private void createCdsArchive() throws Exception {
+        if (arguments.size() < 3) {
+            throw new UsageException("cds command requires archive file and a command to train it with");
+        }
+        File archive = new File(arguments.get(1)).getAbsoluteFile();
+        String jar = new File(Cli.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getAbsolutePath());
+        cmd.add("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath());
+        cmd.add("-cp");
+        cmd.add(jar);
+        cmd.add(Cli.class.getName());
+        cmd.addAll(arguments.subList(2, arguments.size()));
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            cmd.add("--" + option.getKey());
+            if (!isFlag(option.getKey())) {
+                cmd.add(option.getValue());
+            }
+        }
+        log.debug("Running " + cmd);
+        int exit = new ProcessBuilder(cmd).inheritIO().start().waitFor();
+        if (exit != 0) {
+            throw new Exception("Training command " + arguments.subList(2, arguments.size()) + " failed with exit code " + exit);
+        }
+        log.info("AppCDS archive written to [" + archive.getAbsolutePath() + "], use it by java -XX:SharedArchiveFile=" + archive.getAbsolutePath()
+                + " -jar " + jar);
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0 || Arrays.asList(args).contains("--help")) {
+            System.out.println(USAGE);
+            return;
+        }
+        Cli cli = new Cli(args);
+        try {
+            cli.run();
+        } catch (UsageException e) {
+            cli.log.error(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (Exception e) {
+            cli.log.error(e.getMessage());
+            cli.log.debug(e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * thrown when command line is not valid
+     */
+    private static class UsageException extends IllegalArgumentException {
+
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Long-living process, which keeps parsed server configuration files and installed modules in memory and applies edit requests sent by
+ * {@link DaemonClient}. Daemon listens on loopback interface only and processes requests one by one.
+ * <p>
+ * On start, daemon writes a random token to a file readable by current user only (see {@link #getTokenFile(File, int)}). Every request has to
+ * carry this token, so other local users cannot make daemon write files on their behalf. Requests are limited in size and have to be sent within
+ * {@link #READ_TIMEOUT}, documents kept in memory are limited to a fraction of heap.
+ *
+ * Usage: <code>ConfigDaemon [start|stop|ping|register &lt;options.properties&gt;] [--port N]</code>
+ *
+ * @author lzoubek
+ *
+ */
+public class ConfigDaemon {
+
+    public static final int DEFAULT_PORT = 9737;
+    /**
+     * time (ms) given to client to send its request
+     */
+    static final int READ_TIMEOUT = 10000;
+    /**
+     * maximum size of request or response
+     */
+    static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    private final Log log;
+    private final int port;
+    private final File tokenDir;
+    private final DocumentCache documents = new DocumentCache(8, Runtime.getRuntime().maxMemory() / 4);
+    private final Map<File, InstalledModule> modules = new HashMap<File, InstalledModule>();
+    private final ExecutorService background = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "config-daemon-preload");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private ServerSocket server;
+    private volatile boolean running;
+    private byte[] token;
+    private int readTimeout = READ_TIMEOUT;
+
+    public ConfigDaemon(Log log, int port) {
+        this(log, port, getDefaultTokenDir());
+    }
+
+    /**
+     *
+     * @param log
+     * @param port
+     * @param tokenDir directory to write token file to
+     */
+    public ConfigDaemon(Log log, int port, File tokenDir) {
+        this.log = log;
+        this.port = port;
+        this.tokenDir = tokenDir;
+    }
+
+    /**
+     *
+     * @return directory token files are written to by default (<code>~/.wildfly-extension</code>)
+     */
+    public static File getDefaultTokenDir() {
+        return new File(System.getProperty("user.home"), ".wildfly-extension");
+    }
+
+    /**
+     *
+     * @param tokenDir
+     * @param port
+     * @return file holding token of daemon listening on given port
+     */
+    public static File getTokenFile(File tokenDir, int port) {
+        return new File(tokenDir, "daemon-" + port + ".token");
+    }
+
+    /**
+     * binds daemon to its port and writes token file
+     *
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getByName(null));
+        try {
+            writeToken();
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        running = true;
+        log.info("Config daemon listening on " + server.getLocalSocketAddress() + ", token written to "
+                + getTokenFile(tokenDir, getPort()).getAbsolutePath());
+    }
+
+    void readTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     *
+     * @return port daemon is bound to (useful in case daemon was created with port 0)
+     */
+    public int getPort() {
+        return server == null ? port : server.getLocalPort();
+    }
+
+    /**
+     * serves requests until {@link #stop()} is called or shutdown request is received
+     */
+    public void serve() {
+        while (running) {
+            Socket socket = null;
+            try {
+                socket = server.accept();
+                // single client must not block the daemon
+                socket.setSoTimeout(readTimeout);
+                Properties request = readMessage(socket.getInputStream());
+                Properties response = handle(request);
+                writeMessage(socket.getOutputStream(), response);
+            } catch (SocketTimeoutException e) {
+                log.warn("Client did not send request within " + readTimeout + "ms, closing connection");
+            } catch (SocketException e) {
+                if (running) {
+                    log.error("Failed to serve request", e);
+                }
+            } catch (IOException e) {
+                log.error("Failed to serve request", e);
+            } finally {
+                if (socket != null) {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        }
+        background.shutdownNow();
+        try {
+            Files.deleteIfExists(getTokenFile(tokenDir, getPort()).toPath());
+        } catch (IOException e) {
+            log.warn("Failed to remove token file : " + e.getMessage());
+        }
+        log.info("Config daemon stopped");
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (server != null) {
+                server.close();
+            }
+        } catch (IOException e) {
+        }
+    }
+
+    Properties handle(Properties request) {
+        Properties response = new Properties();
+        BufferedLog requestLog = new BufferedLog();
+        String operation = request.getProperty("operation");
+        if (!isAuthorized(request.getProperty("token"))) {
+            log.warn("Rejected " + operation + " request with invalid token");
+            response.setProperty("status", "error");
+            response.setProperty("message", "Request token does not match " + getTokenFile(tokenDir, getPort()).getAbsolutePath());
+            return response;
+        }
+        try {
+            if ("ping".equals(operation)) {
+                // nothing to do
+            } else if ("shutdown".equals(operation)) {
+                running = false;
+                server.close();
+            } else if ("install".equals(operation)) {
+                install(requestLog, new File(request.getProperty("moduleZip")), new File(request.getProperty("modulesHome")), response);
+            } else if ("register".equals(operation)) {
+                register(requestLog, RegisterOptions.fromProperties(request));
+            } else {
+                throw new IllegalArgumentException("Unknown operation [" + operation + "]");
+            }
+            response.setProperty("status", "ok");
+        } catch (Exception e) {
+            requestLog.debug(e);
+            response.setProperty("status", "error");
+            response.setProperty("message", String.valueOf(e.getMessage()));
+        }
+        requestLog.storeTo(response);
+        return response;
+    }
+
+    private void install(Log requestLog, File moduleZip, File modulesHome, Properties response) throws Exception {
+        InstalledModule installed = modules.get(moduleZip.getAbsoluteFile());
+        if (installed == null || !installed.isUpToDate(moduleZip, modulesHome)) {
+            JBossModule module = JBossModule.readFromZipFile(requestLog, moduleZip);
+            List<File> files = module.installTo(modulesHome);
+            installed = new InstalledModule(moduleZip, modulesHome, module.getExtensionModuleIds(), files);
+            modules.put(moduleZip.getAbsoluteFile(), installed);
+        } else {
+            requestLog.info("Module [" + moduleZip.getAbsolutePath() + "] did not change since it was installed to [" + modulesHome.getAbsolutePath()
+                    + "], skipping");
+        }
+        StringBuilder moduleIds = new StringBuilder();
+        for (String moduleId : installed.moduleIds) {
+            moduleIds.append(moduleIds.length() == 0 ? "" : ",").append(moduleId);
+        }
+        response.setProperty("moduleId", moduleIds.toString());
+        for (int i = 0; i < installed.files.size(); i++) {
+            response.setProperty("installed." + i, installed.files.get(i).getAbsolutePath());
+        }
+    }
+
+    private void register(Log requestLog, RegisterOptions options) throws Exception {
+        new RegisterExtension(requestLog).documentCache(documents).register(options);
+        // new server configuration is very likely to be the source of next request
+        final File serverConfig = options.getServerConfig();
+        background.submit(new Runnable() {
+
+            public void run() {
+                try {
+                    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                    factory.setNamespaceAware(true);
+                    documents.preload(factory.newDocumentBuilder(), serverConfig);
+                } catch (Exception e) {
+                    log.debug("Failed to preload " + serverConfig.getAbsolutePath(), e);
+                }
+            }
+        });
+    }
+
+    private boolean isAuthorized(String requestToken) {
+        if (requestToken == null) {
+            return false;
+        }
+        try {
+            return MessageDigest.isEqual(token, requestToken.getBytes("UTF-8"));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * generates new token and writes it to token file, which is readable and writable by owner only
+     */
+    private void writeToken() throws IOException {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(String.format("%02x", b));
+        }
+        token = hex.toString().getBytes("UTF-8");
+        Path file = getTokenFile(tokenDir, getPort()).toPath();
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (!tokenDir.isDirectory()) {
+            if (posix) {
+                Files.createDirectories(tokenDir.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(tokenDir.toPath());
+            }
+        }
+        Files.deleteIfExists(file);
+        if (posix) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            File f = Files.createFile(file).toFile();
+            f.setReadable(false, false);
+            f.setWritable(false, false);
+            if (!f.setReadable(true, true) || !f.setWritable(true, true)) {
+                throw new IOException("Failed to restrict permissions of " + f.getAbsolutePath());
+            }
+        }
+        Files.write(file, token);
+    }
+
+    static void writeMessage(OutputStream out, Properties message) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        message.store(bos, null);
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(bos.size());
+        bos.writeTo(dos);
+        dos.flush();
+    }
+
+    static Properties readMessage(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        int size = dis.readInt();
+        if (size < 0 || size > MAX_MESSAGE_SIZE) {
+            throw new IOException("Message size " + size + " is out of bounds (max " + MAX_MESSAGE_SIZE + " bytes)");
+        }
+        byte[] content = new byte[size];
+        dis.readFully(content);
+        Properties message = new Properties();
+        message.load(new ByteArrayInputStream(content));
+        return message;
+    }
+
+    /**
+     * remembers what was installed from a module zip, so repeated install requests of unchanged zip can be skipped
+     */
+    private static class InstalledModule {
+        private final long lastModified;
+        private final long length;
+        private final File modulesHome;
+        private final List<String> moduleIds;
+        private final List<File> files;
+
+        InstalledModule(File moduleZip, File modulesHome, List<String> moduleIds, List<File> files) {
+            this.lastModified = moduleZip.lastModified();
+            this.length = moduleZip.length();
+            this.modulesHome = modulesHome.getAbsoluteFile();
+            this.moduleIds = moduleIds;
+            this.files = files;
+        }
+
+        boolean isUpToDate(File moduleZip, File modulesHome) {
+            if (moduleZip.lastModified() != lastModified || moduleZip.length() != length || !this.modulesHome.equals(modulesHome.getAbsoluteFile())) {
+                return false;
+            }
+            for (File f : files) {
+                if (!f.exists()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Log log = new SystemStreamLog();
+        int port = DEFAULT_PORT;
+        String command = "start";
+        String optionsFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--port".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if ("register".equals(args[i]) && i + 1 < args.length) {
+                command = args[i];
+                optionsFile = args[++i];
+            } else {
+                command = args[i];
+            }
+        }
+        if ("start".equals(command)) {
+            ConfigDaemon daemon = new ConfigDaemon(log, port);
+            daemon.start();
+            daemon.serve();
+            return;
+        }
+        DaemonClient client = new DaemonClient(log, port);
+        if ("stop".equals(command)) {
+            client.shutdown();
+        } else if ("ping".equals(command)) {
+            if (!client.isAvailable()) {
+                log.error("Config daemon is not listening on port " + port);
+                System.exit(1);
+            }
+            log.info("Config daemon is listening on port " + port);
+        } else if ("register".equals(command)) {
+            Properties props = new Properties();
+            InputStream is = new FileInputStream(optionsFile);
+            try {
+                props.load(is);
+            } finally {
+                IOUtil.close(is);
+            }
+            client.register(RegisterOptions.fromProperties(props));
+        } else {
+            log.error("Usage: ConfigDaemon [start|stop|ping|register <options.properties>] [--port N]");
+            System.exit(2);
+        }
+    }
+}
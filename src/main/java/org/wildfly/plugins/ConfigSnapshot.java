@@ -0,0 +1,387 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+/**
+ * On-disk snapshot of parsed XML document. Snapshot is a compact binary tree, names and namespaces of elements and attributes are stored once in
+ * a string table and referenced by index. Snapshot records size and SHA-256 digest of the file it was parsed from, so it's only used as long as
+ * the file content stays the same, otherwise the file is parsed again and snapshot is replaced.
+ * <p>
+ * Documents containing DTD or entity references are never snapshotted.
+ *
+ * @author lzoubek
+ *
+ */
+public class ConfigSnapshot {
+
+    private static final int MAGIC = 0x57465853;
+    private static final int VERSION = 1;
+    private static final byte END = 0;
+    private static final byte ELEMENT = 1;
+    private static final byte TEXT = 2;
+    private static final byte CDATA = 3;
+    private static final byte COMMENT = 4;
+    private static final byte PROCESSING_INSTRUCTION = 5;
+
+    private final File snapshotFile;
+    private int hits;
+    private int misses;
+
+    /**
+     *
+     * @param snapshotFile file to store snapshot in
+     */
+    public ConfigSnapshot(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     *
+     * @return number of documents loaded from snapshot
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     *
+     * @return number of documents which had to be parsed
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * loads document from snapshot in case it was taken from the same content as given file has, otherwise parses given file and stores
+     * snapshot of it
+     *
+     * @param builder builder used to create document (and to parse file in case snapshot is not valid)
+     * @param file
+     * @return document owned by caller
+     * @throws Exception when file cannot be parsed
+     */
+    public synchronized Document parse(DocumentBuilder builder, File file) throws Exception {
+        byte[] content = read(file);
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+        Document doc = load(builder, content.length, digest);
+        if (doc != null) {
+            hits++;
+        } else {
+            misses++;
+            doc = builder.parse(new ByteArrayInputStream(content), file.toURI().toString());
+            try {
+                store(doc, content.length, digest);
+            } catch (IOException e) {
+                // snapshot is optional, file will be parsed again next time
+                snapshotFile.delete();
+            }
+        }
+        doc.setDocumentURI(file.toURI().toString());
+        return doc;
+    }
+
+    /**
+     * @return document or null in case snapshot does not exist, cannot be read, is corrupted or was taken from different content
+     */
+    private Document load(DocumentBuilder builder, long size, byte[] digest) throws IOException {
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 65536));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != size) {
+                return null;
+            }
+            byte[] storedDigest = new byte[in.readUnsignedByte()];
+            in.readFully(storedDigest);
+            if (!Arrays.equals(digest, storedDigest)) {
+                return null;
+            }
+            String[] strings = new String[readInt(in)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            Document doc = builder.newDocument();
+            doc.setXmlStandalone(in.readBoolean());
+            doc.setXmlVersion(strings[readInt(in)]);
+            readChildren(in, strings, doc, doc);
+            return doc;
+        } catch (IOException e) {
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        } finally {
+            IOUtil.close(in);
+        }
+    }
+
+    private static void readChildren(DataInputStream in, String[] strings, Document doc, Node parent) throws IOException {
+        for (byte type = in.readByte(); type != END; type = in.readByte()) {
+            switch (type) {
+            case ELEMENT:
+                Element element = doc.createElementNS(readName(in, strings), strings[readInt(in)]);
+                for (int attributes = readInt(in); attributes > 0; attributes--) {
+                    element.setAttributeNS(readName(in, strings), strings[readInt(in)], readString(in));
+                }
+                readChildren(in, strings, doc, element);
+                parent.appendChild(element);
+                break;
+            case TEXT:
+                parent.appendChild(doc.createTextNode(readString(in)));
+                break;
+            case CDATA:
+                parent.appendChild(doc.createCDATASection(readString(in)));
+                break;
+            case COMMENT:
+                parent.appendChild(doc.createComment(readString(in)));
+                break;
+            case PROCESSING_INSTRUCTION:
+                parent.appendChild(doc.createProcessingInstruction(strings[readInt(in)], readString(in)));
+                break;
+            default:
+                throw new IOException("Unknown node type " + type);
+            }
+        }
+    }
+
+    private static String readName(DataInputStream in, String[] strings) throws IOException {
+        int index = readInt(in);
+        return index == 0 ? null : strings[index - 1];
+    }
+
+    /**
+     * writes snapshot of given document, snapshot is written to temporary file first, so it's never left half-written
+     */
+    private void store(Document doc, long size, byte[] digest) throws IOException {
+        StringTable strings = new StringTable();
+        strings.index(doc.getXmlVersion());
+        if (!collect(doc, strings)) {
+            return;
+        }
+        File parent = snapshotFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory " + parent.getAbsolutePath());
+        }
+        File tmp = new File(parent, snapshotFile.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeByte(digest.length);
+            out.write(digest);
+            writeInt(out, strings.values.size());
+            for (String value : strings.values) {
+                out.writeUTF(value);
+            }
+            out.writeBoolean(doc.getXmlStandalone());
+            writeInt(out, strings.index(doc.getXmlVersion()));
+            writeChildren(out, strings, doc);
+        } finally {
+            IOUtil.close(out);
+        }
+        if (snapshotFile.exists() && !snapshotFile.delete() || !tmp.renameTo(snapshotFile)) {
+            tmp.delete();
+            throw new IOException("Failed to write " + snapshotFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * adds all names of given node's subtree to string table
+     *
+     * @return false in case subtree contains node which cannot be snapshotted
+     */
+    private static boolean collect(Node node, StringTable strings) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            switch (child.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                strings.index(child.getNamespaceURI());
+                strings.index(child.getNodeName());
+                NamedNodeMap attributes = child.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    strings.index(attributes.item(i).getNamespaceURI());
+                    strings.index(attributes.item(i).getNodeName());
+                }
+                if (!collect(child, strings)) {
+                    return false;
+                }
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                strings.index(((ProcessingInstruction) child).getTarget());
+                break;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+            case Node.COMMENT_NODE:
+                break;
+            default:
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeChildren(DataOutputStream out, StringTable strings, Node node) throws IOException {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            switch (child.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                out.writeByte(ELEMENT);
+                writeName(out, strings, child.getNamespaceURI());
+                writeInt(out, strings.index(child.getNodeName()));
+                NamedNodeMap attributes = child.getAttributes();
+                writeInt(out, attributes.getLength());
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Attr attr = (Attr) attributes.item(i);
+                    writeName(out, strings, attr.getNamespaceURI());
+                    writeInt(out, strings.index(attr.getNodeName()));
+                    writeString(out, attr.getValue());
+                }
+                writeChildren(out, strings, child);
+                break;
+            case Node.TEXT_NODE:
+                out.writeByte(TEXT);
+                writeString(out, child.getNodeValue());
+                break;
+            case Node.CDATA_SECTION_NODE:
+                out.writeByte(CDATA);
+                writeString(out, child.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                out.writeByte(COMMENT);
+                writeString(out, child.getNodeValue());
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                out.writeByte(PROCESSING_INSTRUCTION);
+                writeInt(out, strings.index(((ProcessingInstruction) child).getTarget()));
+                writeString(out, child.getNodeValue());
+                break;
+            default:
+                // filtered out by collect()
+            }
+        }
+        out.writeByte(END);
+    }
+
+    /**
+     * writes index of given name shifted by 1, so 0 stands for null
+     */
+    private static void writeName(DataOutputStream out, StringTable strings, String name) throws IOException {
+        writeInt(out, name == null ? 0 : strings.index(name) + 1);
+    }
+
+    /**
+     * writes non-negative int in 7 bits per byte
+     */
+    private static void writeInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed int");
+    }
+
+    /**
+     * writes string of any length (unlike {@link DataOutputStream#writeUTF(String)})
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        writeInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static byte[] read(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            return IOUtil.toByteArray(fis);
+        } finally {
+            IOUtil.close(fis);
+        }
+    }
+
+    /**
+     * element and attribute names, namespaces and processing instruction targets in order of first appearance
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private final List<String> values = new ArrayList<String>();
+
+        int index(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = values.size();
+                indexes.put(value, index);
+                values.add(value);
+            }
+            return index;
+        }
+    }
+}
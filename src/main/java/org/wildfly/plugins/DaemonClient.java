@@ -0,0 +1,175 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Thin client sending edit requests to {@link ConfigDaemon}. Messages logged by daemon while processing request are replayed into client's log.
+ * Each request carries token read from daemon's token file, so client has to run as the same user as daemon.
+ *
+ * @author lzoubek
+ *
+ */
+public class DaemonClient {
+
+    private static final int CONNECT_TIMEOUT = 500;
+
+    private final Log log;
+    private final int port;
+    private final File tokenDir;
+
+    public DaemonClient(Log log, int port) {
+        this(log, port, ConfigDaemon.getDefaultTokenDir());
+    }
+
+    /**
+     *
+     * @param log
+     * @param port
+     * @param tokenDir directory daemon wrote its token file to
+     */
+    public DaemonClient(Log log, int port, File tokenDir) {
+        this.log = log;
+        this.port = port;
+        this.tokenDir = tokenDir;
+    }
+
+    /**
+     *
+     * @return true if daemon is listening on our port
+     */
+    public boolean isAvailable() {
+        try {
+            send(operation("ping"));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * installs module by daemon, see {@link JBossModule#installTo(File)}
+     *
+     * @param moduleZip
+     * @param modulesHome
+     * @return id of installed module and list of installed files
+     * @throws Exception
+     */
+    public InstallResult install(File moduleZip, File modulesHome) throws Exception {
+        Properties request = operation("install");
+        request.setProperty("moduleZip", moduleZip.getAbsolutePath());
+        request.setProperty("modulesHome", modulesHome.getAbsolutePath());
+        Properties response = send(request);
+        List<File> installed = new ArrayList<File>();
+        for (int i = 0; response.getProperty("installed." + i) != null; i++) {
+            installed.add(new File(response.getProperty("installed." + i)));
+        }
+        return new InstallResult(response.getProperty("moduleId"), installed);
+    }
+
+    /**
+     * registers extension by daemon, see {@link RegisterExtension#register(RegisterOptions)}
+     *
+     * @param options
+     * @throws Exception
+     */
+    public void register(RegisterOptions options) throws Exception {
+        Properties request = options.toProperties();
+        request.setProperty("operation", "register");
+        send(request);
+    }
+
+    public void shutdown() throws Exception {
+        send(operation("shutdown"));
+    }
+
+    private static Properties operation(String name) {
+        Properties request = new Properties();
+        request.setProperty("operation", name);
+        return request;
+    }
+
+    private Properties send(Properties request) throws Exception {
+        File tokenFile = ConfigDaemon.getTokenFile(tokenDir, port);
+        if (!tokenFile.canRead()) {
+            throw new IOException("Config daemon token file " + tokenFile.getAbsolutePath() + " cannot be read");
+        }
+        request.setProperty("token", new String(Files.readAllBytes(tokenFile.toPath()), "UTF-8").trim());
+        Socket socket = new Socket();
+        Properties response = null;
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getByName(null), port), CONNECT_TIMEOUT);
+            ConfigDaemon.writeMessage(socket.getOutputStream(), request);
+            response = ConfigDaemon.readMessage(socket.getInputStream());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+            }
+        }
+        BufferedLog.replay(response, log);
+        if (!"ok".equals(response.getProperty("status"))) {
+            throw new Exception("Config daemon failed to process " + request.getProperty("operation") + " request : " + response.getProperty("message"));
+        }
+        return response;
+    }
+
+    /**
+     * result of module installation performed by daemon
+     */
+    public static class InstallResult {
+        private final String[] moduleIds;
+        private final List<File> installedFiles;
+
+        InstallResult(String moduleId, List<File> installedFiles) {
+            this.moduleIds = moduleId == null || moduleId.isEmpty() ? new String[0] : moduleId.split(",");
+            this.installedFiles = installedFiles;
+        }
+
+        public String getModuleId() {
+            return moduleIds.length == 0 ? null : moduleIds[0];
+        }
+
+        /**
+         * 
+         * @return all extension modules installed module zip provides
+         */
+        public String[] getModuleIds() {
+            return moduleIds;
+        }
+
+        public List<File> getInstalledFiles() {
+            return installedFiles;
+        }
+    }
+}
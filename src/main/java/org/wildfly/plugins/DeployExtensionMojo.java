@@ -22,7 +22,14 @@
 package org.wildfly.plugins;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
@@ -38,7 +45,6 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
-import org.codehaus.plexus.util.FileUtils;
 
 import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
 
@@ -55,6 +61,25 @@ public class DeployExtensionMojo extends AbstractMojo {
     @Parameter()
     private File moduleZip;
 
+    /**
+     * Location of exploded JBoss module directory (containing module.xml and its resources), used when neither {@link #moduleZip} nor
+     * {@link #artifact} is set.
+     * 
+     * @since 0.8
+     */
+    @Parameter()
+    private File moduleDir;
+
+    /**
+     * How files of {@link #moduleDir} are installed. <strong>COPY</strong> copies them, <strong>LINK</strong> creates hard links (falling back to
+     * copying when {@link #moduleDir} is on different filesystem than {@link #modulesHome}), which makes installation of large modules almost
+     * instant. Note that linked files share content with {@link #moduleDir}.
+     * 
+     * @since 0.8
+     */
+    @Parameter(property = "wildfly-extension.installMode", defaultValue = "COPY")
+    private JBossModule.InstallMode installMode;
+
     /**
      * An alternative to {@link #moduleZip} parameter. This parameter has higher priority than {@link #moduleZip}. A string of the form
      * groupId:artifactId:version[:packaging][:classifier]. Default for packaging is <strong>zip</strong> and for classifier it's
@@ -116,6 +141,15 @@ public class DeployExtensionMojo extends AbstractMojo {
     @Parameter
     private Insert[] edit;
 
+    /**
+     * XML or JSON file with list of edit operations (insert, remove or any {@link EditOperation}), applied together with {@link #edit}. Suitable for large (generated) sets of edits,
+     * which would not be practical to keep in pom.xml. See {@link EditsFileReader} for file format.
+     * 
+     * @since 0.8
+     */
+    @Parameter
+    private File editsFile;
+
     /**
      * Fails the build if any of <strong>select</strong> expression within {@link #edit} does not match any node (thus it wouldn't update
      * {@link #serverConfig})
@@ -123,6 +157,43 @@ public class DeployExtensionMojo extends AbstractMojo {
     @Parameter
     private boolean failNoMatch;
 
+    /**
+     * Whether to prepare edits of {@link #serverConfig} concurrently. Select and identity expressions are compiled and inserted contents are
+     * instantiated in parallel (inserts are partitioned by top-level element they select), changes to {@link #serverConfig} are still applied
+     * serially. Useful for large configurations (i.e. domain.xml with many profiles) with hundreds of edits.
+     * 
+     * @since 0.8
+     */
+    @Parameter(property = "wildfly-extension.parallelEdits", defaultValue = "false")
+    private boolean parallelEdits;
+
+    /**
+     * Whether to keep formatting and comments of {@link #serverConfig}. Only elements changed by edits are written, everything else is copied from
+     * original file as is. Whole file is written (and formatted) in case it's not supported (i.e. it has DTD or is not UTF-8/ISO-8859-1 encoded).
+     * 
+     * @since 0.8
+     */
+    @Parameter(property = "wildfly-extension.preserveFormatting", defaultValue = "false")
+    private boolean preserveFormatting;
+
+    /**
+     * Heap (in MB) available for parsed {@link #serverConfig}. Size of parsed document is estimated from file sizes, when it does not fit, insert
+     * contents are streamed into it instead of being parsed separately. By default, heap available to Maven is used.
+     * 
+     * @since 0.8
+     */
+    @Parameter(property = "wildfly-extension.memoryBudget", defaultValue = "0")
+    private long memoryBudget;
+
+    /**
+     * Time (in seconds) editing {@link #serverConfig} should take. When it's spent by the time edits are applied, {@link #serverConfig} is written
+     * without formatting. No limit by default.
+     * 
+     * @since 0.8
+     */
+    @Parameter(property = "wildfly-extension.timeBudget", defaultValue = "0")
+    private long timeBudget;
+
     /**
      * Whether to skip the execution of this mojo.
      */
@@ -135,6 +206,61 @@ public class DeployExtensionMojo extends AbstractMojo {
     @Parameter(defaultValue = "true")
     private boolean registerExtension;
 
+    /**
+     * Port of {@link ConfigDaemon} running on local machine. When set, module installation and configuration update are delegated to the daemon,
+     * which keeps parsed server configuration and installed modules in memory between deploys. If daemon is not listening on this port, deploy
+     * is done within Maven process.
+     * 
+     * @since 0.8
+     */
+    @Parameter(property = "wildfly-extension.daemonPort", defaultValue = "0")
+    private int daemonPort;
+
+    /**
+     * Whether to install module and update server configuration as a single transaction. All files are staged within {@link #jbossHome} first and
+     * moved to their locations only once everything was prepared successfully. In case any move fails, already moved files are restored, so failed
+     * deploy leaves server untouched. Config daemon is not used in this mode.
+     * 
+     * @since 0.8
+     */
+    @Parameter(property = "wildfly-extension.transactional", defaultValue = "false")
+    private boolean transactional;
+
+    /**
+     * Whether to skip module installation in case module installed in {@link #modulesHome} matches {@link #moduleZip} (see verify goal).
+     * 
+     * @since 0.8
+     */
+    @Parameter(property = "wildfly-extension.skipUnchanged", defaultValue = "false")
+    private boolean skipUnchanged;
+
+    /**
+     * Whether to check module before it is installed. Resource roots listed in module.xml must exist within module, otherwise deploy fails. Module
+     * dependencies are looked up in module repository (<code>modules</code> directory of {@link #jbossHome}) and missing ones are reported.
+     * 
+     * @since 0.8
+     */
+    @Parameter(property = "wildfly-extension.checkModule", defaultValue = "true")
+    private boolean checkModule;
+
+    /**
+     * Location of module repository index used by {@link #checkModule}. Repository is indexed once, later deploys only rescan directories which
+     * changed since.
+     * 
+     * @since 0.8
+     */
+    @Parameter(defaultValue = "${project.build.directory}/wildfly-extension-modules.index")
+    private File moduleIndex;
+
+    /**
+     * File to keep binary snapshot of parsed {@link #serverConfig} in. When set, repeated deploys against unchanged {@link #serverConfig} load it
+     * from snapshot instead of parsing it. Snapshot is validated by size and SHA-256 digest of {@link #serverConfig} and replaced once it changes.
+     * 
+     * @since 0.8
+     */
+    @Parameter(property = "wildfly-extension.configSnapshot")
+    private File configSnapshot;
+
     @Component
     private MavenProject mavenProject;
 
@@ -156,34 +282,113 @@ public class DeployExtensionMojo extends AbstractMojo {
             getLog().info("Skipped execution");
             return;
         }
+        deploy();
+    }
+
+    /**
+     * validates configuration and resolves module zip
+     * 
+     * @throws MojoExecutionException
+     * @throws MojoFailureException
+     */
+    protected void prepare() throws MojoExecutionException, MojoFailureException {
         validConfiguration();
 
         if (artifact != null) {
             moduleZip = resolveArtifactModuleZip();
         }
+    }
 
-        JBossModule module = null;
+    /**
+     * installs module and updates server configuration
+     * 
+     * @return options server configuration was updated with
+     * @throws MojoExecutionException
+     * @throws MojoFailureException
+     */
+    protected RegisterOptions deploy() throws MojoExecutionException, MojoFailureException {
+        prepare();
+
+        DaemonClient daemon = null;
+        FileTransaction tx = null;
+        if (transactional) {
+            tx = new FileTransaction(getLog(), jbossHome);
+        } else if (daemonPort > 0) {
+            daemon = new DaemonClient(getLog(), daemonPort);
+            if (!daemon.isAvailable()) {
+                getLog().info("Config daemon is not listening on port " + daemonPort + ", deploying within Maven process");
+                daemon = null;
+            }
+        }
+
+        String[] moduleIds = null;
         RegisterOptions resolvedOptions = new RegisterOptions();
+        ExecutorService executor = null;
+        Future<List<File>> extraction = null;
         if (moduleZip != null) {
-            try {
-                module = JBossModule.readFromZipFile(getLog(), moduleZip);
-            } catch (Exception e) {
-                throw new MojoFailureException("Failed to read module : " + e.getMessage());
+            List<File> installedFiles;
+            if (daemon != null) {
+                try {
+                    checkModule(JBossModule.readFromZipFile(getLog(), moduleZip));
+                } catch (MojoFailureException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new MojoFailureException("Failed to read module : " + e.getMessage());
+                }
+                try {
+                    DaemonClient.InstallResult result = daemon.install(moduleZip, modulesHomeAbsolute);
+                    moduleIds = result.getModuleIds();
+                    installedFiles = result.getInstalledFiles();
+                } catch (Exception e) {
+                    throw new MojoFailureException("Failed to install module : " + e.getMessage());
+                }
+                resolvedOptions = resolveBundledXmlSnippets(installedFiles);
+            } else {
+                JBossModule module = null;
+                try {
+                    module = JBossModule.readFromZipFile(getLog(), moduleZip);
+                    moduleIds = module.getExtensionModuleIds().toArray(new String[0]);
+                    resolvedOptions = resolveBundledXmlSnippets(module);
+                } catch (Exception e) {
+                    throw new MojoFailureException("Failed to read module : " + e.getMessage());
+                }
+                checkModule(module);
+                // snippets were read from zip, so module is extracted while server configuration is being edited
+                final JBossModule extracted = module;
+                final FileTransaction moduleTx = tx;
+                executor = Executors.newSingleThreadExecutor();
+                extraction = executor.submit(new Callable<List<File>>() {
+
+                    public List<File> call() throws Exception {
+                        ModuleVerifier.Report report = skipUnchanged ? new ModuleVerifier(getLog()).verify(moduleZip, modulesHomeAbsolute) : null;
+                        if (report != null && report.isClean()) {
+                            getLog().info("Module [" + moduleZip.getAbsolutePath() + "] is already installed, skipping");
+                            return report.getFiles();
+                        }
+                        return extracted.installTo(modulesHomeAbsolute, moduleTx);
+                    }
+                });
             }
-
+        } else if (moduleDir != null) {
+            List<File> installedFiles;
             try {
-                List<File> installedFiles = module.installTo(modulesHomeAbsolute);
-                resolvedOptions = resolveBundledXmlSnippets(installedFiles);
-
+                JBossModule module = JBossModule.readFromDir(getLog(), moduleDir).installMode(installMode);
+                moduleIds = new String[] { module.getModuleId() };
+                checkModule(module);
+                installedFiles = module.installTo(modulesHomeAbsolute, tx);
             } catch (Exception e) {
+                if (tx != null) {
+                    tx.rollback();
+                }
                 throw new MojoFailureException("Failed to install module : " + e.getMessage());
             }
+            resolvedOptions = resolveBundledXmlSnippets(installedFiles);
         }
 
         try {
             RegisterOptions options = new RegisterOptions();
-            if (module != null) {
-                options.withExtension(module.getModuleId());
+            if (moduleIds != null) {
+                options.withExtensions(moduleIds);
             }
 
             options.serverConfig(serverConfigAbsolute)
@@ -192,34 +397,203 @@ public class DeployExtensionMojo extends AbstractMojo {
                 .socketBinding(socketBinding)
                 .socketBindingGroups(socketBindingGroups)
                 .inserts(edit)
+                .editsFile(editsFile)
                 .registerExtension(registerExtension)
-                .failNoMatch(failNoMatch);
+                .failNoMatch(failNoMatch)
+                .parallel(parallelEdits)
+                .preserveFormatting(preserveFormatting)
+                .memoryBudget(memoryBudget * 1024 * 1024)
+                .timeBudget(timeBudget * 1000);
 
             resolvedOptions.extend(options);
             getLog().debug("Proceeding with \n" + resolvedOptions);
-            register(resolvedOptions);
-
+            if (daemon != null) {
+                daemon.register(resolvedOptions);
+            } else {
+                RegisterExtension register = new RegisterExtension(getLog()).configSnapshot(configSnapshot);
+                RegisterOptions registerOptions = resolvedOptions;
+                if (tx != null) {
+                    // extracted files are staged by background thread, all of them must be staged before they are resolved
+                    awaitExtraction(extraction);
+                    extraction = null;
+                    // bundled snippets of module directory are not at their location until commit
+                    registerOptions = new RegisterOptions().extend(resolvedOptions).subsystem(tx.resolve(resolvedOptions.getSubsystem()))
+                            .socketBinding(tx.resolve(resolvedOptions.getSocketBinding()));
+                }
+                XmlConfigBuilder builder;
+                try {
+                    builder = register.prepare(registerOptions);
+                } catch (Exception e) {
+                    // module extraction must finish before anything is rolled back, but its failure must not hide this one
+                    try {
+                        awaitExtraction(extraction);
+                    } catch (MojoFailureException extractionFailure) {
+                        e.addSuppressed(extractionFailure);
+                    }
+                    throw e;
+                }
+                awaitExtraction(extraction);
+                register.commit(registerOptions, builder, tx);
+                if (tx != null) {
+                    tx.commit();
+                    getLog().info("Module and server configuration committed");
+                }
+            }
+        } catch (MojoFailureException e) {
+            if (tx != null) {
+                tx.rollback();
+            }
+            throw e;
         } catch (Exception e) {
+            if (tx != null) {
+                tx.rollback();
+            }
             getLog().error(e);
             throw new MojoFailureException("Failed to update server configuration file : " + e.getMessage());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        return resolvedOptions;
+    }
+
+    /**
+     * checks resource roots and dependencies of given module (see {@link #checkModule})
+     * 
+     * @param module
+     * @throws MojoFailureException when module resource root is missing
+     */
+    private void checkModule(JBossModule module) throws MojoFailureException {
+        if (!checkModule) {
+            return;
+        }
+        try {
+            List<String> missing = ModuleRepositoryIndex.findMissingResourceRoots(module);
+            if (!missing.isEmpty()) {
+                for (String problem : missing) {
+                    getLog().error(problem);
+                }
+                throw new MojoFailureException("Module [" + module.getRoot().getAbsolutePath() + "] is not valid, " + missing.size()
+                        + " resource root(s) missing");
+            }
+            File repository = new File(jbossHome, "modules");
+            ModuleRepositoryIndex index = new ModuleRepositoryIndex(getLog(), repository.isDirectory() ? repository : modulesHomeAbsolute, moduleIndex)
+                    .load();
+            for (String problem : index.findMissingDependencies(module)) {
+                getLog().warn(problem);
+            }
+        } catch (IOException e) {
+            throw new MojoFailureException("Failed to check module : " + e.getMessage());
         }
     }
+
+    /**
+     * waits for module extraction running in background
+     * 
+     * @param extraction can be null
+     * @return installed files
+     * @throws MojoFailureException when extraction failed
+     */
+    private List<File> awaitExtraction(Future<List<File>> extraction) throws MojoFailureException {
+        if (extraction == null) {
+            return null;
+        }
+        try {
+            return extraction.get();
+        } catch (ExecutionException e) {
+            throw new MojoFailureException("Failed to install module : " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while installing module");
+        }
+    }
+
+    /**
+     * 
+     * @return module zip file (resolved from {@link #artifact} in case it was set) or null
+     */
+    protected File getModuleZip() {
+        return moduleZip;
+    }
+
+    protected File getModulesHomeAbsolute() {
+        return modulesHomeAbsolute;
+    }
+
+    protected boolean isSkipDeploy() {
+        return skipDeploy;
+    }
     
-    private RegisterOptions resolveBundledXmlSnippets(List<File> installedFiles) {
+    /**
+     * reads subsystem and socket-binding snippets bundled in module zip straight from the zip
+     * 
+     * @param module
+     * @return options with snippets set
+     * @throws IOException when snippets cannot be read or zip bundles more than one snippet of a kind
+     */
+    protected RegisterOptions resolveBundledXmlSnippets(JBossModule module) throws IOException {
         RegisterOptions options = new RegisterOptions();
+        String subsystemEntry = findBundledSnippet(module.findEntries("subsystem-snippet.xml"), subsystem);
+        if (subsystemEntry != null) {
+            getLog().debug("Found packaged subsystem snippet " + subsystemEntry);
+            options.subsystemXml(module.readEntry(subsystemEntry));
+        }
+        String socketBindingEntry = findBundledSnippet(module.findEntries("socket-binding-snippet.xml"), socketBinding);
+        if (socketBindingEntry != null) {
+            getLog().debug("Found packaged socket-binding snippet " + socketBindingEntry);
+            options.socketBindingXml(module.readEntry(socketBindingEntry));
+        }
+        return options;
+    }
+
+    private RegisterOptions resolveBundledXmlSnippets(List<File> installedFiles) throws MojoFailureException {
+        List<String> subsystems = new ArrayList<String>();
+        List<String> socketBindings = new ArrayList<String>();
         for (File file : installedFiles) {
             if ("subsystem-snippet.xml".equals(file.getName())) {
-                getLog().debug("Found packaged subsystem snippet "+file.getAbsolutePath());
-                options.subsystem(file);
+                subsystems.add(file.getAbsolutePath());
             }
             if ("socket-binding-snippet.xml".equals(file.getName())) {
-                getLog().debug("Found packaged socket-binding snippet "+file.getAbsolutePath());
-                options.socketBinding(file);
+                socketBindings.add(file.getAbsolutePath());
+            }
+        }
+        RegisterOptions options = new RegisterOptions();
+        try {
+            String subsystemFile = findBundledSnippet(subsystems, subsystem);
+            if (subsystemFile != null) {
+                getLog().debug("Found packaged subsystem snippet " + subsystemFile);
+                options.subsystem(new File(subsystemFile));
             }
+            String socketBindingFile = findBundledSnippet(socketBindings, socketBinding);
+            if (socketBindingFile != null) {
+                getLog().debug("Found packaged socket-binding snippet " + socketBindingFile);
+                options.socketBinding(new File(socketBindingFile));
+            }
+        } catch (IOException e) {
+            throw new MojoFailureException("Failed to read module : " + e.getMessage());
         }
         return options;
     }
 
+    /**
+     * only one snippet of a kind can be applied, several modules bundling it would register just one of them
+     * 
+     * @param found snippets found in all modules
+     * @param configured snippet configured explicitly, it overrides bundled ones
+     * @return the only snippet or null
+     * @throws IOException when more than one snippet was found and none was configured
+     */
+    private static String findBundledSnippet(List<String> found, File configured) throws IOException {
+        if (configured != null) {
+            return null;
+        }
+        if (found.size() > 1) {
+            throw new IOException("Module bundles more than one snippet " + found + ", configure snippet explicitly");
+        }
+        return found.isEmpty() ? null : found.get(0);
+    }
+
     private File resolveArtifactModuleZip() throws MojoExecutionException {
         if (this.artifact == null) {
             return null;
@@ -268,12 +642,7 @@ public class DeployExtensionMojo extends AbstractMojo {
     }
 
     public void register(RegisterOptions options) throws Exception {
-        File serverConfig = options.getServerConfig();
-        getLog().info(
-                "Backup original serverConfig [" + serverConfig.getAbsolutePath() + "] to [" + options.getServerConfigBackup().getAbsolutePath()
-                        + "]");
-        FileUtils.copyFile(serverConfig, options.getServerConfigBackup());
-        new RegisterExtension(getLog()).register(options);
+        new RegisterExtension(getLog()).configSnapshot(configSnapshot).register(options);
     }
 
     private void validConfiguration() throws MojoFailureException {
@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.w3c.dom.Document;
+
+/**
+ * Cache of parsed XML documents keyed by digest of their content. Cached documents are never handed out, callers always get their own copy, which
+ * is much cheaper than parsing the file again. Least recently used documents are evicted once cache holds too many documents or their estimated
+ * heap size (see {@link XmlConfigBuilder#DOM_COST_FACTOR}) exceeds the limit. Documents larger than the limit are not cached at all.
+ *
+ * @author lzoubek
+ *
+ */
+public class DocumentCache {
+
+    private final Map<String, Cached> documents = new LinkedHashMap<String, Cached>(16, 0.75f, true);
+    private final int maxEntries;
+    private final long maxBytes;
+    private long bytes;
+
+    /**
+     *
+     * @param maxEntries maximum number of cached documents
+     * @param maxBytes maximum estimated heap size of cached documents
+     */
+    public DocumentCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * parses given file or returns copy of document previously parsed from the same content
+     *
+     * @param builder builder used in case document is not cached
+     * @param file
+     * @return document owned by caller
+     * @throws Exception
+     */
+    public Document parse(DocumentBuilder builder, File file) throws Exception {
+        byte[] content = read(file);
+        String key = digest(content);
+        synchronized (documents) {
+            Cached cached = documents.get(key);
+            if (cached != null) {
+                return (Document) cached.document.cloneNode(true);
+            }
+        }
+        Document doc = builder.parse(new ByteArrayInputStream(content), file.toURI().toString());
+        long weight = weigh(content);
+        if (weight <= maxBytes) {
+            put(key, (Document) doc.cloneNode(true), weight);
+        }
+        return doc;
+    }
+
+    /**
+     * parses given file into cache unless it's already there
+     *
+     * @param builder
+     * @param file
+     * @throws Exception
+     */
+    public void preload(DocumentBuilder builder, File file) throws Exception {
+        byte[] content = read(file);
+        String key = digest(content);
+        synchronized (documents) {
+            if (documents.containsKey(key)) {
+                return;
+            }
+        }
+        long weight = weigh(content);
+        if (weight > maxBytes) {
+            return;
+        }
+        put(key, builder.parse(new ByteArrayInputStream(content), file.toURI().toString()), weight);
+    }
+
+    public int size() {
+        synchronized (documents) {
+            return documents.size();
+        }
+    }
+
+    /**
+     *
+     * @return estimated heap size of cached documents
+     */
+    public long getBytes() {
+        synchronized (documents) {
+            return bytes;
+        }
+    }
+
+    private void put(String key, Document doc, long weight) {
+        synchronized (documents) {
+            Cached previous = documents.put(key, new Cached(doc, weight));
+            bytes += weight - (previous == null ? 0 : previous.weight);
+            Iterator<Cached> eldest = documents.values().iterator();
+            while ((documents.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+                bytes -= eldest.next().weight;
+                eldest.remove();
+            }
+        }
+    }
+
+    private static long weigh(byte[] content) {
+        return (long) content.length * XmlConfigBuilder.DOM_COST_FACTOR;
+    }
+
+    private static byte[] read(File file) throws Exception {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            return IOUtil.toByteArray(fis);
+        } finally {
+            IOUtil.close(fis);
+        }
+    }
+
+    private static String digest(byte[] content) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        return new BigInteger(1, md.digest(content)).toString(16);
+    }
+
+    private static class Cached {
+        private final Document document;
+        private final long weight;
+
+        Cached(Document document, long weight) {
+            this.document = document;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.Properties;
+
+/**
+ * An edit item represents 1 edit action to be performed on target XML document. {@link EditOperation} of given name is applied to each element
+ * evaluated by {@link #select} expression.
+ * Edit can be made conditional by {@link #when} and/or {@link #unless} expressions, see {@link Insert}.
+ *
+ * @author lzoubek
+ *
+ */
+public class Edit {
+
+    private String select;
+    private String operation;
+    private Properties parameters = new Properties();
+    private String when;
+    private String unless;
+
+    public Edit() {
+
+    }
+
+    public Edit(String select, String operation) {
+        this.select = select;
+        this.operation = operation;
+    }
+
+    /**
+     * sets parameter of operation
+     *
+     * @param name
+     * @param value
+     * @return this
+     */
+    public Edit with(String name, String value) {
+        parameters.setProperty(name, value);
+        return this;
+    }
+
+    public Edit withWhen(String when) {
+        this.when = when;
+        return this;
+    }
+
+    public Edit withUnless(String unless) {
+        this.unless = unless;
+        return this;
+    }
+
+    public String getWhen() {
+        return when;
+    }
+
+    public void setWhen(String when) {
+        this.when = when;
+    }
+
+    public String getUnless() {
+        return unless;
+    }
+
+    public void setUnless(String unless) {
+        this.unless = unless;
+    }
+
+    public void setSelect(String select) {
+        this.select = select;
+    }
+
+    public String getSelect() {
+        return select;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setParameters(Properties parameters) {
+        this.parameters = parameters;
+    }
+
+    public Properties getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.valueOf(operation)).append(" [select=" + select);
+        for (String name : parameters.stringPropertyNames()) {
+            sb.append(", ").append(name).append("=").append(parameters.getProperty(name));
+        }
+        if (when != null) {
+            sb.append(", when=").append(when);
+        }
+        if (unless != null) {
+            sb.append(", unless=").append(unless);
+        }
+        return sb.append("]").toString();
+    }
+}
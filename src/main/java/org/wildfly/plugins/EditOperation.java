@@ -0,0 +1,87 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.w3c.dom.Element;
+
+/**
+ * Edit operation applied to elements of server configuration selected by {@link Edit#getSelect()}. Operations are discovered by
+ * {@link java.util.ServiceLoader}, to add one, implement this interface and list implementation in
+ * <code>META-INF/services/org.wildfly.plugins.EditOperation</code> of a jar on plugin's classpath. Operation must be stateless, single instance
+ * is shared by all edits.
+ *
+ * @author lzoubek
+ *
+ */
+public interface EditOperation {
+
+    /**
+     *
+     * @return name of operation as used in edits file (i.e. <code>set-attribute</code>)
+     */
+    String getName();
+
+    /**
+     * checks given parameters before anything is applied
+     *
+     * @param parameters
+     * @throws IllegalArgumentException when parameters are not valid
+     */
+    void validate(Properties parameters) throws IllegalArgumentException;
+
+    /**
+     * applies operation to single selected element
+     *
+     * @param element
+     * @param parameters
+     * @param context
+     * @throws Exception
+     */
+    void apply(Element element, Properties parameters, Context context) throws Exception;
+
+    /**
+     * services of {@link XmlConfigBuilder} available to operations
+     */
+    interface Context {
+
+        /**
+         * evaluates given expression against edited document, element names are resolved the same way as in {@link Edit#getSelect()}
+         *
+         * @param expression
+         * @return selected elements
+         * @throws Exception
+         */
+        List<Element> select(String expression) throws Exception;
+
+        /**
+         * parses given XML snippet, each snippet is parsed only once
+         *
+         * @param xml
+         * @return root element of parsed snippet, it must be imported (not adopted) to edited document
+         * @throws Exception
+         */
+        Element parse(String xml) throws Exception;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of {@link EditOperation}s found by {@link ServiceLoader}. Operations are looked up only once.
+ *
+ * @author lzoubek
+ *
+ */
+public final class EditOperations {
+
+    private static volatile Map<String, EditOperation> operations;
+
+    private EditOperations() {
+
+    }
+
+    /**
+     *
+     * @param name
+     * @return operation of given name or null
+     */
+    public static EditOperation get(String name) {
+        return all().get(name);
+    }
+
+    /**
+     *
+     * @return all operations by name
+     */
+    public static Map<String, EditOperation> all() {
+        Map<String, EditOperation> result = operations;
+        if (result == null) {
+            result = new HashMap<String, EditOperation>();
+            for (EditOperation operation : ServiceLoader.load(EditOperation.class, EditOperation.class.getClassLoader())) {
+                result.put(operation.getName(), operation);
+            }
+            result = Collections.unmodifiableMap(result);
+            operations = result;
+        }
+        return result;
+    }
+}
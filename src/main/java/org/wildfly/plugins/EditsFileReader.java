@@ -0,0 +1,466 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Reads list of edit operations from XML or JSON file and feeds them into {@link XmlConfigBuilder} one by one, as they are parsed. File format is
+ * chosen by file extension (<code>.json</code> or anything else for XML). Relative <code>content</code> paths are resolved against directory of
+ * edits file. All invalid operations are reported at once together with line numbers they were defined at. Besides <code>insert</code> and
+ * <code>remove</code>, any {@link EditOperation} can be used, all its attributes except <code>select</code> are passed to it as parameters
+ * (inline content as <code>xml</code>). Any operation can be made conditional by <code>when</code> and <code>unless</code> expressions.
+ *
+ * XML format:
+ *
+ * <pre>
+ * &lt;edits&gt;
+ *   &lt;insert select="/server/profile" content="subsystem.xml"/&gt;
+ *   &lt;insert select="/server/socket-binding-group" attribute="name"&gt;
+ *     &lt;socket-binding name="foo" port="12345"/&gt;
+ *   &lt;/insert&gt;
+ *   &lt;insert select="/server/profile/subsystem/datasources" content="datasource.xml" attribute="jndi-name"&gt;
+ *     &lt;parameters tenant="a"/&gt;
+ *     &lt;parameters tenant="b"/&gt;
+ *   &lt;/insert&gt;
+ *   &lt;remove select="/server/socket-binding-group/socket-binding[@name='bar']" unless="/server/profile/subsystem[@name='bar']"/&gt;
+ *   &lt;set-attribute select="/server/socket-binding-group/socket-binding[@name='http']" name="port" value="8081"/&gt;
+ * &lt;/edits&gt;
+ * </pre>
+ *
+ * JSON format:
+ *
+ * <pre>
+ * [
+ *   {"op": "insert", "select": "/server/profile", "content": "subsystem.xml"},
+ *   {"op": "insert", "select": "/server/socket-binding-group", "attribute": "name", "xml": "&lt;socket-binding name='foo' port='12345'/&gt;"},
+ *   {"op": "insert", "select": "/server/profile/subsystem/datasources", "content": "datasource.xml", "parameters": [{"tenant": "a"}, {"tenant": "b"}]},
+ *   {"op": "remove", "select": "/server/socket-binding-group/socket-binding[@name='bar']", "unless": "/server/profile/subsystem[@name='bar']"},
+ *   {"op": "set-attribute", "select": "/server/socket-binding-group/socket-binding[@name='http']", "name": "port", "value": "8081"}
+ * ]
+ * </pre>
+ *
+ * @author lzoubek
+ *
+ */
+public class EditsFileReader {
+
+    private final Log log;
+    private File file;
+    private XmlConfigBuilder builder;
+    private List<String> errors;
+    private int count;
+
+    public EditsFileReader(Log log) {
+        this.log = log;
+    }
+
+    /**
+     * reads all edit operations from given file into builder
+     *
+     * @param file edits file
+     * @param builder
+     * @return number of operations read
+     * @throws IllegalArgumentException listing all invalid operations
+     * @throws Exception when file cannot be read or parsed
+     */
+    public int read(File file, XmlConfigBuilder builder) throws Exception {
+        this.file = file;
+        this.builder = builder;
+        this.errors = new ArrayList<String>();
+        this.count = 0;
+        InputStream is = new FileInputStream(file);
+        try {
+            if (file.getName().toLowerCase().endsWith(".json")) {
+                readJson(new BufferedReader(new InputStreamReader(is, "UTF-8")));
+            } else {
+                readXml(is);
+            }
+        } finally {
+            IOUtil.close(is);
+        }
+        if (!errors.isEmpty()) {
+            StringBuilder sb = new StringBuilder("Edits file [" + file.getAbsolutePath() + "] contains " + errors.size() + " invalid operation(s):");
+            for (String error : errors) {
+                sb.append("\n  ").append(error);
+            }
+            throw new IllegalArgumentException(sb.toString());
+        }
+        if (log != null) {
+            log.debug("Read " + count + " operations from [" + file.getAbsolutePath() + "]");
+        }
+        return count;
+    }
+
+    /**
+     * validates given operation and passes it to builder
+     *
+     * @param line line where operation was defined
+     * @param op operation name
+     * @param values operation attributes
+     * @param parameters insert template parameters
+     */
+    private void operation(int line, String op, Map<String, String> values, List<Properties> parameters) {
+        count++;
+        try {
+            String select = values.get("select");
+            if (select == null || select.trim().isEmpty()) {
+                throw new IllegalArgumentException("select is required");
+            }
+            if ("insert".equals(op)) {
+                Insert insert = new Insert();
+                insert.setSelect(select);
+                insert.setXml(values.get("xml"));
+                insert.setAttribute(values.get("attribute"));
+                insert.setWhen(values.get("when"));
+                insert.setUnless(values.get("unless"));
+                if (!parameters.isEmpty()) {
+                    insert.setParameters(parameters.toArray(new Properties[parameters.size()]));
+                }
+                if (values.get("content") != null) {
+                    File content = new File(values.get("content"));
+                    insert.setContent(content.isAbsolute() ? content : new File(file.getAbsoluteFile().getParentFile(), values.get("content")));
+                }
+                builder.insert(insert);
+            } else if ("remove".equals(op)) {
+                builder.remove(new Remove(select).withWhen(values.get("when")).withUnless(values.get("unless")));
+            } else if (EditOperations.get(op) != null) {
+                Edit edit = new Edit(select, op).withWhen(values.get("when")).withUnless(values.get("unless"));
+                for (Map.Entry<String, String> value : values.entrySet()) {
+                    if (!"select".equals(value.getKey()) && !"when".equals(value.getKey()) && !"unless".equals(value.getKey())) {
+                        edit.with(value.getKey(), value.getValue());
+                    }
+                }
+                builder.edit(edit);
+            } else {
+                throw new IllegalArgumentException("unknown operation [" + op + "]");
+            }
+        } catch (Exception e) {
+            errors.add(file.getName() + ":" + line + ": " + op + " " + e.getMessage());
+        }
+    }
+
+    private void readXml(InputStream is) throws Exception {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        XMLStreamReader reader = factory.createXMLStreamReader(is);
+        try {
+            // skip root element
+            reader.nextTag();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                int line = reader.getLocation().getLineNumber();
+                String op = reader.getLocalName();
+                Map<String, String> values = new LinkedHashMap<String, String>();
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    values.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                }
+                List<Properties> parameters = new ArrayList<Properties>();
+                String inline = readInlineContent(reader, parameters);
+                if (inline != null && !values.containsKey("xml")) {
+                    values.put("xml", inline);
+                }
+                operation(line, op, values, parameters);
+            }
+        } catch (XMLStreamException e) {
+            throw new Exception("Failed to parse edits file [" + file.getAbsolutePath() + "] : " + e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * reads content of current element up to it's end. Child element is serialized back to string, so does text (which may be CDATA).
+     * <code>parameters</code> child elements are read as insert template parameters
+     *
+     * @param parameters list to add parameter sets to
+     * @return inline content or null
+     */
+    private String readInlineContent(XMLStreamReader reader, List<Properties> parameters) throws XMLStreamException {
+        StringWriter content = null;
+        String text = null;
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() == XMLStreamConstants.START_ELEMENT && "parameters".equals(reader.getLocalName())) {
+                Properties params = new Properties();
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    params.setProperty(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                }
+                parameters.add(params);
+                reader.nextTag();
+            } else if (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                content = new StringWriter();
+                XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(content);
+                copyElement(reader, writer);
+                writer.close();
+            } else if (reader.isCharacters() && !reader.isWhiteSpace()) {
+                text = reader.getText().trim();
+            }
+        }
+        if (content != null) {
+            return content.toString();
+        }
+        return text;
+    }
+
+    private static void copyElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        int depth = 0;
+        do {
+            switch (reader.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                String prefix = reader.getPrefix() == null ? "" : reader.getPrefix();
+                String ns = reader.getNamespaceURI() == null ? "" : reader.getNamespaceURI();
+                writer.writeStartElement(prefix, reader.getLocalName(), ns);
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    String nsPrefix = reader.getNamespacePrefix(i);
+                    if (nsPrefix == null || nsPrefix.isEmpty()) {
+                        writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+                    } else {
+                        writer.writeNamespace(nsPrefix, reader.getNamespaceURI(i));
+                    }
+                }
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    String attrPrefix = reader.getAttributePrefix(i);
+                    if (attrPrefix == null || attrPrefix.isEmpty()) {
+                        writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                    } else {
+                        writer.writeAttribute(attrPrefix, reader.getAttributeNamespace(i), reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                    }
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                writer.writeEndElement();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                writer.writeCharacters(reader.getText());
+                break;
+            default:
+                break;
+            }
+            if (depth > 0) {
+                reader.next();
+            }
+        } while (depth > 0);
+    }
+
+    private void readJson(Reader reader) throws Exception {
+        JsonTokenizer json = new JsonTokenizer(reader);
+        json.expect('[');
+        if (json.peek() == ']') {
+            json.next();
+            return;
+        }
+        do {
+            json.expect('{');
+            int line = json.line;
+            Map<String, String> values = new LinkedHashMap<String, String>();
+            List<Properties> parameters = new ArrayList<Properties>();
+            if (json.peek() != '}') {
+                do {
+                    String key = json.readString();
+                    json.expect(':');
+                    if ("parameters".equals(key)) {
+                        json.readParameters(parameters);
+                    } else {
+                        values.put(key, json.readValue());
+                    }
+                } while (json.nextIs(','));
+            }
+            json.expect('}');
+            String op = values.remove("op");
+            operation(line, op == null ? "" : op, values, parameters);
+        } while (json.nextIs(','));
+        json.expect(']');
+    }
+
+    /**
+     * minimal streaming JSON tokenizer, reads only as much as needed for 1 operation
+     */
+    private class JsonTokenizer {
+
+        private final Reader reader;
+        private int line = 1;
+        private int peeked = -2;
+
+        JsonTokenizer(Reader reader) {
+            this.reader = reader;
+        }
+
+        private int read() throws IOException {
+            int c = peeked != -2 ? peeked : reader.read();
+            peeked = -2;
+            if (c == '\n') {
+                line++;
+            }
+            return c;
+        }
+
+        /**
+         * @return next non-whitespace character without consuming it
+         */
+        int peek() throws IOException {
+            int c;
+            do {
+                c = read();
+            } while (c == ' ' || c == '\t' || c == '\r' || c == '\n');
+            peeked = c;
+            return c;
+        }
+
+        int next() throws IOException {
+            peek();
+            return read();
+        }
+
+        boolean nextIs(char expected) throws IOException {
+            if (peek() == expected) {
+                read();
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char expected) throws Exception {
+            int c = next();
+            if (c != expected) {
+                throw error("expected '" + expected + "' but found " + (c == -1 ? "end of file" : "'" + (char) c + "'"));
+            }
+        }
+
+        String readString() throws Exception {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = read()) != '"') {
+                if (c == -1) {
+                    throw error("unterminated string");
+                }
+                if (c == '\\') {
+                    c = read();
+                    switch (c) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            hex[i] = (char) read();
+                        }
+                        sb.append((char) Integer.parseInt(new String(hex), 16));
+                        break;
+                    default:
+                        sb.append((char) c);
+                    }
+                } else {
+                    sb.append((char) c);
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * reads array of flat objects
+         */
+        void readParameters(List<Properties> parameters) throws Exception {
+            expect('[');
+            if (nextIs(']')) {
+                return;
+            }
+            do {
+                expect('{');
+                Properties params = new Properties();
+                if (peek() != '}') {
+                    do {
+                        String key = readString();
+                        expect(':');
+                        String value = readValue();
+                        if (value != null) {
+                            params.setProperty(key, value);
+                        }
+                    } while (nextIs(','));
+                }
+                expect('}');
+                parameters.add(params);
+            } while (nextIs(','));
+            expect(']');
+        }
+
+        /**
+         * reads scalar value as string
+         */
+        String readValue() throws Exception {
+            int c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw error("nested values are not supported");
+            }
+            StringBuilder sb = new StringBuilder();
+            while ((c = peek()) != ',' && c != '}' && c != -1) {
+                sb.append((char) read());
+            }
+            String value = sb.toString().trim();
+            return "null".equals(value) ? null : value;
+        }
+
+        private Exception error(String message) {
+            return new Exception("Failed to parse edits file [" + file.getAbsolutePath() + "] at line " + line + " : " + message);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.NamespaceContext;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Absolute location path of child steps, where each step is an element name test optionally followed by attribute equality predicates, i.e.
+ * <code>/p:server/p:socket-binding-group[@name='standard-sockets']/p:socket-binding</code>. Such path is evaluated by walking children of
+ * matched elements directly. JDK XPath implementation wraps whole document each time an expression is evaluated on DOM, so evaluating many
+ * selects on a large document would be quadratic. Other expressions are left to XPath, see {@link #compile(String, NamespaceContext)}.
+ *
+ * @author lzoubek
+ *
+ */
+public class ElementPath {
+
+    private final String[] namespaces;
+    private final String[] localNames;
+    /**
+     * attribute name followed by it's value for each step
+     */
+    private final String[][] attributes;
+
+    private ElementPath(String[] namespaces, String[] localNames, String[][] attributes) {
+        this.namespaces = namespaces;
+        this.localNames = localNames;
+        this.attributes = attributes;
+    }
+
+    /**
+     * compiles given expression
+     *
+     * @param expression
+     * @param context resolves prefixes of name tests
+     * @return compiled path or null in case expression is not a simple element path (it has to be evaluated as XPath then)
+     */
+    public static ElementPath compile(String expression, NamespaceContext context) {
+        List<XPathPath.Step> steps = XPathPath.parse(expression).getSteps();
+        int count = steps.size();
+        String[] namespaces = new String[count];
+        String[] localNames = new String[count];
+        String[][] attributes = new String[count][];
+        StringBuilder rendered = new StringBuilder(expression.length());
+        for (int i = 0; i < count; i++) {
+            XPathPath.Step step = steps.get(i);
+            String name = step.getName();
+            rendered.append('/').append(name).append(step.getPredicates());
+            if (step.getAxis() != null || step.isDescendant()) {
+                return null;
+            }
+            int colon = name.indexOf(':');
+            if (colon >= 0) {
+                namespaces[i] = context == null ? null : context.getNamespaceURI(name.substring(0, colon));
+                if (namespaces[i] == null || namespaces[i].isEmpty()) {
+                    return null;
+                }
+            }
+            localNames[i] = name.substring(colon + 1);
+            attributes[i] = parsePredicates(step.getPredicates());
+            if (!isName(localNames[i]) || attributes[i] == null) {
+                return null;
+            }
+        }
+        // separators other than single '/' (unions, relative or descendant paths) are not supported
+        if (count == 0 || !rendered.toString().equals(expression)) {
+            return null;
+        }
+        return new ElementPath(namespaces, localNames, attributes);
+    }
+
+    /**
+     *
+     * @param doc
+     * @return matched elements in document order
+     */
+    public NodeList select(Document doc) {
+        List<Element> matched = new ArrayList<Element>();
+        Element root = doc.getDocumentElement();
+        if (root != null && matches(root, 0)) {
+            matched.add(root);
+        }
+        for (int step = 1; step < localNames.length && !matched.isEmpty(); step++) {
+            List<Element> children = new ArrayList<Element>();
+            for (Element parent : matched) {
+                for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    if (child instanceof Element && matches((Element) child, step)) {
+                        children.add((Element) child);
+                    }
+                }
+            }
+            matched = children;
+        }
+        return new ElementList(matched);
+    }
+
+    /**
+     * evaluates first step of this path relative to given element
+     *
+     * @param parent
+     * @return last child of given element matching first step or null
+     */
+    public Element findLastChild(Element parent) {
+        for (Node child = parent.getLastChild(); child != null; child = child.getPreviousSibling()) {
+            if (child instanceof Element && matches((Element) child, 0)) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(Element element, int step) {
+        String localName = element.getLocalName() == null ? element.getNodeName() : element.getLocalName();
+        if (!localNames[step].equals(localName)) {
+            return false;
+        }
+        String ns = element.getNamespaceURI();
+        if (namespaces[step] == null ? ns != null && !ns.isEmpty() : !namespaces[step].equals(ns)) {
+            return false;
+        }
+        String[] attrs = attributes[step];
+        for (int i = 0; i < attrs.length; i += 2) {
+            if (!element.hasAttribute(attrs[i]) || !attrs[i + 1].equals(element.getAttribute(attrs[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * parses predicates like <code>[@a='x' and @b="y"][@c='z']</code>
+     *
+     * @return attribute names followed by their values or null in case predicates are not attribute equality tests
+     */
+    static String[] parsePredicates(String predicates) {
+        List<String> attrs = new ArrayList<String>();
+        int i = 0;
+        int length = predicates.length();
+        while (i < length) {
+            if (predicates.charAt(i++) != '[') {
+                return null;
+            }
+            while (true) {
+                i = skipWhitespace(predicates, i);
+                if (i >= length || predicates.charAt(i++) != '@') {
+                    return null;
+                }
+                int nameStart = i;
+                while (i < length && isNameChar(predicates.charAt(i))) {
+                    i++;
+                }
+                String name = predicates.substring(nameStart, i);
+                i = skipWhitespace(predicates, i);
+                if (!isName(name) || i >= length || predicates.charAt(i++) != '=') {
+                    return null;
+                }
+                i = skipWhitespace(predicates, i);
+                if (i >= length || (predicates.charAt(i) != '\'' && predicates.charAt(i) != '"')) {
+                    return null;
+                }
+                int valueEnd = predicates.indexOf(predicates.charAt(i), i + 1);
+                if (valueEnd < 0) {
+                    return null;
+                }
+                attrs.add(name);
+                attrs.add(predicates.substring(i + 1, valueEnd));
+                i = skipWhitespace(predicates, valueEnd + 1);
+                if (i < length && predicates.charAt(i) == ']') {
+                    i++;
+                    break;
+                }
+                if (!predicates.startsWith("and", i) || i + 3 >= length || !Character.isWhitespace(predicates.charAt(i + 3))) {
+                    return null;
+                }
+                i += 3;
+            }
+        }
+        return attrs.toArray(new String[attrs.size()]);
+    }
+
+    private static int skipWhitespace(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isName(String name) {
+        if (name.isEmpty() || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!isNameChar(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+
+    private static class ElementList implements NodeList {
+        private final List<Element> elements;
+
+        ElementList(List<Element> elements) {
+            this.elements = elements;
+        }
+
+        public Node item(int index) {
+            return index < 0 || index >= elements.size() ? null : elements.get(index);
+        }
+
+        public int getLength() {
+            return elements.size();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Set of file writes, which are applied all at once or not at all. Files are written to a staging directory first (see {@link #stage(File)}) and
+ * moved to their target locations by {@link #commit()} in the order they were staged. Staging directory should live on the same filesystem as
+ * targets, so each move is an atomic rename. In case any move fails, already committed targets are restored to their original content and
+ * directories created for them are removed.
+ * <p>
+ * Staging directory left behind by an interrupted build is removed once staging starts, unless it holds original content of targets (commit
+ * was interrupted), in such case staging fails and the directory has to be inspected manually.
+ * <p>
+ * This class is thread-safe, files may be staged and resolved concurrently. Staged files must not be written while {@link #commit()} or
+ * {@link #rollback()} runs.
+ *
+ * @author lzoubek
+ *
+ */
+public class FileTransaction {
+
+    static final String STAGING_PREFIX = ".wildfly-extension-tx-";
+    private static final String ORIGINALS_DIR = "originals";
+
+    private final Log log;
+    private final File stagingParent;
+    private final File stagingDir;
+    private final Map<File, File> staged = new LinkedHashMap<File, File>();
+    private final List<File> createdDirs = new ArrayList<File>();
+
+    /**
+     *
+     * @param log
+     * @param stagingParent directory to create staging directory in
+     */
+    public FileTransaction(Log log, File stagingParent) {
+        this.log = log;
+        this.stagingParent = stagingParent;
+        this.stagingDir = new File(stagingParent, STAGING_PREFIX + System.currentTimeMillis() + "-" + System.nanoTime() % 1000000);
+    }
+
+    /**
+     * returns file to be written instead of given target. Target gets replaced by it on {@link #commit()}
+     *
+     * @param target
+     * @return staged file (it's parent directory exists)
+     * @throws IOException when staging directory cannot be created or stale staging directory holds original content of targets
+     */
+    public synchronized File stage(File target) throws IOException {
+        File key = target.getAbsoluteFile();
+        File file = staged.get(key);
+        if (file == null) {
+            if (!stagingDir.isDirectory()) {
+                sweepStale();
+                mkdirs(stagingDir);
+            }
+            file = new File(stagingDir, staged.size() + "-" + key.getName());
+            staged.put(key, file);
+        }
+        return file;
+    }
+
+    /**
+     *
+     * @param target
+     * @return staged file in case given target was staged, otherwise target itself
+     */
+    public synchronized File resolve(File target) {
+        if (target == null) {
+            return null;
+        }
+        File file = staged.get(target.getAbsoluteFile());
+        return file == null ? target : file;
+    }
+
+    /**
+     * moves all staged files to their targets. Original content of each target is kept aside until all moves succeed
+     *
+     * @throws IOException when commit fails, all targets are rolled back in such case
+     */
+    public synchronized void commit() throws IOException {
+        List<File> committed = new ArrayList<File>();
+        Map<File, File> originals = new LinkedHashMap<File, File>();
+        log.debug("Committing " + staged.size() + " staged files");
+        File originalsDir = new File(stagingDir, ORIGINALS_DIR);
+        try {
+            int i = 0;
+            for (Map.Entry<File, File> entry : staged.entrySet()) {
+                File target = entry.getKey();
+                File file = entry.getValue();
+                if (!file.exists()) {
+                    // staged, but never written
+                    continue;
+                }
+                mkdirs(target.getParentFile());
+                if (target.isFile()) {
+                    mkdirs(originalsDir);
+                    File original = new File(originalsDir, (i++) + "-" + target.getName());
+                    keep(target, original);
+                    originals.put(target, original);
+                }
+                move(file, target);
+                committed.add(target);
+            }
+        } catch (IOException e) {
+            log.error("Failed to commit staged files, rolling back : " + e.getMessage());
+            restore(committed, originals);
+            throw e;
+        }
+        discard();
+        createdDirs.clear();
+    }
+
+    /**
+     * drops all staged files without touching targets
+     */
+    public synchronized void rollback() {
+        discard();
+        removeCreatedDirs();
+    }
+
+    private void restore(List<File> committed, Map<File, File> originals) {
+        for (int i = committed.size() - 1; i >= 0; i--) {
+            File target = committed.get(i);
+            File original = originals.get(target);
+            try {
+                if (original != null) {
+                    move(original, target);
+                } else {
+                    Files.deleteIfExists(target.toPath());
+                }
+                log.debug("Restored " + target.getAbsolutePath());
+            } catch (IOException e) {
+                log.error("Failed to restore " + target.getAbsolutePath() + " : " + e.getMessage());
+            }
+        }
+        discard();
+        removeCreatedDirs();
+    }
+
+    /**
+     * creates directory including missing parents, those are remembered so they can be removed on rollback
+     */
+    private void mkdirs(File dir) throws IOException {
+        List<File> missing = new ArrayList<File>();
+        for (File d = dir.getAbsoluteFile(); d != null && !d.exists(); d = d.getParentFile()) {
+            missing.add(0, d);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory " + dir.getAbsolutePath());
+        }
+        createdDirs.addAll(missing);
+    }
+
+    /**
+     * removes directories created by this transaction, deepest first. Only empty directories are removed
+     */
+    private void removeCreatedDirs() {
+        for (int i = createdDirs.size() - 1; i >= 0; i--) {
+            File dir = createdDirs.get(i);
+            if (dir.isDirectory() && !dir.delete()) {
+                log.warn("Failed to remove directory " + dir.getAbsolutePath());
+            }
+        }
+        createdDirs.clear();
+    }
+
+    /**
+     * removes staging directories left by interrupted transactions
+     *
+     * @throws IOException when stale staging directory holds original content of targets
+     */
+    private void sweepStale() throws IOException {
+        File[] dirs = stagingParent.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        for (File dir : dirs) {
+            if (!dir.isDirectory() || !dir.getName().startsWith(STAGING_PREFIX) || dir.equals(stagingDir)) {
+                continue;
+            }
+            File originals = new File(dir, ORIGINALS_DIR);
+            if (originals.isDirectory()) {
+                throw new IOException("Staging directory " + dir.getAbsolutePath() + " was left by an interrupted commit and holds original "
+                        + "content of replaced files in " + originals.getAbsolutePath() + ", restore them and remove the directory");
+            }
+            log.warn("Removing stale staging directory " + dir.getAbsolutePath());
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private void discard() {
+        try {
+            FileUtils.deleteDirectory(stagingDir);
+        } catch (IOException e) {
+            log.warn("Failed to remove staging directory " + stagingDir.getAbsolutePath() + " : " + e.getMessage());
+        }
+        staged.clear();
+    }
+
+    /**
+     * keeps original content of target aside, by hard link if possible
+     */
+    private static void keep(File target, File original) throws IOException {
+        try {
+            Files.createLink(original.toPath(), target.toPath());
+        } catch (IOException e) {
+            Files.copy(target.toPath(), original.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+        } catch (UnsupportedOperationException e) {
+            Files.copy(target.toPath(), original.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            log.warn("Staging directory is not on the same filesystem as " + target.getAbsolutePath() + ", file is not replaced atomically");
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
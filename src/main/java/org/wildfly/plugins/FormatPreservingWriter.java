@@ -0,0 +1,727 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes edited document by patching the file it was parsed from. Byte offsets of all elements are recorded when writer is
+ * {@link #attach(File, Document) attached} (before document is edited), later only elements which changed are written again and everything
+ * else is copied from the original file as is, so layout and comments are kept and output cost is proportional to the change.
+ * <p>
+ * Element changes written in place are changed name or attributes (start tag is rewritten), removed child elements (including whitespace
+ * preceding them) and new child elements (written formatted and indented like their siblings). Element, which changed in any other way (i.e.
+ * reordered children or changed text) is written again as a whole. Only documents encoded in UTF-8, US-ASCII or ISO-8859-1 without DTD are
+ * supported.
+ *
+ * @author lzoubek
+ *
+ */
+public class FormatPreservingWriter {
+
+    private static final Pattern ATTRIBUTE = Pattern.compile("([^\\s=/>]+)\\s*=\\s*(\"[^\"]*\"|'[^']*')");
+    private static final Pattern ENCODING = Pattern.compile("^(?:\\xEF\\xBB\\xBF)?<\\?xml[^>]*encoding\\s*=\\s*[\"']([^\"']+)");
+
+    private final File sourceFile;
+    private final long sourceLength;
+    private final long sourceModified;
+    private final byte[] source;
+    private final Charset charset;
+    private final String lineSeparator;
+    private final Node[] documentChildren;
+    private final Map<Node, Original> originals = new IdentityHashMap<Node, Original>();
+
+    private FormatPreservingWriter(File sourceFile, byte[] source, Charset charset, Document doc) {
+        this.sourceFile = sourceFile;
+        this.sourceLength = sourceFile.length();
+        this.sourceModified = sourceFile.lastModified();
+        this.source = source;
+        this.charset = charset;
+        this.lineSeparator = indexOf(source, "\r\n", 0) >= 0 ? "\r\n" : "\n";
+        this.documentChildren = children(doc);
+    }
+
+    /**
+     * records original location of each element of given document within given file. Must be called before document is changed
+     *
+     * @param sourceFile file document was parsed from
+     * @param doc
+     * @return writer or null in case file is not supported (encoding, DTD)
+     * @throws IOException
+     */
+    public static FormatPreservingWriter attach(File sourceFile, Document doc) throws IOException {
+        byte[] source = read(sourceFile);
+        Charset charset = charset(source);
+        if (charset == null || doc.getDoctype() != null) {
+            return null;
+        }
+        List<Span> spans = scan(source);
+        if (spans == null) {
+            return null;
+        }
+        FormatPreservingWriter writer = new FormatPreservingWriter(sourceFile, source, charset, doc);
+        int count = writer.record(doc.getDocumentElement(), spans, 0);
+        return count == spans.size() ? writer : null;
+    }
+
+    private static Charset charset(byte[] source) {
+        if (source.length > 1 && (source[0] == (byte) 0xFE || source[0] == (byte) 0xFF || source[0] == 0 || source[1] == 0)) {
+            return null;
+        }
+        Matcher m = ENCODING.matcher(new String(source, 0, Math.min(source.length, 200), Charset.forName("ISO-8859-1")));
+        String encoding = m.find() ? m.group(1) : "UTF-8";
+        if ("UTF-8".equalsIgnoreCase(encoding) || "UTF8".equalsIgnoreCase(encoding)) {
+            return Charset.forName("UTF-8");
+        }
+        if ("US-ASCII".equalsIgnoreCase(encoding) || "ASCII".equalsIgnoreCase(encoding) || "ISO-8859-1".equalsIgnoreCase(encoding)) {
+            return Charset.forName(encoding.toUpperCase());
+        }
+        return null;
+    }
+
+    /**
+     * records given element and all its descendants, spans are in document order
+     *
+     * @return index of next span
+     */
+    private int record(Element element, List<Span> spans, int index) {
+        if (index >= spans.size()) {
+            return Integer.MAX_VALUE;
+        }
+        originals.put(element, new Original(spans.get(index), element.getNodeName(), attributes(element), children(element)));
+        index++;
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                index = record((Element) child, spans, index);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * writes given document (which was attached to this writer) to given file
+     *
+     * @param doc
+     * @param targetFile
+     * @return false in case document cannot be written by patching source file (source file changed or document root was changed), nothing is
+     *         written in such case
+     * @throws Exception
+     */
+    public boolean write(Document doc, File targetFile) throws Exception {
+        if (sourceFile.length() != sourceLength || sourceFile.lastModified() != sourceModified || !same(documentChildren, children(doc))
+                || originals.get(doc.getDocumentElement()) == null) {
+            return false;
+        }
+        Pieces pieces = new Pieces();
+        Span root = originals.get(doc.getDocumentElement()).span;
+        pieces.copy(0, root.start);
+        patch(doc.getDocumentElement(), pieces);
+        pieces.copy(root.end, source.length);
+        for (Piece piece : pieces.list) {
+            if (piece.text != null && !charset.newEncoder().canEncode(piece.text)) {
+                return false;
+            }
+        }
+        boolean inPlace = targetFile.getCanonicalFile().equals(sourceFile.getCanonicalFile());
+        File out = inPlace ? new File(targetFile.getAbsoluteFile().getParentFile(), targetFile.getName() + ".tmp") : targetFile;
+        FileInputStream in = new FileInputStream(sourceFile);
+        FileOutputStream os = new FileOutputStream(out);
+        try {
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = os.getChannel();
+            for (Piece piece : pieces.list) {
+                if (piece.text != null) {
+                    ByteBuffer buffer = charset.encode(piece.text);
+                    while (buffer.hasRemaining()) {
+                        outChannel.write(buffer);
+                    }
+                } else {
+                    long position = piece.start;
+                    while (position < piece.end) {
+                        position += inChannel.transferTo(position, piece.end - position, outChannel);
+                    }
+                }
+            }
+        } finally {
+            IOUtil.close(in);
+            IOUtil.close(os);
+        }
+        if (inPlace && (!targetFile.delete() || !out.renameTo(targetFile))) {
+            throw new IOException("Failed to replace " + targetFile.getAbsolutePath());
+        }
+        return true;
+    }
+
+    /**
+     * adds pieces writing given original element
+     */
+    private void patch(Element element, Pieces pieces) {
+        Original original = originals.get(element);
+        Span span = original.span;
+        Node[] children = children(element);
+        boolean renamed = !original.name.equals(element.getNodeName());
+        boolean startTagChanged = renamed || !original.attributes.equals(attributes(element));
+        boolean childrenChanged = !same(original.children, children);
+        if (childrenChanged && !canPatchChildren(original, children)) {
+            Original parent = originals.get(element.getParentNode());
+            pieces.text(serialize(element, indent(span.start), parent == null ? "    " : indentUnit((Element) element.getParentNode(), indent(span.start))));
+            return;
+        }
+        boolean open = span.selfClosing && children.length > 0;
+        if (startTagChanged || open) {
+            pieces.text(startTag(element, span, !open && span.selfClosing));
+        } else {
+            pieces.copy(span.start, span.startTagEnd);
+        }
+        if (span.selfClosing && !open) {
+            return;
+        }
+        if (!childrenChanged) {
+            int position = span.startTagEnd;
+            for (Node child : children) {
+                if (child instanceof Element) {
+                    Span childSpan = originals.get(child).span;
+                    pieces.copy(position, childSpan.start);
+                    patch((Element) child, pieces);
+                    position = childSpan.end;
+                }
+            }
+            pieces.copy(position, span.contentEnd);
+        } else {
+            patchChildren(element, original, children, pieces);
+        }
+        if (renamed || open) {
+            pieces.text("</" + element.getNodeName() + ">");
+        } else {
+            pieces.copy(span.contentEnd, span.end);
+        }
+    }
+
+    /**
+     * writes content of element, whose original child elements were removed or new child elements were added. Each original child element is
+     * written together with whitespace (and comments) preceding it, new ones are written on new line
+     */
+    private void patchChildren(Element element, Original original, Node[] children, Pieces pieces) {
+        Span span = original.span;
+        String indent = null;
+        int trailing = span.startTagEnd;
+        Map<Node, Integer> gapStarts = new IdentityHashMap<Node, Integer>();
+        for (Node child : original.children) {
+            if (child instanceof Element) {
+                Span childSpan = originals.get(child).span;
+                gapStarts.put(child, trailing);
+                if (indent == null) {
+                    indent = indent(childSpan.start);
+                }
+                trailing = childSpan.end;
+            }
+        }
+        String unit = indentUnit(element, indent);
+        if (indent == null) {
+            indent = indent(span.start) + unit;
+        }
+        // comments (or text) following last original child element precede elements appended after them
+        Set<Node> trailingNodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        for (int i = original.children.length - 1; i >= 0 && !(original.children[i] instanceof Element); i--) {
+            if (!isWhitespace(original.children[i])) {
+                trailingNodes.add(original.children[i]);
+            }
+        }
+        int trailingContentEnd = span.contentEnd;
+        while (trailingContentEnd > trailing && Character.isWhitespace(source[trailingContentEnd - 1])) {
+            trailingContentEnd--;
+        }
+        boolean added = false;
+        for (Node child : children) {
+            Integer gapStart = gapStarts.get(child);
+            if (gapStart != null) {
+                pieces.copy(gapStart, originals.get(child).span.start);
+                patch((Element) child, pieces);
+                added = false;
+            } else if (child instanceof Element) {
+                pieces.text(lineSeparator + indent + serialize((Element) child, indent, unit));
+                added = true;
+            } else if (trailingNodes.contains(child) && trailing < trailingContentEnd) {
+                pieces.copy(trailing, trailingContentEnd);
+                trailing = trailingContentEnd;
+            }
+        }
+        if (span.selfClosing || added && isBlank(trailing, span.contentEnd) && !contains(trailing, span.contentEnd, (byte) '\n')) {
+            pieces.text(lineSeparator + indent(span.start));
+        } else {
+            pieces.copy(trailing, span.contentEnd);
+        }
+    }
+
+    /**
+     * @param childIndent indentation of original child elements, can be null
+     * @return indentation added by each nesting level, detected from given element and its child elements or parent
+     */
+    private String indentUnit(Element element, String childIndent) {
+        String indent = indent(originals.get(element).span.start);
+        if (childIndent != null && childIndent.length() > indent.length() && childIndent.startsWith(indent)) {
+            return childIndent.substring(indent.length());
+        }
+        Original parent = originals.get(element.getParentNode());
+        if (parent != null) {
+            String parentIndent = indent(parent.span.start);
+            if (indent.length() > parentIndent.length() && indent.startsWith(parentIndent)) {
+                return indent.substring(parentIndent.length());
+            }
+        }
+        return "    ";
+    }
+
+    /**
+     * child elements can be patched in case original ones kept their order and no other nodes (except whitespace) were added or removed
+     */
+    private boolean canPatchChildren(Original original, Node[] children) {
+        Map<Node, Integer> positions = new IdentityHashMap<Node, Integer>();
+        for (int i = 0; i < original.children.length; i++) {
+            positions.put(original.children[i], i);
+        }
+        int last = -1;
+        for (Node child : children) {
+            Integer position = positions.remove(child);
+            if (position != null) {
+                if (position < last) {
+                    return false;
+                }
+                last = position;
+            } else if (!(child instanceof Element) && !isWhitespace(child)) {
+                return false;
+            }
+        }
+        // nodes preceding element are written (or dropped) together with it
+        Node next = null;
+        for (int i = original.children.length - 1; i >= 0; i--) {
+            Node child = original.children[i];
+            if (child instanceof Element) {
+                next = child;
+            } else if (!isWhitespace(child) && positions.containsKey(child) != (next != null && positions.containsKey(next))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * creates start tag of given element, original attributes keep their order
+     */
+    private String startTag(Element element, Span span, boolean selfClosing) {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        NamedNodeMap map = element.getAttributes();
+        Matcher m = ATTRIBUTE.matcher(new String(source, span.start, span.startTagEnd - span.start, charset));
+        while (m.find()) {
+            Node attr = map.getNamedItem(m.group(1));
+            if (attr != null) {
+                attributes.put(attr.getNodeName(), attr.getNodeValue());
+            }
+        }
+        for (int i = 0; i < map.getLength(); i++) {
+            if (!attributes.containsKey(map.item(i).getNodeName())) {
+                attributes.put(map.item(i).getNodeName(), map.item(i).getNodeValue());
+            }
+        }
+        StringBuilder sb = new StringBuilder("<").append(element.getNodeName());
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            sb.append(' ').append(attribute.getKey()).append("=\"");
+            escape(sb, attribute.getValue(), true);
+            sb.append('"');
+        }
+        return sb.append(selfClosing ? "/>" : ">").toString();
+    }
+
+    private static void escape(StringBuilder sb, String value, boolean attribute) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append(attribute ? ">" : "&gt;");
+                break;
+            case '"':
+                sb.append(attribute ? "&quot;" : "\"");
+                break;
+            case '\n':
+                sb.append(attribute ? "&#10;" : "\n");
+                break;
+            case '\r':
+                sb.append("&#13;");
+                break;
+            case '\t':
+                sb.append(attribute ? "&#9;" : "\t");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * serializes given element, each child element or comment goes to its own line. Namespaces declared by element's parent are not declared again
+     *
+     * @param indent indentation of lines following first one
+     * @param unit indentation of each nesting level
+     */
+    private String serialize(Element element, String indent, String unit) {
+        StringBuilder sb = new StringBuilder();
+        serialize(sb, element, indent, unit, new HashMap<String, String>(), element.getParentNode());
+        return sb.toString();
+    }
+
+    /**
+     * @param parentScope namespaces declared by serialized ancestors
+     * @param context node, whose namespaces are in scope of serialized element
+     */
+    private void serialize(StringBuilder sb, Node node, String indent, String unit, Map<String, String> parentScope, Node context) {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            break;
+        case Node.COMMENT_NODE:
+            sb.append("<!--").append(node.getNodeValue()).append("-->");
+            return;
+        case Node.CDATA_SECTION_NODE:
+            sb.append("<![CDATA[").append(node.getNodeValue()).append("]]>");
+            return;
+        case Node.PROCESSING_INSTRUCTION_NODE:
+            sb.append("<?").append(node.getNodeName()).append(' ').append(node.getNodeValue()).append("?>");
+            return;
+        default:
+            escape(sb, node.getNodeValue().trim(), false);
+            return;
+        }
+        Map<String, String> scope = new HashMap<String, String>(parentScope);
+        sb.append('<').append(node.getNodeName());
+        // element's own namespace is declared first, unless it's declared already
+        String prefix = node.getPrefix() == null ? "" : node.getPrefix();
+        String namespace = node.getNamespaceURI();
+        if (namespace != null && !namespace.equals(inScope(scope, prefix, context))) {
+            sb.append(prefix.isEmpty() ? " xmlns=\"" : " xmlns:" + prefix + "=\"");
+            escape(sb, namespace, true);
+            sb.append('"');
+            scope.put(prefix, namespace);
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attr = attributes.item(i);
+            if ("xmlns".equals(attr.getNodeName()) || "xmlns".equals(attr.getPrefix())) {
+                String declared = "xmlns".equals(attr.getNodeName()) ? "" : attr.getLocalName();
+                if (attr.getNodeValue().equals(inScope(scope, declared, context))) {
+                    continue;
+                }
+                scope.put(declared, attr.getNodeValue());
+            }
+            sb.append(' ').append(attr.getNodeName()).append("=\"");
+            escape(sb, attr.getNodeValue(), true);
+            sb.append('"');
+        }
+        List<Node> children = new ArrayList<Node>();
+        boolean textOnly = true;
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (!isWhitespace(child)) {
+                children.add(child);
+                textOnly &= child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE;
+            }
+        }
+        if (children.isEmpty()) {
+            sb.append("/>");
+            return;
+        }
+        sb.append('>');
+        if (textOnly) {
+            for (Node child : children) {
+                serialize(sb, child, indent, unit, scope, context);
+            }
+        } else {
+            for (Node child : children) {
+                sb.append(lineSeparator).append(indent).append(unit);
+                serialize(sb, child, indent + unit, unit, scope, context);
+            }
+            sb.append(lineSeparator).append(indent);
+        }
+        sb.append("</").append(node.getNodeName()).append('>');
+    }
+
+    private static String inScope(Map<String, String> scope, String prefix, Node context) {
+        if (scope.containsKey(prefix) || context == null) {
+            return scope.get(prefix);
+        }
+        return context.lookupNamespaceURI(prefix.isEmpty() ? null : prefix);
+    }
+
+    /**
+     * @return whitespace preceding given offset on its line
+     */
+    private String indent(int offset) {
+        int start = offset;
+        while (start > 0 && (source[start - 1] == ' ' || source[start - 1] == '\t')) {
+            start--;
+        }
+        return new String(source, start, offset - start, charset);
+    }
+
+    private boolean contains(int start, int end, byte b) {
+        for (int i = start; i < end; i++) {
+            if (source[i] == b) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(source[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(Node node) {
+        return node.getNodeType() == Node.TEXT_NODE && node.getNodeValue().trim().isEmpty();
+    }
+
+    private static String attributes(Element element) {
+        StringBuilder sb = new StringBuilder();
+        NamedNodeMap map = element.getAttributes();
+        for (int i = 0; i < map.getLength(); i++) {
+            sb.append(map.item(i).getNodeName()).append('=').append(map.item(i).getNodeValue()).append('\u0000');
+        }
+        return sb.toString();
+    }
+
+    private static Node[] children(Node node) {
+        List<Node> children = new ArrayList<Node>();
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            children.add(child);
+        }
+        return children.toArray(new Node[children.size()]);
+    }
+
+    private static boolean same(Node[] a, Node[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * finds all elements in given document
+     *
+     * @return element spans in document order or null in case document contains DTD or is not well-formed
+     */
+    static List<Span> scan(byte[] source) {
+        List<Span> spans = new ArrayList<Span>();
+        List<Span> open = new ArrayList<Span>();
+        int i = indexOf(source, "<", 0);
+        while (i >= 0 && i < source.length) {
+            int end;
+            if (startsWith(source, i, "<!--")) {
+                end = indexOf(source, "-->", i) + 3;
+            } else if (startsWith(source, i, "<![CDATA[")) {
+                end = indexOf(source, "]]>", i) + 3;
+            } else if (startsWith(source, i, "<?")) {
+                end = indexOf(source, "?>", i) + 2;
+            } else if (startsWith(source, i, "<!")) {
+                return null;
+            } else if (startsWith(source, i, "</")) {
+                end = indexOf(source, ">", i) + 1;
+                if (end == 0 || open.isEmpty()) {
+                    return null;
+                }
+                Span span = open.remove(open.size() - 1);
+                span.contentEnd = i;
+                span.end = end;
+            } else {
+                end = tagEnd(source, i);
+                if (end < 0) {
+                    return null;
+                }
+                Span span = new Span(i, end, source[end - 2] == '/');
+                spans.add(span);
+                if (!span.selfClosing) {
+                    open.add(span);
+                }
+            }
+            if (end < i) {
+                return null;
+            }
+            i = indexOf(source, "<", end);
+        }
+        return open.isEmpty() ? spans : null;
+    }
+
+    /**
+     * @return offset following start tag starting at given offset, quoted attribute values can contain <code>&gt;</code>
+     */
+    private static int tagEnd(byte[] source, int start) {
+        byte quote = 0;
+        for (int i = start + 1; i < source.length; i++) {
+            byte b = source[i];
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] source, int offset, String prefix) {
+        if (offset + prefix.length() > source.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (source[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] source, String s, int from) {
+        for (int i = from; i <= source.length - s.length(); i++) {
+            if (startsWith(source, i, s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            return IOUtil.toByteArray(fis);
+        } finally {
+            IOUtil.close(fis);
+        }
+    }
+
+    /**
+     * location of element within source file
+     */
+    static class Span {
+        final int start;
+        final int startTagEnd;
+        final boolean selfClosing;
+        int contentEnd;
+        int end;
+
+        Span(int start, int startTagEnd, boolean selfClosing) {
+            this.start = start;
+            this.startTagEnd = startTagEnd;
+            this.selfClosing = selfClosing;
+            this.contentEnd = startTagEnd;
+            this.end = startTagEnd;
+        }
+    }
+
+    /**
+     * element as it was parsed
+     */
+    private static class Original {
+        private final Span span;
+        private final String name;
+        private final String attributes;
+        private final Node[] children;
+
+        Original(Span span, String name, String attributes, Node[] children) {
+            this.span = span;
+            this.name = name;
+            this.attributes = attributes;
+            this.children = children;
+        }
+    }
+
+    /**
+     * output, either range of source file or generated text
+     */
+    private static class Piece {
+        private final int start;
+        private int end;
+        private final String text;
+
+        Piece(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+
+    private static class Pieces {
+        private final List<Piece> list = new ArrayList<Piece>();
+
+        void copy(int start, int end) {
+            if (start >= end) {
+                return;
+            }
+            Piece last = list.isEmpty() ? null : list.get(list.size() - 1);
+            if (last != null && last.text == null && last.end == start) {
+                last.end = end;
+            } else {
+                list.add(new Piece(start, end, null));
+            }
+        }
+
+        void text(String text) {
+            list.add(new Piece(0, 0, text));
+        }
+    }
+}
@@ -22,6 +22,7 @@
 package org.wildfly.plugins;
 
 import java.io.File;
+import java.util.Properties;
 
 /**
  * An insert item represents 1 edit action to be performed on target XML document. Each 'insert' has {@link #select} attribute. Which denotes location
@@ -31,6 +32,12 @@ import java.io.File;
  * loaded and xpath expression is created from root element's attributes and their values, otherwise {@link attribute} is taken as the only one for
  * xpath expression.
  * 
+ * Content can be a template containing <code>${name}</code> placeholders. If {@link #parameters} are set, content is inserted once per each set of
+ * parameters with placeholders replaced by its values.
+ * 
+ * Insert can be made conditional by {@link #when} and/or {@link #unless} expressions. These are evaluated against source document before any
+ * change is made to it and insert is skipped unless <code>when</code> is true and <code>unless</code> is false.
+ * 
  * @author lzoubek
  * 
  */
@@ -40,6 +47,9 @@ public class Insert {
     private File content;
     private String xml;
     private String attribute;
+    private Properties[] parameters;
+    private String when;
+    private String unless;
 
     public Insert() {
 
@@ -60,6 +70,45 @@ public class Insert {
         return this;
     }
 
+    public Insert withParameters(Properties... parameters) {
+        this.parameters = parameters;
+        return this;
+    }
+
+    public Insert withWhen(String when) {
+        this.when = when;
+        return this;
+    }
+
+    public Insert withUnless(String unless) {
+        this.unless = unless;
+        return this;
+    }
+
+    public String getWhen() {
+        return when;
+    }
+
+    public void setWhen(String when) {
+        this.when = when;
+    }
+
+    public String getUnless() {
+        return unless;
+    }
+
+    public void setUnless(String unless) {
+        this.unless = unless;
+    }
+
+    public Properties[] getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(Properties[] parameters) {
+        this.parameters = parameters;
+    }
+
     public String getAttribute() {
         return attribute;
     }
@@ -95,7 +144,9 @@ public class Insert {
     @Override
     public String toString() {
         return new StringBuilder("insert [").append("select=" + this.select).append(content == null ? "" : " content=" + content)
-                .append(attribute == null ? "" : " attribute=" + attribute).append(xml == null ? "" : " xml=" + this.xml).append("]").toString();
+                .append(attribute == null ? "" : " attribute=" + attribute).append(xml == null ? "" : " xml=" + this.xml)
+                .append(parameters == null ? "" : " parameters=" + parameters.length).append(when == null ? "" : " when=" + when)
+                .append(unless == null ? "" : " unless=" + unless).append("]").toString();
     }
 
 }
@@ -0,0 +1,201 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Orders inserts by containment. Insert <code>B</code> depends on insert <code>A</code> in case <code>B</code>'s select may match an element
+ * within (or equal to) content inserted by <code>A</code>, that is when <code>A</code>'s select followed by name of it's content root is a prefix
+ * of <code>B</code>'s select. Element names are compared without prefixes and predicates, wildcards match any name and descendant steps may skip
+ * any number of elements. Each select is parsed only once.
+ * <p>
+ * Inserts are scheduled to levels, each insert is in a level following levels of all inserts it depends on. Inserts within single level do not
+ * depend on each other and keep their original order.
+ *
+ * @author lzoubek
+ *
+ */
+public class InsertScheduler {
+
+    private final List<Insert> inserts = new ArrayList<Insert>();
+    private final List<String[]> paths = new ArrayList<String[]>();
+    private final List<String[]> produces = new ArrayList<String[]>();
+
+    /**
+     * adds insert to be scheduled
+     *
+     * @param insert
+     * @param contentRoot name of insert's content root element, can be null in case it's not known
+     * @return
+     */
+    public InsertScheduler add(Insert insert, String contentRoot) {
+        String[] path = path(XPathPath.parse(insert.getSelect()));
+        inserts.add(insert);
+        paths.add(path);
+        if (contentRoot == null) {
+            produces.add(null);
+        } else {
+            String[] produced = new String[path.length + 1];
+            System.arraycopy(path, 0, produced, 0, path.length);
+            produced[path.length] = localName(contentRoot);
+            produces.add(produced);
+        }
+        return this;
+    }
+
+    /**
+     * converts path to element names, <code>null</code> stands for descendant step
+     */
+    private static String[] path(XPathPath xpath) {
+        List<String> names = new ArrayList<String>(xpath.getSteps().size());
+        for (XPathPath.Step step : xpath.getSteps()) {
+            if (step.isDescendant()) {
+                names.add(null);
+            }
+            String name = step.getName().trim();
+            if (".".equals(name)) {
+                continue;
+            }
+            if ("..".equals(name)) {
+                if (!names.isEmpty()) {
+                    names.remove(names.size() - 1);
+                }
+                continue;
+            }
+            names.add(localName(name));
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    private static String localName(String name) {
+        int colon = name.indexOf(':');
+        return colon < 0 ? name : name.substring(colon + 1);
+    }
+
+    /**
+     *
+     * @param a
+     * @param b
+     * @return true if insert at index b depends on insert at index a
+     */
+    boolean dependsOn(int b, int a) {
+        String[] produced = produces.get(a);
+        if (a == b || produced == null) {
+            return false;
+        }
+        return reaches(paths.get(b), 0, produced, 0);
+    }
+
+    /**
+     *
+     * @return true if select path (from index i) may select element at or below produced path (from index j)
+     */
+    private static boolean reaches(String[] path, int i, String[] produced, int j) {
+        if (j == produced.length) {
+            return true;
+        }
+        if (produced[j] == null) {
+            // producer's position is not known, compare with content root only
+            return contains(path, i, produced[produced.length - 1]);
+        }
+        if (i == path.length) {
+            return false;
+        }
+        if (path[i] == null) {
+            // descendant step, following step may match any of produced elements
+            for (int k = j; k < produced.length; k++) {
+                if (reaches(path, i + 1, produced, k)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (path[i].equals("*") || produced[j].equals("*") || path[i].equals(produced[j])) {
+            return reaches(path, i + 1, produced, j + 1);
+        }
+        return false;
+    }
+
+    private static boolean contains(String[] path, int from, String name) {
+        for (int i = from; i < path.length; i++) {
+            if (path[i] == null || path[i].equals("*") || path[i].equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * schedules all added inserts. Dependency cycles (i.e. 2 inserts matching content of each other) are broken by original order
+     *
+     * @return levels of inserts
+     */
+    public List<List<Insert>> schedule() {
+        int size = inserts.size();
+        BitSet[] dependencies = new BitSet[size];
+        for (int b = 0; b < size; b++) {
+            dependencies[b] = new BitSet(size);
+            for (int a = 0; a < size; a++) {
+                if (dependsOn(b, a)) {
+                    dependencies[b].set(a);
+                }
+            }
+        }
+        List<List<Insert>> levels = new ArrayList<List<Insert>>();
+        BitSet scheduled = new BitSet(size);
+        while (scheduled.cardinality() < size) {
+            List<Insert> level = new ArrayList<Insert>();
+            BitSet levelIndexes = new BitSet(size);
+            for (int i = scheduled.nextClearBit(0); i < size; i = scheduled.nextClearBit(i + 1)) {
+                BitSet pending = (BitSet) dependencies[i].clone();
+                pending.andNot(scheduled);
+                if (pending.isEmpty()) {
+                    level.add(inserts.get(i));
+                    levelIndexes.set(i);
+                }
+            }
+            if (level.isEmpty()) {
+                int first = scheduled.nextClearBit(0);
+                level.add(inserts.get(first));
+                levelIndexes.set(first);
+            }
+            scheduled.or(levelIndexes);
+            levels.add(level);
+        }
+        return levels;
+    }
+
+    /**
+     *
+     * @return all added inserts in scheduled order
+     */
+    public List<Insert> order() {
+        List<Insert> ordered = new ArrayList<Insert>(inserts.size());
+        for (List<Insert> level : schedule()) {
+            ordered.addAll(level);
+        }
+        return ordered;
+    }
+}
@@ -21,15 +21,33 @@
  */
 package org.wildfly.plugins;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -40,27 +58,116 @@ import javax.xml.xpath.XPathFactory;
 
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
-import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 public class JBossModule {
 
+    private static final String MODULE_XML = "module.xml";
+    /**
+     * every subsystem extension depends on this module
+     */
+    private static final String EXTENSION_DEPENDENCY = "org.jboss.as.controller";
+
     private final Log log;
     private File root;
     private String moduleId;
+    private String slot = "main";
     private boolean isZip = false;
     private List<String> resources = new ArrayList<String>();
+    private InstallMode installMode = InstallMode.COPY;
+    private List<String> entryNames;
+    private final List<ModuleInfo> modules = new ArrayList<ModuleInfo>();
+
+    /**
+     * how files of module directory are installed
+     */
+    public static enum InstallMode {
+        /**
+         * files are copied
+         */
+        COPY,
+        /**
+         * files are hard-linked, so installation takes no time and no space. Linked files share content with module directory, so changing file in
+         * module directory changes installed file as well. Falls back to copying when link cannot be created (i.e. module directory is on other
+         * filesystem)
+         */
+        LINK
+    }
 
     private JBossModule(Log log) {
         this.log = log;
     }
 
+    /**
+     * sets how files of module directory are installed, zip modules are always extracted
+     * 
+     * @param installMode
+     * @return
+     */
+    public JBossModule installMode(InstallMode installMode) {
+        this.installMode = installMode == null ? InstallMode.COPY : installMode;
+        return this;
+    }
+
     public String getModuleId() {
         return moduleId;
     }
 
+    /**
+     * 
+     * @return module zip or module directory
+     */
+    public File getRoot() {
+        return root;
+    }
+
+    public boolean isZip() {
+        return isZip;
+    }
+
+    /**
+     *
+     * @return all modules (each <code>module.xml</code>) found in module zip or directory in the order of their appearance
+     */
+    public List<ModuleInfo> getModules() {
+        return modules;
+    }
+
+    /**
+     * returns names of modules, which are supposed to be registered as extensions. Those are modules depending on
+     * <code>org.jboss.as.controller</code>. In case there is no such module, main (first) module is registered
+     *
+     * @return extension module names, first one is {@link #getModuleId()}
+     */
+    public List<String> getExtensionModuleIds() {
+        List<String> extensions = findExtensionModuleIds();
+        if (extensions.isEmpty()) {
+            extensions.add(modules.get(0).getName());
+        }
+        return extensions;
+    }
+
+    private List<String> findExtensionModuleIds() {
+        List<String> extensions = new ArrayList<String>();
+        for (ModuleInfo info : modules) {
+            if (info.getDependencies().contains(EXTENSION_DEPENDENCY) && !extensions.contains(info.getName())) {
+                extensions.add(info.getName());
+            }
+        }
+        return extensions;
+    }
+
+    /**
+     * reads module zip. Zip may contain any number of modules (in any slot), all <code>module.xml</code> files are parsed concurrently
+     *
+     * @param log
+     * @param moduleZip
+     * @return
+     * @throws Exception when zip does not contain any module.xml or any of them cannot be parsed
+     */
     public static JBossModule readFromZipFile(Log log, File moduleZip) throws Exception {
         JBossModule m = new JBossModule(log);
         m.isZip = true;
@@ -68,47 +175,80 @@ public class JBossModule {
         if (!(moduleZip.canRead() && moduleZip.isFile())) {
             throw new FileNotFoundException("File " + moduleZip.getAbsolutePath() + " does not exist");
         }
-        ZipInputStream zin = null;
-        BufferedInputStream bin = null;
-        boolean moduleXmlFound = false;
+        final ZipFile zip = new ZipFile(moduleZip);
         try {
-            bin = new BufferedInputStream(new FileInputStream(moduleZip));
-            zin = new ZipInputStream(bin);
-            ZipEntry ze = null;
-            while ((ze = zin.getNextEntry()) != null) {
-                if (ze.getName().endsWith("main/module.xml")) {
-                    moduleXmlFound = true;
-                    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-                    DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-                    Document doc = dBuilder.parse(zin);
-                    m.readModuleXmlInfo(doc);
-                    break;
+            List<ZipEntry> moduleXmls = new ArrayList<ZipEntry>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry ze = entries.nextElement();
+                if (!ze.isDirectory() && (ze.getName().equals(MODULE_XML) || ze.getName().endsWith("/" + MODULE_XML))) {
+                    moduleXmls.add(ze);
                 }
             }
-        } finally {
+            if (moduleXmls.isEmpty()) {
+                throw new FileNotFoundException("module.xml was not found in " + moduleZip.getAbsolutePath());
+            }
+            final DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(moduleXmls.size(), Math.max(1, Runtime.getRuntime().availableProcessors())));
             try {
-                // it should be enough to close the latest created stream in
-                // case of chained (nested) streams, @see
-                // http://www.javapractices.com/topic/TopicAction.do?Id=8
-                if (zin != null) {
-                    zin.close();
+                List<Future<ModuleInfo>> parsed = new ArrayList<Future<ModuleInfo>>();
+                for (final ZipEntry ze : moduleXmls) {
+                    parsed.add(executor.submit(new Callable<ModuleInfo>() {
+
+                        public ModuleInfo call() throws Exception {
+                            DocumentBuilder dBuilder;
+                            synchronized (dbFactory) {
+                                dBuilder = dbFactory.newDocumentBuilder();
+                            }
+                            InputStream is = zip.getInputStream(ze);
+                            try {
+                                return ModuleInfo.read(ze.getName(), dBuilder.parse(is));
+                            } finally {
+                                IOUtil.close(is);
+                            }
+                        }
+                    }));
+                }
+                for (int i = 0; i < parsed.size(); i++) {
+                    try {
+                        m.modules.add(parsed.get(i).get());
+                    } catch (ExecutionException e) {
+                        throw new IOException("Failed to read " + moduleXmls.get(i).getName() + " in " + moduleZip.getAbsolutePath() + " : "
+                                + e.getCause().getMessage(), e.getCause());
+                    }
                 }
-            } catch (IOException ex) {
+            } finally {
+                executor.shutdownNow();
             }
+        } finally {
+            zip.close();
         }
-        if (!moduleXmlFound) {
-            throw new FileNotFoundException("module.xml was not found in " + moduleZip.getAbsolutePath());
+        m.readMainModule();
+        if (m.modules.size() > 1) {
+            log.debug("Found modules " + m.modules + " in [" + moduleZip.getAbsolutePath() + "], extensions " + m.getExtensionModuleIds());
+        }
+        if (m.modules.size() > 1 && m.findExtensionModuleIds().isEmpty()) {
+            log.warn("No module in [" + moduleZip.getAbsolutePath() + "] depends on " + EXTENSION_DEPENDENCY
+                    + ", registering main module " + m.getModuleId());
         }
         return m;
     }
 
-    private void readModuleXmlInfo(Document doc) throws Exception {
-        this.moduleId = doc.getDocumentElement().getAttribute("name");
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        NodeList nodeList = (NodeList) xPath.compile("//resources/resource-root").evaluate(doc, XPathConstants.NODESET);
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            this.resources.add(nodeList.item(i).getAttributes().getNamedItem("path").getTextContent());
+    /**
+     * takes name, slot and resources of the first extension module
+     */
+    private void readMainModule() {
+        List<String> extensions = getExtensionModuleIds();
+        ModuleInfo main = modules.get(0);
+        for (ModuleInfo info : modules) {
+            if (info.getName().equals(extensions.get(0))) {
+                main = info;
+                break;
+            }
         }
+        this.moduleId = main.getName();
+        this.slot = main.getSlot();
+        this.resources = main.getResources();
     }
 
     public static JBossModule readFromDir(Log log, File rootDir) throws Exception {
@@ -120,36 +260,50 @@ public class JBossModule {
         }
         DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
         DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        Document doc = dBuilder.parse(moduleFile);
-        m.readModuleXmlInfo(doc);
+        m.modules.add(ModuleInfo.read(MODULE_XML, dBuilder.parse(moduleFile)));
+        m.readMainModule();
         return m;
     }
 
     /**
      * installs JBossModule to given directory
-     * @param jbossHome target directory to install module
+     * @param modulesHome modules directory to install module to
      * @return list of installed files
      * @throws Exception
      */
-    public List<File> installTo(File jbossHome) throws Exception {
+    public List<File> installTo(File modulesHome) throws Exception {
+        return installTo(modulesHome, null);
+    }
+
+    /**
+     * installs JBossModule to given directory within given transaction. Files are only staged, they get to target directory once transaction is
+     * committed
+     * @param modulesHome modules directory to install module to
+     * @param tx transaction to stage files in, can be null
+     * @return list of files (at their target location) installed or to be installed on commit
+     * @throws Exception
+     */
+    public List<File> installTo(File modulesHome, FileTransaction tx) throws Exception {
         List<File> installedFiles = new ArrayList<File>();
         if (isZip) {
             ZipInputStream zin = null;
             FileOutputStream fos;
-            log.info("Extracting module [" + this.root.getAbsolutePath() + "] to [" + jbossHome.getAbsolutePath() + "]");
+            log.info("Extracting module [" + this.root.getAbsolutePath() + "] to [" + modulesHome.getAbsolutePath() + "]");
+            String modulesHomePath = modulesHome.getCanonicalPath();
             try {
                 zin = new ZipInputStream(new FileInputStream(this.root));
                 ZipEntry ze = null;
                 while ((ze = zin.getNextEntry()) != null) {
                     String fileName = ze.getName();
-                    File newFile = new File(jbossHome + File.separator + fileName);
+                    File newFile = resolveEntry(modulesHome, modulesHomePath, fileName);
                     if (!ze.isDirectory()) {
                         log.debug("Writing " + newFile.getAbsolutePath());
-                        File parent = newFile.getParentFile();
+                        File out = tx == null ? newFile : tx.stage(newFile);
+                        File parent = out.getParentFile();
                         if (!parent.exists()) {
                             parent.mkdirs();
                         }
-                        fos = new FileOutputStream(newFile);
+                        fos = new FileOutputStream(out);
                         IOUtil.copy(zin, fos);
                         IOUtil.close(fos);
                         installedFiles.add(newFile);
@@ -167,28 +321,409 @@ public class JBossModule {
                 }
             }
         } else {
-            File targetDir = new File(jbossHome, "modules" + File.separator + moduleId.replaceAll("\\.", File.separator) + File.separator + "main");
-            if (!targetDir.exists() && !targetDir.mkdirs()) {
-                throw new MojoFailureException("Failed to create module directory " + targetDir.getAbsolutePath());
-            }
-            File moduleFile = new File(this.root, "module.xml");
-            for (String r : resources) {
-                File resource = new File(root, r);
-                if (!(resource.canRead())) {
-                    throw new MojoFailureException("Resource file [" + r + "] referenced in [" + moduleFile.getAbsolutePath()
-                            + "] does not exist, fix ");
+            installedFiles = installDirTo(modulesHome, tx);
+        }
+        return installedFiles;
+    }
+
+    /**
+     * installs module directory (module.xml and all resource roots) to <code>modulesHome/module/name/slot</code>. Files are collected by walking
+     * resource roots first and then installed concurrently
+     * 
+     * @param modulesHome
+     * @param tx transaction to stage files in, can be null
+     * @return installed files
+     * @throws Exception
+     */
+    private List<File> installDirTo(File modulesHome, FileTransaction tx) throws Exception {
+        File targetDir = new File(modulesHome, moduleId.replace('.', File.separatorChar) + File.separator + slot);
+        log.info("Installing module [" + this.root.getAbsolutePath() + "] to [" + targetDir.getAbsolutePath() + "]");
+        final File moduleFile = new File(this.root, "module.xml");
+        final Path rootPath = this.root.getAbsoluteFile().toPath().normalize();
+        final Path targetPath = targetDir.getAbsoluteFile().toPath().normalize();
+        final Map<File, File> files = new LinkedHashMap<File, File>();
+        files.put(moduleFile, new File(targetDir, "module.xml"));
+        for (String r : resources) {
+            // resource-root paths come from module.xml, they must not escape module directory
+            Path resourcePath = rootPath.resolve(r).normalize();
+            if (!resourcePath.startsWith(rootPath) || !targetPath.resolve(rootPath.relativize(resourcePath)).normalize().startsWith(targetPath)) {
+                throw new MojoFailureException("Resource path [" + r + "] referenced in [" + moduleFile.getAbsolutePath()
+                        + "] points outside of module directory");
+            }
+            File resource = resourcePath.toFile();
+            if (!(resource.canRead())) {
+                throw new MojoFailureException("Resource file [" + r + "] referenced in [" + moduleFile.getAbsolutePath() + "] does not exist, fix ");
+            }
+            Files.walkFileTree(resourcePath, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Path out = targetPath.resolve(rootPath.relativize(file)).normalize();
+                    if (!out.startsWith(targetPath)) {
+                        throw new IOException("Resource file [" + file + "] would be installed outside of [" + targetPath + "]");
+                    }
+                    files.put(file.toFile(), out.toFile());
+                    return FileVisitResult.CONTINUE;
                 }
-                if (resource.isFile()) {
-                    FileUtils.copyFileToDirectory(resource, targetDir);
-                    installedFiles.add(resource);
-                } else if (resource.isDirectory()) {
-                    FileUtils.copyDirectoryStructure(resource, targetDir);
+            });
+        }
+        // files are staged up front, so staging directory is swept and created before concurrent writes start
+        final Map<File, File> outputs = new LinkedHashMap<File, File>();
+        for (Map.Entry<File, File> entry : files.entrySet()) {
+            outputs.put(entry.getKey(), tx == null ? entry.getValue() : tx.stage(entry.getValue()));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), files.size())));
+        try {
+            List<Future<Void>> written = new ArrayList<Future<Void>>();
+            for (final Map.Entry<File, File> entry : outputs.entrySet()) {
+                written.add(executor.submit(new Callable<Void>() {
+
+                    public Void call() throws Exception {
+                        installFile(entry.getKey(), entry.getValue());
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : written) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Failed to install module [" + moduleId + "] : " + e.getCause().getMessage(), e.getCause());
                 }
             }
-            FileUtils.copyFileToDirectory(moduleFile, targetDir);
+        } finally {
+            executor.shutdownNow();
+        }
+        return new ArrayList<File>(files.values());
+    }
+
+    /**
+     * installs single file according to {@link #installMode}
+     * 
+     * @param source
+     * @param out file to write (target or it's staged file)
+     * @throws IOException
+     */
+    private void installFile(File source, File out) throws IOException {
+        File parent = out.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory " + parent.getAbsolutePath());
+        }
+        Files.deleteIfExists(out.toPath());
+        if (installMode == InstallMode.LINK) {
+            try {
+                Files.createLink(out.toPath(), source.toPath());
+                log.debug("Linked " + out.getAbsolutePath());
+                return;
+            } catch (IOException e) {
+                log.debug("Cannot link " + source.getAbsolutePath() + " (" + e.getMessage() + "), copying");
+            } catch (UnsupportedOperationException e) {
+                log.debug("Cannot link " + source.getAbsolutePath() + " (" + e.getMessage() + "), copying");
+            }
+        }
+        log.debug("Writing " + out.getAbsolutePath());
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream fos = new FileOutputStream(out);
+        try {
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = fos.getChannel();
+            long size = inChannel.size();
+            for (long position = 0; position < size;) {
+                position += inChannel.transferTo(position, size - position, outChannel);
+            }
+        } finally {
+            IOUtil.close(fos);
+            IOUtil.close(in);
+        }
+        out.setLastModified(source.lastModified());
+    }
+
+    /**
+     * returns names of all zip entries (files only). Names are read from zip's central directory the first time they are needed
+     * 
+     * @return entry names or empty list in case module is not a zip
+     * @throws IOException
+     */
+    public synchronized List<String> getEntryNames() throws IOException {
+        if (entryNames == null) {
+            entryNames = new ArrayList<String>();
+            if (isZip) {
+                ZipFile zip = new ZipFile(this.root);
+                try {
+                    Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry ze = entries.nextElement();
+                        if (!ze.isDirectory()) {
+                            entryNames.add(ze.getName());
+                        }
+                    }
+                } finally {
+                    zip.close();
+                }
+            }
+        }
+        return entryNames;
+    }
+
+    /**
+     * finds zip entry by it's file name in any directory (i.e. any module slot)
+     * 
+     * @param fileName
+     * @return name of first matching entry or null
+     * @throws IOException
+     */
+    public String findEntry(String fileName) throws IOException {
+        for (String name : getEntryNames()) {
+            if (name.equals(fileName) || name.endsWith("/" + fileName)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * finds all zip entries with given file name in any directory (i.e. in every module and slot)
+     * 
+     * @param fileName
+     * @return names of matching entries in the order of their appearance
+     * @throws IOException
+     */
+    public List<String> findEntries(String fileName) throws IOException {
+        List<String> found = new ArrayList<String>();
+        for (String name : getEntryNames()) {
+            if (name.equals(fileName) || name.endsWith("/" + fileName)) {
+                found.add(name);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * reads content of given zip entry without extracting the module
+     * 
+     * @param name entry name
+     * @return content as UTF-8 string
+     * @throws IOException
+     */
+    public String readEntry(String name) throws IOException {
+        ZipFile zip = new ZipFile(this.root);
+        try {
+            ZipEntry ze = zip.getEntry(name);
+            if (ze == null) {
+                throw new FileNotFoundException("Entry " + name + " was not found in " + this.root.getAbsolutePath());
+            }
+            InputStream is = zip.getInputStream(ze);
+            try {
+                return IOUtil.toString(is, "UTF-8");
+            } finally {
+                IOUtil.close(is);
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * reads CRC-32 checksums of all files within module zip from it's central directory
+     * 
+     * @return map of zip entry name to it's CRC-32
+     * @throws Exception
+     */
+    public Map<String, Long> getEntryChecksums() throws Exception {
+        Map<String, Long> checksums = new HashMap<String, Long>();
+        if (!isZip) {
+            return checksums;
+        }
+        ZipFile zip = new ZipFile(this.root);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry ze = entries.nextElement();
+                if (!ze.isDirectory()) {
+                    checksums.put(ze.getName(), ze.getCrc());
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        return checksums;
+    }
+
+    /**
+     * installs only those files of module zip, which changed since previous installation to given directory. Files which are no longer present in
+     * module zip are removed.
+     * 
+     * @param modulesHome modules directory to install module to
+     * @param checksums CRC-32 checksums of previously installed zip entries (see {@link #getEntryChecksums()}), updated by this method
+     * @return list of installed files
+     * @throws Exception
+     */
+    public List<File> installChangedTo(File modulesHome, Map<String, Long> checksums) throws Exception {
+        if (!isZip) {
+            return installTo(modulesHome);
+        }
+        List<File> installedFiles = new ArrayList<File>();
+        Set<String> removed = new HashSet<String>(checksums.keySet());
+        String modulesHomePath = modulesHome.getCanonicalPath();
+        ZipFile zip = new ZipFile(this.root);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry ze = entries.nextElement();
+                if (ze.isDirectory()) {
+                    continue;
+                }
+                removed.remove(ze.getName());
+                File newFile = resolveEntry(modulesHome, modulesHomePath, ze.getName());
+                Long previous = checksums.get(ze.getName());
+                if (previous != null && previous.longValue() == ze.getCrc() && newFile.exists()) {
+                    continue;
+                }
+                log.debug("Writing " + newFile.getAbsolutePath());
+                File parent = newFile.getParentFile();
+                if (!parent.exists()) {
+                    parent.mkdirs();
+                }
+                InputStream is = zip.getInputStream(ze);
+                FileOutputStream fos = new FileOutputStream(newFile);
+                try {
+                    IOUtil.copy(is, fos);
+                } finally {
+                    IOUtil.close(fos);
+                    IOUtil.close(is);
+                }
+                checksums.put(ze.getName(), ze.getCrc());
+                installedFiles.add(newFile);
+            }
+        } finally {
+            zip.close();
+        }
+        for (String name : removed) {
+            File oldFile;
+            try {
+                oldFile = resolveEntry(modulesHome, modulesHomePath, name);
+            } catch (IOException e) {
+                log.warn("Not removing previously installed file : " + e.getMessage());
+                checksums.remove(name);
+                continue;
+            }
+            log.debug("Removing " + oldFile.getAbsolutePath());
+            if (oldFile.exists() && !oldFile.delete()) {
+                // kept in checksums, so removal is retried next time
+                log.warn("Failed to remove " + oldFile.getAbsolutePath());
+                continue;
+            }
+            checksums.remove(name);
         }
         return installedFiles;
     }
-    
 
+    /**
+     * resolves zip entry name within modules directory
+     * 
+     * @param modulesHome
+     * @param modulesHomePath canonical path of modulesHome
+     * @param name zip entry name
+     * @return file entry is installed to
+     * @throws IOException when entry name points outside of modules directory
+     */
+    private static File resolveEntry(File modulesHome, String modulesHomePath, String name) throws IOException {
+        File file = new File(modulesHome, name);
+        if (!file.getCanonicalPath().startsWith(modulesHomePath + File.separator)) {
+            throw new IOException("Entry [" + name + "] would be installed outside of [" + modulesHomePath + "]");
+        }
+        return file;
+    }
+
+    /**
+     * module descriptor read from <code>module.xml</code>
+     */
+    public static class ModuleInfo {
+        private final String path;
+        private String name;
+        private String slot = "main";
+        private final List<String> resources = new ArrayList<String>();
+        private final List<String> dependencies = new ArrayList<String>();
+        private final List<String> dependencySlots = new ArrayList<String>();
+        private final Set<Integer> optionalDependencies = new HashSet<Integer>();
+
+        private ModuleInfo(String path) {
+            this.path = path;
+        }
+
+        static ModuleInfo read(String path, Document doc) throws Exception {
+            ModuleInfo info = new ModuleInfo(path);
+            info.name = doc.getDocumentElement().getAttribute("name");
+            if (!doc.getDocumentElement().getAttribute("slot").isEmpty()) {
+                info.slot = doc.getDocumentElement().getAttribute("slot");
+            }
+            XPath xPath = XPathFactory.newInstance().newXPath();
+            NodeList nodeList = (NodeList) xPath.compile("//resources/resource-root").evaluate(doc, XPathConstants.NODESET);
+            for (int i = 0; i < nodeList.getLength(); i++) {
+                info.resources.add(nodeList.item(i).getAttributes().getNamedItem("path").getTextContent());
+            }
+            nodeList = (NodeList) xPath.compile("//dependencies/module").evaluate(doc, XPathConstants.NODESET);
+            for (int i = 0; i < nodeList.getLength(); i++) {
+                Element dependency = (Element) nodeList.item(i);
+                String name = dependency.getAttribute("name");
+                if (Boolean.parseBoolean(dependency.getAttribute("optional"))) {
+                    info.optionalDependencies.add(info.dependencies.size());
+                }
+                info.dependencies.add(name);
+                info.dependencySlots.add(dependency.getAttribute("slot").isEmpty() ? "main" : dependency.getAttribute("slot"));
+            }
+            return info;
+        }
+
+        /**
+         *
+         * @return path of module.xml (zip entry name in case of zip)
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSlot() {
+            return slot;
+        }
+
+        public List<String> getResources() {
+            return resources;
+        }
+
+        /**
+         *
+         * @return names of modules this module depends on
+         */
+        public List<String> getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         * 
+         * @param index index within {@link #getDependencies()}
+         * @return slot of dependency
+         */
+        public String getDependencySlot(int index) {
+            return dependencySlots.get(index);
+        }
+
+        /**
+         * 
+         * @param index index within {@link #getDependencies()}
+         * @return true if dependency is optional
+         */
+        public boolean isOptionalDependency(int index) {
+            return optionalDependencies.contains(index);
+        }
+
+        @Override
+        public String toString() {
+            return name + ":" + slot;
+        }
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.Properties;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Merges children of <code>xml</code> snippet's root element into selected element. Snippet element matches existing child element of the same
+ * local name and the same value of identity <code>attribute</code> (<code>name</code> by default). Matched element gets attributes of snippet
+ * element and children of both are merged the same way, elements which do not match are appended. Nothing is ever removed, so i.e.
+ * <code>&lt;socket-binding-group&gt;&lt;socket-binding name="http" port="8081"/&gt;&lt;/socket-binding-group&gt;</code> only changes port of
+ * <code>http</code> socket binding. Snippet elements without namespace get namespace of the element they are merged to.
+ *
+ * @author lzoubek
+ *
+ */
+public class MergeChildrenOperation implements EditOperation {
+
+    public String getName() {
+        return "merge-children";
+    }
+
+    public void validate(Properties parameters) throws IllegalArgumentException {
+        if (parameters.getProperty("xml") == null) {
+            throw new IllegalArgumentException("xml is required");
+        }
+    }
+
+    public void apply(Element element, Properties parameters, Context context) throws Exception {
+        merge(element, context.parse(parameters.getProperty("xml")), parameters.getProperty("attribute", "name"));
+    }
+
+    private static void merge(Element target, Element source, String attribute) {
+        for (Node child = source.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (!(child instanceof Element)) {
+                continue;
+            }
+            Element merged = (Element) child;
+            Element existing = findMatch(target, merged, attribute);
+            if (existing == null) {
+                Element imported = (Element) target.getOwnerDocument().importNode(merged, true);
+                target.appendChild(adoptNamespace(imported, target.getNamespaceURI()));
+                continue;
+            }
+            NamedNodeMap attributes = merged.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr) attributes.item(i);
+                if (attr.getNamespaceURI() == null) {
+                    existing.setAttribute(attr.getName(), attr.getValue());
+                } else {
+                    existing.setAttributeNS(attr.getNamespaceURI(), attr.getName(), attr.getValue());
+                }
+            }
+            merge(existing, merged, attribute);
+        }
+    }
+
+    private static Element findMatch(Element target, Element merged, String attribute) {
+        String name = localName(merged);
+        String identity = merged.getAttribute(attribute);
+        for (Node child = target.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && name.equals(localName(child)) && identity.equals(((Element) child).getAttribute(attribute))) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+
+    private static String localName(Node node) {
+        return node.getLocalName() == null ? node.getNodeName() : node.getLocalName();
+    }
+
+    /**
+     * moves given element and its descendants without namespace to given namespace
+     */
+    private static Element adoptNamespace(Element element, String namespace) {
+        if (namespace == null) {
+            return element;
+        }
+        Document doc = element.getOwnerDocument();
+        Element renamed = element;
+        if (element.getNamespaceURI() == null) {
+            renamed = (Element) doc.renameNode(element, namespace, localName(element));
+        }
+        for (Node child = renamed.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                child = adoptNamespace((Element) child, namespace);
+            }
+        }
+        return renamed;
+    }
+}
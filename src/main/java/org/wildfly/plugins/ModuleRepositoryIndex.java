@@ -0,0 +1,351 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Index of JBoss module repository (i.e. <code>JBOSS_HOME/modules</code>) mapping module name and slot to module directory. Index can be persisted,
+ * each indexed directory is stored with it's modification time, so next time only directories which changed since are listed again and only
+ * <code>module.xml</code> files which changed are read again. Directories containing <code>module.xml</code> are not descended.
+ *
+ * @author lzoubek
+ *
+ */
+public class ModuleRepositoryIndex {
+
+    private static final String MODULE_XML = "module.xml";
+    private static final String HEADER = "# wildfly-extension module index 1";
+    private static final FileFilter DIRECTORIES = new FileFilter() {
+
+        public boolean accept(File file) {
+            return file.isDirectory();
+        }
+    };
+
+    private final Log log;
+    private final File repository;
+    private final File indexFile;
+    private Map<String, Dir> dirs = new HashMap<String, Dir>();
+    private final Map<String, String> modules = new HashMap<String, String>();
+    private int scanned;
+    private boolean changed;
+
+    /**
+     *
+     * @param log
+     * @param repository module repository root
+     * @param indexFile file to persist index to, can be null
+     */
+    public ModuleRepositoryIndex(Log log, File repository, File indexFile) {
+        this.log = log;
+        this.repository = repository.getAbsoluteFile();
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * loads persisted index (if any), brings it up to date with repository and persists it
+     *
+     * @return this
+     * @throws IOException
+     */
+    public ModuleRepositoryIndex load() throws IOException {
+        long start = System.currentTimeMillis();
+        if (indexFile != null && indexFile.isFile()) {
+            read();
+        }
+        Map<String, Dir> previous = dirs;
+        dirs = new HashMap<String, Dir>();
+        modules.clear();
+        scanned = 0;
+        changed = false;
+        if (repository.isDirectory()) {
+            refresh("", repository, previous);
+        }
+        if (indexFile != null && (changed || previous.size() != dirs.size())) {
+            store();
+        }
+        log.debug("Indexed " + modules.size() + " modules in [" + repository + "], " + scanned + " of " + dirs.size() + " directories scanned in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return this;
+    }
+
+    /**
+     *
+     * @param name
+     * @param slot
+     * @return true if repository contains given module
+     */
+    public boolean contains(String name, String slot) {
+        return modules.containsKey(name + ":" + slot);
+    }
+
+    /**
+     *
+     * @param name
+     * @param slot
+     * @return module directory or null
+     */
+    public File getModuleDir(String name, String slot) {
+        String path = modules.get(name + ":" + slot);
+        return path == null ? null : new File(repository, path);
+    }
+
+    /**
+     *
+     * @return number of directories listed during last {@link #load()}
+     */
+    public int getScanned() {
+        return scanned;
+    }
+
+    public int size() {
+        return modules.size();
+    }
+
+    /**
+     * finds dependencies of given module, which are neither present in repository nor provided by module itself. Optional dependencies are ignored
+     *
+     * @param module
+     * @return list of problems
+     */
+    public List<String> findMissingDependencies(JBossModule module) {
+        Set<String> provided = new HashSet<String>();
+        for (JBossModule.ModuleInfo info : module.getModules()) {
+            provided.add(info.getName() + ":" + info.getSlot());
+        }
+        List<String> problems = new ArrayList<String>();
+        for (JBossModule.ModuleInfo info : module.getModules()) {
+            for (int i = 0; i < info.getDependencies().size(); i++) {
+                String dependency = info.getDependencies().get(i);
+                String slot = info.getDependencySlot(i);
+                if (!info.isOptionalDependency(i) && !provided.contains(dependency + ":" + slot) && !contains(dependency, slot)) {
+                    problems.add("Module " + info + " depends on " + dependency + ":" + slot + ", which was not found in [" + repository + "]");
+                }
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * finds resource roots listed in module.xml files of given module, which are not present within module
+     *
+     * @param module
+     * @return list of problems
+     * @throws IOException
+     */
+    public static List<String> findMissingResourceRoots(JBossModule module) throws IOException {
+        List<String> problems = new ArrayList<String>();
+        for (JBossModule.ModuleInfo info : module.getModules()) {
+            String base = info.getPath().substring(0, info.getPath().length() - MODULE_XML.length());
+            for (String resource : info.getResources()) {
+                boolean found;
+                if (module.isZip()) {
+                    String entry = base + (resource.startsWith("./") ? resource.substring(2) : resource);
+                    found = false;
+                    for (String name : module.getEntryNames()) {
+                        if (name.equals(entry) || name.startsWith(entry + "/")) {
+                            found = true;
+                            break;
+                        }
+                    }
+                } else {
+                    found = new File(module.getRoot(), base + resource).exists();
+                }
+                if (!found) {
+                    problems.add("Resource root [" + resource + "] of module " + info + " was not found in [" + module.getRoot() + "]");
+                }
+            }
+        }
+        return problems;
+    }
+
+    private void refresh(String path, File dir, Map<String, Dir> previous) throws IOException {
+        long lastModified = dir.lastModified();
+        Dir indexed = previous.get(path);
+        boolean listed = indexed == null || indexed.lastModified != lastModified;
+        if (listed) {
+            File[] children = dir.listFiles(DIRECTORIES);
+            String[] names = new String[children == null ? 0 : children.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = children[i].getName();
+            }
+            Arrays.sort(names);
+            Dir current = new Dir(lastModified, names);
+            if (indexed != null) {
+                current.moduleXmlModified = indexed.moduleXmlModified;
+                current.name = indexed.name;
+                current.slot = indexed.slot;
+            }
+            indexed = current;
+            scanned++;
+            changed = true;
+        }
+        // module.xml can only appear or disappear when directory itself changed
+        if (listed || indexed.moduleXmlModified != 0) {
+            File moduleXml = new File(dir, MODULE_XML);
+            long moduleXmlModified = moduleXml.lastModified();
+            if (moduleXmlModified != indexed.moduleXmlModified) {
+                indexed.moduleXmlModified = moduleXmlModified;
+                readModuleXml(moduleXml, indexed);
+                changed = true;
+            }
+        }
+        dirs.put(path, indexed);
+        if (indexed.moduleXmlModified != 0) {
+            if (indexed.name != null) {
+                modules.put(indexed.name + ":" + indexed.slot, path);
+            }
+            return;
+        }
+        for (String child : indexed.children) {
+            refresh(path.isEmpty() ? child : path + "/" + child, new File(dir, child), previous);
+        }
+    }
+
+    /**
+     * reads name and slot of module, only root element is parsed
+     */
+    private void readModuleXml(File moduleXml, Dir dir) {
+        dir.name = null;
+        dir.slot = "main";
+        if (dir.moduleXmlModified == 0) {
+            return;
+        }
+        InputStream is = null;
+        try {
+            is = new FileInputStream(moduleXml);
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(is);
+            try {
+                reader.nextTag();
+                dir.name = reader.getAttributeValue(null, "name");
+                String slot = reader.getAttributeValue(null, "slot");
+                if (slot != null && !slot.isEmpty()) {
+                    dir.slot = slot;
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to read " + moduleXml.getAbsolutePath() + " : " + e.getMessage());
+        } catch (XMLStreamException e) {
+            log.debug("Failed to read " + moduleXml.getAbsolutePath() + " : " + e.getMessage());
+        } finally {
+            IOUtil.close(is);
+        }
+    }
+
+    private void read() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+        try {
+            if (!(HEADER + "\t" + repository).equals(reader.readLine())) {
+                log.debug("Index [" + indexFile.getAbsolutePath() + "] was created for other repository, ignoring");
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 6) {
+                    log.debug("Index [" + indexFile.getAbsolutePath() + "] is corrupted, ignoring");
+                    dirs.clear();
+                    return;
+                }
+                Dir dir = new Dir(Long.parseLong(fields[1]), fields[5].isEmpty() ? new String[0] : fields[5].split("/"));
+                dir.moduleXmlModified = Long.parseLong(fields[2]);
+                dir.name = fields[3].isEmpty() ? null : fields[3];
+                dir.slot = fields[4];
+                dirs.put(fields[0], dir);
+            }
+        } catch (NumberFormatException e) {
+            log.debug("Index [" + indexFile.getAbsolutePath() + "] is corrupted, ignoring");
+            dirs.clear();
+        } finally {
+            IOUtil.close(reader);
+        }
+    }
+
+    private void store() throws IOException {
+        File parent = indexFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory " + parent.getAbsolutePath());
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile), "UTF-8");
+        try {
+            writer.write(HEADER + "\t" + repository + "\n");
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, Dir> entry : dirs.entrySet()) {
+                Dir dir = entry.getValue();
+                sb.setLength(0);
+                sb.append(entry.getKey()).append('\t').append(dir.lastModified).append('\t').append(dir.moduleXmlModified).append('\t')
+                        .append(dir.name == null ? "" : dir.name).append('\t').append(dir.slot).append('\t');
+                for (int i = 0; i < dir.children.length; i++) {
+                    sb.append(i == 0 ? "" : "/").append(dir.children[i]);
+                }
+                writer.write(sb.append('\n').toString());
+            }
+        } finally {
+            IOUtil.close(writer);
+        }
+    }
+
+    /**
+     * indexed directory
+     */
+    private static class Dir {
+        private final long lastModified;
+        private final String[] children;
+        /**
+         * 0 if directory does not contain module.xml
+         */
+        private long moduleXmlModified;
+        private String name;
+        private String slot = "main";
+
+        Dir(long lastModified, String[] children) {
+            this.lastModified = lastModified;
+            this.children = children;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Checks whether module installed in modules directory matches its source zip. Expected size and CRC-32 of each file is taken from zip's central
+ * directory (zip content is not inflated), installed files having expected size are checksummed in parallel.
+ *
+ * @author lzoubek
+ *
+ */
+public class ModuleVerifier {
+
+    /**
+     * size of buffer files are read with. Files are not mapped to memory, mapped file stays locked (on Windows) until buffer is garbage
+     * collected, so module failing verification could not be reinstalled
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Log log;
+
+    public ModuleVerifier(Log log) {
+        this.log = log;
+    }
+
+    /**
+     * verifies module installed from given zip
+     *
+     * @param moduleZip
+     * @param modulesHome directory module was installed to
+     * @return verification report
+     * @throws Exception
+     */
+    public Report verify(File moduleZip, File modulesHome) throws Exception {
+        final Map<String, ZipEntry> expected = new LinkedHashMap<String, ZipEntry>();
+        ZipFile zip = new ZipFile(moduleZip);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry ze = entries.nextElement();
+                if (!ze.isDirectory()) {
+                    expected.put(ze.getName(), ze);
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        Report report = new Report();
+        Set<File> dirs = new HashSet<File>();
+        Set<File> files = new HashSet<File>();
+        Map<String, Future<Long>> checksums = new LinkedHashMap<String, Future<Long>>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        try {
+            for (final ZipEntry ze : expected.values()) {
+                final File file = new File(modulesHome, ze.getName());
+                report.files.add(file);
+                files.add(file);
+                dirs.add(file.getParentFile());
+                if (!file.isFile()) {
+                    report.missing.add(ze.getName());
+                } else if (ze.getSize() >= 0 && file.length() != ze.getSize()) {
+                    report.modified.add(ze.getName());
+                } else {
+                    checksums.put(ze.getName(), executor.submit(new Callable<Long>() {
+
+                        public Long call() throws Exception {
+                            return crc(file);
+                        }
+                    }));
+                }
+            }
+            for (Map.Entry<String, Future<Long>> entry : checksums.entrySet()) {
+                if (entry.getValue().get().longValue() != expected.get(entry.getKey()).getCrc()) {
+                    report.modified.add(entry.getKey());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (File dir : dirs) {
+            File[] present = dir.listFiles();
+            for (int i = 0; present != null && i < present.length; i++) {
+                if (present[i].isFile() && !files.contains(present[i])) {
+                    report.extra.add(present[i].getAbsolutePath().substring(modulesHome.getAbsolutePath().length() + 1).replace(File.separatorChar, '/'));
+                }
+            }
+        }
+        Collections.sort(report.extra);
+        log.debug("Verified " + expected.size() + " files of [" + moduleZip.getAbsolutePath() + "], " + checksums.size() + " checksummed");
+        return report;
+    }
+
+    /**
+     * computes CRC-32 of given file
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream is = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            IOUtil.close(is);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * result of module verification, file names are relative to modules directory
+     */
+    public static class Report {
+        private final List<File> files = new ArrayList<File>();
+        private final List<String> missing = new ArrayList<String>();
+        private final List<String> modified = new ArrayList<String>();
+        private final List<String> extra = new ArrayList<String>();
+
+        /**
+         *
+         * @return true if all files are installed and unmodified and there are no other files in module directories
+         */
+        public boolean isClean() {
+            return missing.isEmpty() && modified.isEmpty() && extra.isEmpty();
+        }
+
+        /**
+         *
+         * @return all files module zip installs
+         */
+        public List<File> getFiles() {
+            return files;
+        }
+
+        public List<String> getMissing() {
+            return missing;
+        }
+
+        public List<String> getModified() {
+            return modified;
+        }
+
+        public List<String> getExtra() {
+            return extra;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder("verification [").append("missing=" + missing).append(" modified=" + modified).append(" extra=" + extra)
+                    .append("]").toString();
+        }
+    }
+}
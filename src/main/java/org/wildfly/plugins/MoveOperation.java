@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.w3c.dom.Element;
+
+/**
+ * Moves selected element to element selected by <code>to</code> expression, which must select exactly 1 element. Moved element is appended
+ * as last child.
+ *
+ * @author lzoubek
+ *
+ */
+public class MoveOperation implements EditOperation {
+
+    public String getName() {
+        return "move";
+    }
+
+    public void validate(Properties parameters) throws IllegalArgumentException {
+        if (parameters.getProperty("to") == null) {
+            throw new IllegalArgumentException("to is required");
+        }
+    }
+
+    public void apply(Element element, Properties parameters, Context context) throws Exception {
+        List<Element> targets = context.select(parameters.getProperty("to"));
+        if (targets.size() != 1) {
+            throw new IllegalStateException("to [" + parameters.getProperty("to") + "] selects " + targets.size() + " elements, 1 expected");
+        }
+        targets.get(0).appendChild(element);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Index of in-scope namespaces of document elements. In-scope namespace of an element is value of <code>xmlns</code> attribute declared by the
+ * element itself or by the closest of its ancestors. Index is built once per document and updated each time content is inserted, so looking up
+ * namespace for any element does not need to walk its parents.
+ *
+ * @author lzoubek
+ *
+ */
+public class NamespaceScopeIndex {
+
+    private final Map<Node, String> scopes = new IdentityHashMap<Node, String>();
+
+    public NamespaceScopeIndex(Document doc) {
+        Element root = doc.getDocumentElement();
+        if (root != null) {
+            index(root, null, null, null);
+        }
+    }
+
+    /**
+     *
+     * @param element
+     * @return namespace in scope of given element or null if there is no such namespace
+     */
+    public String getNamespace(Element element) {
+        if (scopes.containsKey(element)) {
+            return scopes.get(element);
+        }
+        // element is not indexed (i.e. it was added behind our back), resolve it and remember
+        String ns = declaredNamespace(element);
+        if (ns == null) {
+            Node parent = element.getParentNode();
+            if (parent instanceof Element) {
+                ns = getNamespace((Element) parent);
+            }
+        }
+        scopes.put(element, ns);
+        return ns;
+    }
+
+    /**
+     * indexes element which was just inserted into document as a child of already indexed element. If <code>renameTo</code> is set, all elements
+     * of inserted subtree, which do not declare their own namespace, are renamed to it. Renaming stops at elements declaring namespace, because
+     * all their children belong to it
+     *
+     * @param doc document owning inserted element
+     * @param inserted inserted element
+     * @param renameTo namespace to rename inserted elements to, can be null
+     * @return inserted element (which might be a different instance in case it was renamed)
+     */
+    public Element inserted(Document doc, Element inserted, String renameTo) {
+        Node parent = inserted.getParentNode();
+        String parentNs = parent instanceof Element ? getNamespace((Element) parent) : null;
+        return index(inserted, parentNs, doc, renameTo);
+    }
+
+    private Element index(Element start, String startScope, Document doc, String renameTo) {
+        Deque<Element> elements = new ArrayDeque<Element>();
+        Deque<String> inherited = new ArrayDeque<String>();
+        Deque<Boolean> renaming = new ArrayDeque<Boolean>();
+        elements.push(start);
+        // ArrayDeque does not permit nulls, empty string stands for no namespace
+        inherited.push(startScope == null ? "" : startScope);
+        renaming.push(renameTo != null);
+        Element result = null;
+        while (!elements.isEmpty()) {
+            Element el = elements.pop();
+            String scope = inherited.pop();
+            boolean rename = renaming.pop();
+            String declared = declaredNamespace(el);
+            if (declared != null) {
+                scope = declared;
+                rename = false;
+            } else if (rename) {
+                el = (Element) doc.renameNode(el, renameTo, el.getNodeName());
+            }
+            if (result == null) {
+                result = el;
+            }
+            scopes.put(el, scope.isEmpty() ? null : scope);
+            for (Node child = el.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    elements.push((Element) child);
+                    inherited.push(scope);
+                    renaming.push(rename);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String declaredNamespace(Element element) {
+        String ns = element.getAttribute("xmlns");
+        return ns.isEmpty() ? null : ns;
+    }
+}
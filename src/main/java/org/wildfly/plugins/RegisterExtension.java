@@ -21,46 +21,186 @@
  */
 package org.wildfly.plugins;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
 
 public class RegisterExtension {
 
     final Log log;
+    private DocumentCache documentCache;
+    private File configSnapshot;
 
     public RegisterExtension(Log log) {
         this.log = log;
     }
 
     /**
-     * registers extension to standalone.xml
+     * sets cache of parsed server configuration files, see {@link XmlConfigBuilder#documentCache(DocumentCache)}
+     * 
+     * @param documentCache
+     * @return
+     */
+    public RegisterExtension documentCache(DocumentCache documentCache) {
+        this.documentCache = documentCache;
+        return this;
+    }
+
+    /**
+     * sets file to keep snapshot of parsed server configuration in, see {@link XmlConfigBuilder#snapshot(File)}
+     * 
+     * @param configSnapshot can be null
+     * @return
+     */
+    public RegisterExtension configSnapshot(File configSnapshot) {
+        this.configSnapshot = configSnapshot;
+        return this;
+    }
+
+    /**
+     * validates all edits, backups original server configuration file and registers extension to standalone.xml. Nothing is written in case
+     * validation fails
      * 
      * @param options
      * @throws Exception
      */
     public void register(RegisterOptions options) throws Exception {
+        register(options, null);
+    }
+
+    /**
+     * same as {@link #register(RegisterOptions)}, but backup and new server configuration file are only staged in given transaction
+     * 
+     * @param options
+     * @param tx can be null
+     * @throws Exception
+     */
+    public void register(RegisterOptions options, FileTransaction tx) throws Exception {
+        commit(options, prepare(options), tx);
+    }
+
+    /**
+     * parses server configuration and applies all edits in memory (see {@link XmlConfigBuilder#validate()}). Nothing is written
+     * 
+     * @param options
+     * @return validated builder to be passed to {@link #commit(RegisterOptions, XmlConfigBuilder, FileTransaction)}
+     * @throws Exception when any edit is not valid
+     */
+    public XmlConfigBuilder prepare(RegisterOptions options) throws Exception {
+        File serverConfig = options.getServerConfig();
+        if (options.shouldRegisterExtension()) {
+            for (String moduleId : options.getModuleIds()) {
+                log.info("Register extension module=" + moduleId);
+            }
+        }
+        XmlConfigBuilder builder = new XmlConfigBuilder(this.log, serverConfig, serverConfig).inserts(createInserts(options))
+                .removes(createRemoves(options)).failNoMatch(options.isFailNoMatch()).parallel(options.isParallel())
+                .preserveFormatting(options.isPreserveFormatting()).memoryBudget(options.getMemoryBudget())
+                .timeBudget(options.getTimeBudget()).documentCache(documentCache).snapshot(configSnapshot);
+        if (options.getEditsFile() != null) {
+            new EditsFileReader(log).read(options.getEditsFile(), builder);
+        }
+        return builder.validate();
+    }
+
+    /**
+     * backups original server configuration file and writes new one prepared by {@link #prepare(RegisterOptions)}
+     * 
+     * @param options
+     * @param builder
+     * @param tx transaction to stage files in, can be null
+     * @throws Exception
+     */
+    public void commit(RegisterOptions options, XmlConfigBuilder builder, FileTransaction tx) throws Exception {
+        File serverConfig = options.getServerConfig();
+        log.info("Backup original serverConfig [" + serverConfig.getAbsolutePath() + "] to [" + options.getServerConfigBackup().getAbsolutePath()
+                + "]");
+        FileUtils.copyFile(serverConfig, tx == null ? options.getServerConfigBackup() : tx.stage(options.getServerConfigBackup()));
+        builder.build(tx);
+
+        log.info("New serverConfig file written to [" + options.getServerConfig().getAbsolutePath() + "]");
+    }
+
+    /**
+     * applies given inserts to current server configuration file without taking backup. This is used to re-apply inserts whose content has changed
+     * since extension was registered
+     * 
+     * @param options
+     * @param inserts subset of {@link #createInserts(RegisterOptions)}
+     * @throws Exception
+     */
+    public void update(RegisterOptions options, List<Insert> inserts) throws Exception {
+        update(options, inserts, false);
+    }
+
+    /**
+     * applies given inserts and optionally all operations from {@link RegisterOptions#getEditsFile()} to current server configuration file
+     * without taking backup
+     * 
+     * @param options
+     * @param inserts subset of {@link #createInserts(RegisterOptions)}
+     * @param withEditsFile whether to re-apply edits file
+     * @throws Exception
+     */
+    public void update(RegisterOptions options, List<Insert> inserts, boolean withEditsFile) throws Exception {
+        XmlConfigBuilder builder = new XmlConfigBuilder(this.log, options.getServerConfig(), options.getServerConfig()).inserts(inserts)
+                .failNoMatch(options.isFailNoMatch()).parallel(options.isParallel())
+                .preserveFormatting(options.isPreserveFormatting()).memoryBudget(options.getMemoryBudget())
+                .timeBudget(options.getTimeBudget()).documentCache(documentCache).snapshot(configSnapshot);
+        if (withEditsFile && options.getEditsFile() != null) {
+            new EditsFileReader(log).read(options.getEditsFile(), builder);
+        }
+        builder.build();
+        log.info("Updated serverConfig file [" + options.getServerConfig().getAbsolutePath() + "]");
+    }
+
+    /**
+     * creates all removes needed to apply given options to server configuration
+     * 
+     * @param options
+     * @return
+     */
+    public List<Remove> createRemoves(RegisterOptions options) {
+        List<Remove> removes = new ArrayList<Remove>();
+        for (String select : options.getRemoves()) {
+            removes.add(new Remove(select));
+        }
+        return removes;
+    }
+
+    /**
+     * creates all inserts needed to apply given options to server configuration
+     * 
+     * @param options
+     * @return
+     */
+    public List<Insert> createInserts(RegisterOptions options) {
         List<Insert> inserts = new ArrayList<Insert>();
         inserts.addAll(Arrays.asList(options.getInserts()));
-        if (options.shouldRegisterExtension() && options.getModuleId() != null) {
-            log.info("Register extension module=" + options.getModuleId());
-            inserts.add(new Insert("/server/extensions", "<extension module=\"" + options.getModuleId() + "\"/>"));
+        if (options.shouldRegisterExtension()) {
+            for (String moduleId : options.getModuleIds()) {
+                inserts.add(new Insert("/server/extensions", "<extension module=\"" + moduleId + "\"/>"));
+            }
         }
 
         if (options.getSubsystem() != null) {
             inserts.add(new Insert("/server/profile", options.getSubsystem()));
+        } else if (options.getSubsystemXml() != null) {
+            inserts.add(new Insert("/server/profile", options.getSubsystemXml()));
         }
-        if (options.getSocketBindingGroups() != null && options.getSocketBinding() != null) {
+        if (options.getSocketBindingGroups() != null && (options.getSocketBinding() != null || options.getSocketBindingXml() != null)) {
             for (String group : options.getSocketBindingGroups()) {
-                inserts.add(new Insert("/server/socket-binding-group[@name='" + group + "']", options.getSocketBinding()).withAttribute("name"));
+                String select = "/server/socket-binding-group[@name='" + group + "']";
+                Insert insert = options.getSocketBinding() != null ? new Insert(select, options.getSocketBinding()) : new Insert(select,
+                        options.getSocketBindingXml());
+                inserts.add(insert.withAttribute("name"));
             }
         }
-        new XmlConfigBuilder(this.log, options.getServerConfigBackup(), options.getServerConfig()).inserts(inserts)
-                .failNoMatch(options.isFailNoMatch()).build();
-
-        log.info("New serverConfig file written to [" + options.getServerConfig().getAbsolutePath() + "]");
+        return inserts;
     }
 
 }
@@ -22,7 +22,12 @@
 package org.wildfly.plugins;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
 
 /**
  * this class just holds all inputs for changes to be made in standalone.xml or domain.xml
@@ -36,11 +41,18 @@ public class RegisterOptions {
     private File serverConfigBackup;
     private File subsystem;
     private File socketBinding;
+    private String subsystemXml;
+    private String socketBindingXml;
     private String[] socketBindingGroups;
     private Insert[] inserts;
-    String[] removes;
-    private String moduleId;
+    private String[] removes;
+    private File editsFile;
+    private String[] moduleIds;
     private boolean failNoMatch;
+    private boolean parallel;
+    private boolean preserveFormatting;
+    private long memoryBudget;
+    private long timeBudget;
     private boolean registerExtension = true;
 
     public RegisterOptions() {
@@ -52,12 +64,20 @@ public class RegisterOptions {
         return new StringBuilder("RegisterOptions: [")
             .append("\n  serverConfig = " + serverConfig)
             .append("\n  serverConfigBackup = " + serverConfigBackup)
-            .append("\n  moduleId = "+moduleId)
+            .append("\n  moduleIds = " + Arrays.toString(moduleIds))
             .append("\n  subsystem = " + subsystem)
             .append("\n  socket-binding = " + socketBinding)
+            .append("\n  subsystemXml = " + subsystemXml)
+            .append("\n  socketBindingXml = " + socketBindingXml)
             .append("\n  socketBindingGroups = " + Arrays.toString(socketBindingGroups))
             .append("\n  edit = " + Arrays.toString(inserts))
+            .append("\n  remove = " + Arrays.toString(removes))
+            .append("\n  editsFile = " + editsFile)
             .append("\n  failNoMatch = " + failNoMatch)
+            .append("\n  parallel = " + parallel)
+            .append("\n  preserveFormatting = " + preserveFormatting)
+            .append("\n  memoryBudget = " + memoryBudget)
+            .append("\n  timeBudget = " + timeBudget)
             .append("\n]")
             .toString();
     }
@@ -72,22 +92,217 @@ public class RegisterOptions {
         this.serverConfigBackup = options.serverConfigBackup == null ? this.serverConfigBackup : options.serverConfigBackup;
         this.subsystem = options.subsystem == null ? this.subsystem : options.subsystem;
         this.socketBinding = options.socketBinding == null ? this.socketBinding : options.socketBinding;
+        this.subsystemXml = options.subsystemXml == null ? this.subsystemXml : options.subsystemXml;
+        this.socketBindingXml = options.socketBindingXml == null ? this.socketBindingXml : options.socketBindingXml;
         this.socketBindingGroups = options.socketBindingGroups == null ? this.socketBindingGroups : options.socketBindingGroups;
         this.inserts = options.inserts == null ? this.inserts : options.inserts;
         this.removes = options.removes == null ? this.removes : options.removes;
-        this.moduleId = options.moduleId == null ? this.moduleId : options.moduleId;
+        this.editsFile = options.editsFile == null ? this.editsFile : options.editsFile;
+        this.moduleIds = options.moduleIds == null ? this.moduleIds : options.moduleIds;
         this.failNoMatch = options.failNoMatch;
+        this.parallel = options.parallel;
+        this.preserveFormatting = options.preserveFormatting;
+        this.memoryBudget = options.memoryBudget;
+        this.timeBudget = options.timeBudget;
         this.registerExtension = options.registerExtension;
         return this;
     }
 
+    /**
+     * stores this instance as properties, so it can be persisted or sent to {@link ConfigDaemon}
+     * 
+     * @return properties readable by {@link #fromProperties(Properties)}
+     */
+    public Properties toProperties() {
+        Properties props = new Properties();
+        setProperty(props, "serverConfig", serverConfig);
+        setProperty(props, "serverConfigBackup", serverConfigBackup);
+        setProperty(props, "subsystem", subsystem);
+        setProperty(props, "socketBinding", socketBinding);
+        setProperty(props, "subsystemXml", subsystemXml);
+        setProperty(props, "socketBindingXml", socketBindingXml);
+        setProperty(props, "moduleId", join(moduleIds));
+        setProperty(props, "editsFile", editsFile);
+        setProperty(props, "socketBindingGroups", join(socketBindingGroups));
+        props.setProperty("failNoMatch", String.valueOf(failNoMatch));
+        props.setProperty("parallel", String.valueOf(parallel));
+        props.setProperty("preserveFormatting", String.valueOf(preserveFormatting));
+        props.setProperty("memoryBudget", String.valueOf(memoryBudget));
+        props.setProperty("timeBudget", String.valueOf(timeBudget));
+        props.setProperty("registerExtension", String.valueOf(registerExtension));
+        for (int i = 0; inserts != null && i < inserts.length; i++) {
+            Insert insert = inserts[i];
+            String prefix = "insert." + i + ".";
+            setProperty(props, prefix + "select", insert.getSelect());
+            setProperty(props, prefix + "content", insert.getContent());
+            setProperty(props, prefix + "xml", insert.getXml());
+            setProperty(props, prefix + "attribute", insert.getAttribute());
+            setProperty(props, prefix + "when", insert.getWhen());
+            setProperty(props, prefix + "unless", insert.getUnless());
+            for (int j = 0; insert.getParameters() != null && j < insert.getParameters().length; j++) {
+                for (String name : insert.getParameters()[j].stringPropertyNames()) {
+                    props.setProperty(prefix + "parameters." + j + "." + name, insert.getParameters()[j].getProperty(name));
+                }
+            }
+        }
+        for (int i = 0; removes != null && i < removes.length; i++) {
+            props.setProperty("remove." + i, removes[i]);
+        }
+        return props;
+    }
+
+    /**
+     * reads options previously stored by {@link #toProperties()}
+     * 
+     * @param props
+     * @return new instance
+     */
+    public static RegisterOptions fromProperties(Properties props) {
+        RegisterOptions options = new RegisterOptions();
+        options.serverConfig = getFile(props, "serverConfig");
+        options.serverConfigBackup = getFile(props, "serverConfigBackup");
+        options.subsystem = getFile(props, "subsystem");
+        options.socketBinding = getFile(props, "socketBinding");
+        options.subsystemXml = props.getProperty("subsystemXml");
+        options.socketBindingXml = props.getProperty("socketBindingXml");
+        String moduleIds = props.getProperty("moduleId");
+        if (moduleIds != null) {
+            options.moduleIds = moduleIds.split(",");
+        }
+        options.editsFile = getFile(props, "editsFile");
+        String groups = props.getProperty("socketBindingGroups");
+        if (groups != null) {
+            options.socketBindingGroups = groups.split(",");
+        }
+        options.failNoMatch = Boolean.parseBoolean(props.getProperty("failNoMatch", "false"));
+        options.parallel = Boolean.parseBoolean(props.getProperty("parallel", "false"));
+        options.preserveFormatting = Boolean.parseBoolean(props.getProperty("preserveFormatting", "false"));
+        options.memoryBudget = Long.parseLong(props.getProperty("memoryBudget", "0"));
+        options.timeBudget = Long.parseLong(props.getProperty("timeBudget", "0"));
+        options.registerExtension = Boolean.parseBoolean(props.getProperty("registerExtension", "true"));
+        List<Insert> inserts = new ArrayList<Insert>();
+        for (int i = 0; props.getProperty("insert." + i + ".select") != null; i++) {
+            String prefix = "insert." + i + ".";
+            Insert insert = new Insert();
+            insert.setSelect(props.getProperty(prefix + "select"));
+            insert.setContent(getFile(props, prefix + "content"));
+            insert.setXml(props.getProperty(prefix + "xml"));
+            insert.setAttribute(props.getProperty(prefix + "attribute"));
+            insert.setWhen(props.getProperty(prefix + "when"));
+            insert.setUnless(props.getProperty(prefix + "unless"));
+            Map<Integer, Properties> parameters = new TreeMap<Integer, Properties>();
+            for (String key : props.stringPropertyNames()) {
+                if (key.startsWith(prefix + "parameters.")) {
+                    String rest = key.substring(prefix.length() + "parameters.".length());
+                    Integer index = Integer.valueOf(rest.substring(0, rest.indexOf('.')));
+                    if (!parameters.containsKey(index)) {
+                        parameters.put(index, new Properties());
+                    }
+                    parameters.get(index).setProperty(rest.substring(rest.indexOf('.') + 1), props.getProperty(key));
+                }
+            }
+            if (!parameters.isEmpty()) {
+                insert.setParameters(parameters.values().toArray(new Properties[parameters.size()]));
+            }
+            inserts.add(insert);
+        }
+        if (!inserts.isEmpty()) {
+            options.inserts = inserts.toArray(new Insert[inserts.size()]);
+        }
+        List<String> removes = new ArrayList<String>();
+        for (int i = 0; props.getProperty("remove." + i) != null; i++) {
+            removes.add(props.getProperty("remove." + i));
+        }
+        if (!removes.isEmpty()) {
+            options.removes = removes.toArray(new String[removes.size()]);
+        }
+        return options;
+    }
+
+    private static void setProperty(Properties props, String key, Object value) {
+        if (value != null) {
+            props.setProperty(key, value instanceof File ? ((File) value).getAbsolutePath() : value.toString());
+        }
+    }
+
+    private static String join(String[] values) {
+        if (values == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            sb.append(sb.length() == 0 ? "" : ",").append(value);
+        }
+        return sb.toString();
+    }
+
+    private static File getFile(Properties props, String key) {
+        String value = props.getProperty(key);
+        return value == null ? null : new File(value);
+    }
+
     public RegisterOptions failNoMatch(boolean failNoMatch) {
         this.failNoMatch = failNoMatch;
         return this;
     }
 
+    /**
+     * prepare inserts concurrently (see {@link XmlConfigBuilder#parallel(boolean)})
+     * 
+     * @param parallel
+     * @return
+     */
+    public RegisterOptions parallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    /**
+     * write only changed parts of server configuration (see {@link XmlConfigBuilder#preserveFormatting(boolean)})
+     * 
+     * @param preserveFormatting
+     * @return
+     */
+    public RegisterOptions preserveFormatting(boolean preserveFormatting) {
+        this.preserveFormatting = preserveFormatting;
+        return this;
+    }
+
+    /**
+     * heap available for parsed server configuration (see {@link XmlConfigBuilder#memoryBudget(long)})
+     * 
+     * @param memoryBudget in bytes, 0 means heap currently available
+     * @return
+     */
+    public RegisterOptions memoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    /**
+     * time budget of editing server configuration (see {@link XmlConfigBuilder#timeBudget(long)})
+     * 
+     * @param timeBudget in milliseconds, 0 means no limit
+     * @return
+     */
+    public RegisterOptions timeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+        return this;
+    }
+
     public RegisterOptions withExtension(String moduleId) {
-        this.moduleId = moduleId;
+        this.moduleIds = moduleId == null ? null : new String[] { moduleId };
+        return this;
+    }
+
+    /**
+     * registers several extension modules (i.e. all extensions provided by single module zip)
+     * 
+     * @param moduleIds
+     * @return
+     */
+    public RegisterOptions withExtensions(String... moduleIds) {
+        this.moduleIds = moduleIds == null || moduleIds.length == 0 ? null : moduleIds;
         return this;
     }
 
@@ -111,6 +326,28 @@ public class RegisterOptions {
         return this;
     }
 
+    /**
+     * sets subsystem content as string, used when {@link #subsystem(File)} is not set
+     * 
+     * @param subsystemXml
+     * @return
+     */
+    public RegisterOptions subsystemXml(String subsystemXml) {
+        this.subsystemXml = subsystemXml;
+        return this;
+    }
+
+    /**
+     * sets socket-binding content as string, used when {@link #socketBinding(File)} is not set
+     * 
+     * @param socketBindingXml
+     * @return
+     */
+    public RegisterOptions socketBindingXml(String socketBindingXml) {
+        this.socketBindingXml = socketBindingXml;
+        return this;
+    }
+
     public RegisterOptions socketBindingGroups(String[] socketBindingGroups) {
         this.socketBindingGroups = socketBindingGroups;
         return this;
@@ -138,6 +375,15 @@ public class RegisterOptions {
         return this;
     }
 
+    public RegisterOptions editsFile(File editsFile) {
+        this.editsFile = editsFile;
+        return this;
+    }
+
+    public File getEditsFile() {
+        return editsFile;
+    }
+
     public String[] getRemoves() {
         if (removes == null) {
             removes = new String[] {};
@@ -157,12 +403,32 @@ public class RegisterOptions {
         return subsystem;
     }
 
+    public String getSubsystemXml() {
+        return subsystemXml;
+    }
+
+    public String getSocketBindingXml() {
+        return socketBindingXml;
+    }
+
     public String[] getSocketBindingGroups() {
         return socketBindingGroups;
     }
 
+    /**
+     * 
+     * @return first extension module or null
+     */
     public String getModuleId() {
-        return moduleId;
+        return moduleIds == null ? null : moduleIds[0];
+    }
+
+    /**
+     * 
+     * @return all extension modules, never null
+     */
+    public String[] getModuleIds() {
+        return moduleIds == null ? new String[0] : moduleIds;
     }
 
     public File getServerConfigBackup() {
@@ -173,6 +439,22 @@ public class RegisterOptions {
         return failNoMatch;
     }
 
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public boolean isPreserveFormatting() {
+        return preserveFormatting;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
     public boolean shouldRegisterExtension(){
         return registerExtension;
     }
@@ -21,9 +21,18 @@
  */
 package org.wildfly.plugins;
 
+/**
+ * A remove item represents 1 edit action to be performed on target XML document. All nodes evaluated by {@link #select} expression are removed.
+ * Remove can be made conditional by {@link #when} and/or {@link #unless} expressions, see {@link Insert}.
+ * 
+ * @author lzoubek
+ * 
+ */
 public class Remove {
 
     private String select;
+    private String when;
+    private String unless;
 
     public Remove() {
 
@@ -33,6 +42,32 @@ public class Remove {
         this.select = select;
     }
 
+    public Remove withWhen(String when) {
+        this.when = when;
+        return this;
+    }
+
+    public Remove withUnless(String unless) {
+        this.unless = unless;
+        return this;
+    }
+
+    public String getWhen() {
+        return when;
+    }
+
+    public void setWhen(String when) {
+        this.when = when;
+    }
+
+    public String getUnless() {
+        return unless;
+    }
+
+    public void setUnless(String unless) {
+        this.unless = unless;
+    }
+
     public void setSelect(String select) {
         this.select = select;
     }
@@ -40,4 +75,10 @@ public class Remove {
     public String getSelect() {
         return select;
     }
+
+    @Override
+    public String toString() {
+        return new StringBuilder("remove [").append("select=" + this.select).append(when == null ? "" : " when=" + when)
+                .append(unless == null ? "" : " unless=" + unless).append("]").toString();
+    }
 }
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.Properties;
+
+import org.w3c.dom.Element;
+
+/**
+ * Sets attribute <code>name</code> of selected element to <code>value</code>. Attribute is removed when <code>value</code> is not set.
+ *
+ * @author lzoubek
+ *
+ */
+public class SetAttributeOperation implements EditOperation {
+
+    public String getName() {
+        return "set-attribute";
+    }
+
+    public void validate(Properties parameters) throws IllegalArgumentException {
+        if (parameters.getProperty("name") == null) {
+            throw new IllegalArgumentException("name is required");
+        }
+    }
+
+    public void apply(Element element, Properties parameters, Context context) throws Exception {
+        String value = parameters.getProperty("value");
+        if (value == null) {
+            element.removeAttribute(parameters.getProperty("name"));
+        } else {
+            element.setAttribute(parameters.getProperty("name"), value);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Compiled form of XML snippet containing <code>${name}</code> placeholders. Snippet is parsed and scanned for placeholders only once, each
+ * instance is then a deep clone of snippet's root element with placeholder values filled in. Only placeholders having a value in given parameters
+ * are substituted, others (i.e. WildFly's <code>${jboss.bind.address:127.0.0.1}</code> expressions) are left untouched.
+ *
+ * Large snippets can be {@link #streamed(File) streamed} instead. Such template keeps no parsed document, each instance is read from snippet file
+ * straight into nodes owned by target document (placeholders are substituted while reading), so snippet is materialized only once per instance.
+ *
+ * @author lzoubek
+ *
+ */
+public class SnippetTemplate {
+
+    /**
+     * JDK's StAX implementation reports CDATA sections as characters unless asked to
+     */
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    private final Document document;
+    private final File file;
+    private final String rootName;
+    private final String namespace;
+    private final List<Slot> slots = new ArrayList<Slot>();
+
+    public SnippetTemplate(Document document) {
+        this.document = document;
+        this.file = null;
+        this.rootName = document.getDocumentElement().getNodeName();
+        String ns = document.getDocumentElement().getAttribute("xmlns");
+        this.namespace = ns.isEmpty() ? null : ns;
+        compile(document.getDocumentElement(), new ArrayList<Integer>());
+    }
+
+    private SnippetTemplate(File file, String rootName, String namespace) {
+        this.document = null;
+        this.file = file;
+        this.rootName = rootName;
+        this.namespace = namespace;
+    }
+
+    /**
+     * creates template reading given snippet file each time it's instantiated. File is read through once to check it's well-formed
+     *
+     * @param file
+     * @return streamed template
+     * @throws Exception when file cannot be read or is not well-formed
+     */
+    public static SnippetTemplate streamed(File file) throws Exception {
+        String rootName = null;
+        String namespace = null;
+        InputStream is = new FileInputStream(file);
+        try {
+            XMLStreamReader reader = createReader(is);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && rootName == null) {
+                        rootName = qualifiedName(reader.getPrefix(), reader.getLocalName());
+                        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                            String prefix = reader.getNamespacePrefix(i);
+                            if (prefix == null || prefix.isEmpty()) {
+                                namespace = reader.getNamespaceURI(i);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } finally {
+            IOUtil.close(is);
+        }
+        if (rootName == null) {
+            throw new XMLStreamException("Snippet has no root element");
+        }
+        return new SnippetTemplate(file, rootName, namespace == null || namespace.isEmpty() ? null : namespace);
+    }
+
+    /**
+     *
+     * @return parsed snippet or null if this template is streamed
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     *
+     * @return true if instances are read from snippet file
+     */
+    public boolean isStreamed() {
+        return document == null;
+    }
+
+    /**
+     *
+     * @return qualified name of snippet's root element
+     */
+    public String getRootName() {
+        return rootName;
+    }
+
+    /**
+     *
+     * @return namespace declared by snippet's root element (<code>xmlns</code> attribute) or null
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * creates new instance of snippet's root element owned by given document
+     *
+     * @param owner document new instance will be inserted into
+     * @param parameters placeholder values, can be null
+     * @return new element (not yet attached to any parent)
+     */
+    public Element instantiate(Document owner, Properties parameters) {
+        if (document == null) {
+            try {
+                return read(owner, parameters);
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to read [" + file + "] : " + e.getMessage(), e);
+            }
+        }
+        return fill((Element) owner.importNode(document.getDocumentElement(), true), parameters);
+    }
+
+    /**
+     * creates new instance of snippet's root element owned by snippet document. Instance can be later moved to target document by
+     * {@link Document#adoptNode(Node)}. Unlike {@link #instantiate(Document, Properties)} this method does not touch target document, thus can be
+     * called concurrently with other instances being created (for same template instances are created one at a time)
+     * 
+     * @param parameters placeholder values, can be null
+     * @return new element (not yet attached to any parent)
+     */
+    public Element instantiate(Properties parameters) {
+        if (document == null) {
+            throw new UnsupportedOperationException("Streamed template can only be instantiated into target document");
+        }
+        synchronized (document) {
+            return fill((Element) document.getDocumentElement().cloneNode(true), parameters);
+        }
+    }
+
+    private static XMLStreamReader createReader(InputStream is) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        if (factory.isPropertySupported(REPORT_CDATA)) {
+            factory.setProperty(REPORT_CDATA, true);
+        }
+        // encoding is taken from XML declaration, UTF-8 when there is none
+        return factory.createXMLStreamReader(is);
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * reads root element of snippet file into new nodes owned by given document. Adjacent character events are joined into single text node, so
+     * result equals to importing parsed snippet
+     *
+     * @param owner
+     * @param parameters placeholder values, can be null
+     * @return new element (not yet attached to any parent)
+     * @throws Exception
+     */
+    private Element read(Document owner, Properties parameters) throws Exception {
+        boolean substitute = parameters != null && !parameters.isEmpty();
+        Element root = null;
+        Node current = null;
+        StringBuilder text = new StringBuilder();
+        InputStream is = new FileInputStream(file);
+        try {
+            XMLStreamReader reader = createReader(is);
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (current == null && event != XMLStreamConstants.START_ELEMENT) {
+                        // prolog and epilog are not part of instance
+                        continue;
+                    }
+                    if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE) {
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        continue;
+                    }
+                    if (text.length() > 0) {
+                        current.appendChild(owner.createTextNode(value(text.toString(), parameters, substitute)));
+                        text.setLength(0);
+                    }
+                    switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        String ns = reader.getNamespaceURI();
+                        Element element = owner.createElementNS(ns == null || ns.isEmpty() ? null : ns,
+                                qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                            String prefix = reader.getNamespacePrefix(i);
+                            String uri = reader.getNamespaceURI(i);
+                            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, prefix == null || prefix.isEmpty() ? "xmlns"
+                                    : "xmlns:" + prefix, uri == null ? "" : uri);
+                        }
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            String attrNs = reader.getAttributeNamespace(i);
+                            element.setAttributeNS(attrNs == null || attrNs.isEmpty() ? null : attrNs,
+                                    qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                                    value(reader.getAttributeValue(i), parameters, substitute));
+                        }
+                        if (current == null) {
+                            root = element;
+                        } else {
+                            current.appendChild(element);
+                        }
+                        current = element;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        current = current == root ? null : current.getParentNode();
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        current.appendChild(owner.createCDATASection(value(reader.getText(), parameters, substitute)));
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        current.appendChild(owner.createComment(reader.getText()));
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        current.appendChild(owner.createProcessingInstruction(reader.getPITarget(), reader.getPIData() == null ? "" : reader.getPIData()));
+                        break;
+                    default:
+                        break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } finally {
+            IOUtil.close(is);
+        }
+        return root;
+    }
+
+    private static String value(String value, Properties parameters, boolean substitute) {
+        return substitute && value.contains("${") ? new Slot(new ArrayList<Integer>(), null, value).substitute(parameters) : value;
+    }
+
+    private Element fill(Element root, Properties parameters) {
+        if (parameters == null || parameters.isEmpty()) {
+            return root;
+        }
+        for (Slot slot : slots) {
+            Node node = root;
+            for (int index : slot.path) {
+                node = node.getChildNodes().item(index);
+            }
+            String value = slot.substitute(parameters);
+            if (slot.attribute != null) {
+                ((Element) node).getAttributeNode(slot.attribute).setValue(value);
+            } else {
+                node.setNodeValue(value);
+            }
+        }
+        return root;
+    }
+
+    private void compile(Element element, List<Integer> path) {
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attr = (Attr) attributes.item(i);
+            if (attr.getValue().contains("${")) {
+                slots.add(new Slot(path, attr.getName(), attr.getValue()));
+            }
+        }
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            path.add(i);
+            if (child instanceof Element) {
+                compile((Element) child, path);
+            } else if ((child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE)
+                    && child.getNodeValue().contains("${")) {
+                slots.add(new Slot(path, null, child.getNodeValue()));
+            }
+            path.remove(path.size() - 1);
+        }
+    }
+
+    /**
+     * single text node or attribute value containing placeholders. Value is split into literal text and placeholder names, odd segments are names
+     */
+    private static class Slot {
+        private final int[] path;
+        private final String attribute;
+        private final List<String> segments = new ArrayList<String>();
+
+        Slot(List<Integer> path, String attribute, String value) {
+            this.path = new int[path.size()];
+            for (int i = 0; i < this.path.length; i++) {
+                this.path[i] = path.get(i);
+            }
+            this.attribute = attribute;
+            int pos = 0;
+            int start;
+            while ((start = value.indexOf("${", pos)) >= 0) {
+                int end = value.indexOf('}', start);
+                if (end < 0) {
+                    break;
+                }
+                // take the innermost placeholder, i.e. ${jboss.bind.address:${name}}
+                start = value.lastIndexOf("${", end);
+                segments.add(value.substring(pos, start));
+                segments.add(value.substring(start + 2, end));
+                pos = end + 1;
+            }
+            segments.add(value.substring(pos));
+        }
+
+        String substitute(Properties parameters) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < segments.size(); i++) {
+                String segment = segments.get(i);
+                if (i % 2 == 0) {
+                    sb.append(segment);
+                } else {
+                    String value = parameters.getProperty(segment);
+                    sb.append(value == null ? "${" + segment + "}" : value);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
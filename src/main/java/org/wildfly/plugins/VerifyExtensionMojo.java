@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Goal which verifies that JBoss module installed in modules directory matches module zip (takes same configuration as {@link DeployExtensionMojo}).
+ * Missing, modified and extra files are reported.
+ *
+ * @since 0.8
+ */
+@Mojo(name = "verify", requiresDependencyCollection = ResolutionScope.COMPILE)
+public class VerifyExtensionMojo extends DeployExtensionMojo {
+
+    /**
+     * Whether to fail the build in case installed module does not match module zip
+     */
+    @Parameter(property = "wildfly-extension.failOnMismatch", defaultValue = "true")
+    private boolean failOnMismatch;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        prepare();
+        if (getModuleZip() == null) {
+            throw new MojoFailureException("Either [moduleZip] or [artifact] must be set to verify installed module");
+        }
+        ModuleVerifier.Report report;
+        try {
+            report = new ModuleVerifier(getLog()).verify(getModuleZip(), getModulesHomeAbsolute());
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to verify module : " + e.getMessage(), e);
+        }
+        for (String file : report.getMissing()) {
+            getLog().warn("Missing " + file);
+        }
+        for (String file : report.getModified()) {
+            getLog().warn("Modified " + file);
+        }
+        for (String file : report.getExtra()) {
+            getLog().warn("Extra " + file);
+        }
+        if (report.isClean()) {
+            getLog().info("Module [" + getModuleZip().getAbsolutePath() + "] is installed in [" + getModulesHomeAbsolute().getAbsolutePath() + "]");
+        } else if (failOnMismatch) {
+            throw new MojoFailureException("Module installed in [" + getModulesHomeAbsolute().getAbsolutePath() + "] does not match ["
+                    + getModuleZip().getAbsolutePath() + "] : " + report);
+        }
+    }
+}
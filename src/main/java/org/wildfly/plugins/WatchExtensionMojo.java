@@ -0,0 +1,212 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Goal which deploys JBoss module to JBoss AS7/WildFly server (same as {@link DeployExtensionMojo}) and then keeps watching module zip, subsystem,
+ * socket-binding, edit content files and edits file. Once any of them changes, only changed module files are re-installed and only inserts using changed
+ * content are re-applied to server configuration. Goal runs until Maven is interrupted.
+ *
+ * @since 0.8
+ */
+@Mojo(name = "watch", requiresDependencyCollection = ResolutionScope.COMPILE)
+public class WatchExtensionMojo extends DeployExtensionMojo {
+
+    /**
+     * Time in milliseconds to wait for further changes before changes are applied. Saving a file (or re-building module zip) usually fires several
+     * events in a row.
+     */
+    @Parameter(defaultValue = "200")
+    private long watchDebounce;
+
+    private WatchService watchService;
+    private final Map<Path, Set<Path>> watchedFiles = new HashMap<Path, Set<Path>>();
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (isSkipDeploy()) {
+            getLog().info("Skipped execution");
+            return;
+        }
+        RegisterOptions options = deploy();
+        RegisterExtension register = new RegisterExtension(getLog());
+        List<Insert> inserts = register.createInserts(options);
+
+        JBossModule module = null;
+        Map<String, Long> checksums = null;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            if (getModuleZip() != null) {
+                module = JBossModule.readFromZipFile(getLog(), getModuleZip());
+                checksums = module.getEntryChecksums();
+                watch(getModuleZip());
+            }
+            for (Insert insert : inserts) {
+                watch(insert.getContent());
+            }
+            watch(options.getEditsFile());
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to start watching files : " + e.getMessage(), e);
+        }
+
+        getLog().info("Watching for changes, press Ctrl+C to stop");
+        try {
+            while (true) {
+                Set<File> changed = awaitChanges();
+                long start = System.currentTimeMillis();
+                if (module != null && changed.contains(getModuleZip().getAbsoluteFile())) {
+                    getLog().info("Module [" + getModuleZip().getAbsolutePath() + "] changed, installing changed files");
+                    try {
+                        module = JBossModule.readFromZipFile(getLog(), getModuleZip());
+                        for (File f : module.installChangedTo(getModulesHomeAbsolute(), checksums)) {
+                            changed.add(f.getAbsoluteFile());
+                        }
+                    } catch (Exception e) {
+                        // zip might still being written, we'll get another event
+                        getLog().error("Failed to install module : " + e.getMessage());
+                        continue;
+                    }
+                }
+                Set<String> changedXml = new HashSet<String>();
+                if (module != null && changed.contains(getModuleZip().getAbsoluteFile())) {
+                    // snippets bundled in zip are used as strings
+                    try {
+                        RegisterOptions snippets = resolveBundledXmlSnippets(module);
+                        if (isChanged(snippets.getSubsystemXml(), options.getSubsystemXml())
+                                || isChanged(snippets.getSocketBindingXml(), options.getSocketBindingXml())) {
+                            changedXml.add(snippets.getSubsystemXml());
+                            changedXml.add(snippets.getSocketBindingXml());
+                            options.subsystemXml(snippets.getSubsystemXml()).socketBindingXml(snippets.getSocketBindingXml());
+                            inserts = register.createInserts(options);
+                        }
+                    } catch (IOException e) {
+                        getLog().error("Failed to read snippets from module : " + e.getMessage());
+                    }
+                }
+                List<Insert> affected = new ArrayList<Insert>();
+                for (Insert insert : inserts) {
+                    if (insert.getContent() != null && changed.contains(insert.getContent().getAbsoluteFile())) {
+                        affected.add(insert);
+                    } else if (insert.getXml() != null && changedXml.contains(insert.getXml())) {
+                        affected.add(insert);
+                    }
+                }
+                boolean editsChanged = options.getEditsFile() != null && changed.contains(options.getEditsFile().getAbsoluteFile());
+                if (!affected.isEmpty() || editsChanged) {
+                    try {
+                        register.update(options, affected, editsChanged);
+                    } catch (Exception e) {
+                        getLog().error("Failed to update server configuration file : " + e.getMessage());
+                        continue;
+                    }
+                }
+                getLog().info("Changes applied in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        } catch (InterruptedException e) {
+            getLog().info("Stopped watching");
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    private static boolean isChanged(String current, String previous) {
+        return current == null ? previous != null : !current.equals(previous);
+    }
+
+    private void watch(File file) throws IOException {
+        if (file == null) {
+            return;
+        }
+        Path path = file.getAbsoluteFile().toPath();
+        Path dir = path.getParent();
+        Set<Path> files = watchedFiles.get(dir);
+        if (files == null) {
+            files = new HashSet<Path>();
+            watchedFiles.put(dir, files);
+            dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        }
+        files.add(path);
+        getLog().debug("Watching " + path);
+    }
+
+    /**
+     * blocks until some of watched files changes and no other change comes within {@link #watchDebounce}
+     *
+     * @return changed files
+     * @throws InterruptedException
+     */
+    private Set<File> awaitChanges() throws InterruptedException {
+        Set<File> changed = new HashSet<File>();
+        WatchKey key = watchService.take();
+        while (key != null) {
+            Path dir = (Path) key.watchable();
+            Set<Path> files = watchedFiles.get(dir);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.context() instanceof Path) {
+                    Path path = dir.resolve((Path) event.context());
+                    if (files != null && files.contains(path)) {
+                        changed.add(path.toFile());
+                    }
+                }
+            }
+            key.reset();
+            if (changed.isEmpty()) {
+                // nothing we care about, wait for another change
+                key = watchService.take();
+            } else {
+                key = watchService.poll(watchDebounce, TimeUnit.MILLISECONDS);
+            }
+        }
+        for (File f : changed) {
+            getLog().debug("Changed " + f.getAbsolutePath());
+        }
+        return changed;
+    }
+}
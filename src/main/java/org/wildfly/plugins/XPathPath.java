@@ -0,0 +1,356 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Parsed XPath location path (or union of paths). Expression is split to steps on <code>/</code> and <code>|</code>, but only outside of
+ * predicates, function calls and string literals, so i.e. <code>/server/deployment[@path='a/b']</code> has 2 steps. Each step is a name test
+ * followed by it's predicates, everything else (separators, whitespace) is kept as is. Namespacing (see {@link #namespaced(String)}) does not
+ * rely on steps, it tokenizes whole expression, so paths nested in predicates and function calls are namespaced as well. Parsed paths are
+ * immutable and cached, see {@link #parse(String)}.
+ *
+ * @author lzoubek
+ *
+ */
+public class XPathPath {
+
+    private static final int CACHE_SIZE = 1024;
+    private static final ConcurrentMap<String, XPathPath> CACHE = new ConcurrentHashMap<String, XPathPath>();
+
+    private final String expression;
+    private final List<Step> steps;
+    /**
+     * last rendering by {@link #namespaced(String)}, prefix followed by result
+     */
+    private volatile String[] namespaced;
+
+    private XPathPath(String expression, List<Step> steps) {
+        this.expression = expression;
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * parses given expression or returns already parsed instance
+     *
+     * @param expression
+     * @return parsed path
+     */
+    public static XPathPath parse(String expression) {
+        XPathPath path = CACHE.get(expression);
+        if (path == null) {
+            path = new XPathPath(expression, parseSteps(expression));
+            if (CACHE.size() >= CACHE_SIZE) {
+                CACHE.clear();
+            }
+            CACHE.put(expression, path);
+        }
+        return path;
+    }
+
+    private static List<Step> parseSteps(String expression) {
+        List<Step> steps = new ArrayList<Step>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[' || c == '(') {
+                depth++;
+            } else if (c == ']' || c == ')') {
+                depth--;
+            } else if (depth == 0 && (c == '/' || c == '|')) {
+                addStep(steps, expression, start, i);
+                start = i + 1;
+            }
+        }
+        addStep(steps, expression, start, expression.length());
+        return steps;
+    }
+
+    private static void addStep(List<Step> steps, String expression, int start, int end) {
+        while (start < end && Character.isWhitespace(expression.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(expression.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return;
+        }
+        int nameEnd = start;
+        while (nameEnd < end && expression.charAt(nameEnd) != '[') {
+            nameEnd++;
+        }
+        int axisEnd = expression.lastIndexOf("::", nameEnd);
+        String axis = axisEnd < start ? null : expression.substring(start, axisEnd).trim();
+        int nameStart = axis == null ? start : axisEnd + 2;
+        boolean descendant = start >= 2 && expression.startsWith("//", start - 2) || axis != null && axis.startsWith("descendant");
+        steps.add(new Step(axis, descendant, nameEnd, end, expression.substring(nameStart, nameEnd), expression.substring(nameEnd, end)));
+    }
+
+    /**
+     *
+     * @return original expression
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     *
+     * @return steps of this path
+     */
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     *
+     * @param count
+     * @return expression up to the end of given number of steps (including their predicates)
+     */
+    public String head(int count) {
+        return count >= steps.size() ? expression : expression.substring(0, steps.get(count - 1).end);
+    }
+
+    /**
+     * renders this expression with given prefix added to each unprefixed element name test, wherever location path appears (top level, predicates,
+     * function arguments, parenthesized expressions and unions). Expression is tokenized by XPath 1.0 lexical rules, so attribute names, axis
+     * names, function names, node type tests, operator names, variables and literals are left untouched
+     *
+     * @param prefix
+     * @return namespaced expression
+     * @throws IllegalArgumentException when expression cannot be tokenized (i.e. unterminated literal or unbalanced brackets)
+     */
+    public String namespaced(String prefix) {
+        String[] last = namespaced;
+        if (last != null && last[0].equals(prefix)) {
+            return last[1];
+        }
+        StringBuilder sb = new StringBuilder(expression.length() + steps.size() * (prefix.length() + 1));
+        // true when previous token is an operand, next name is then an operator name and * is multiplication
+        boolean operand = false;
+        // true when next name test is an attribute or namespace name
+        boolean attribute = false;
+        int depth = 0;
+        int length = expression.length();
+        int i = 0;
+        while (i < length) {
+            char c = expression.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                i = expression.indexOf(c, i + 1);
+                if (i < 0) {
+                    throw new IllegalArgumentException("Expression [" + expression + "] has unterminated literal");
+                }
+                i++;
+                operand = true;
+            } else if (Character.isDigit(c) || c == '.') {
+                // number, . or ..
+                while (i < length && (Character.isDigit(expression.charAt(i)) || expression.charAt(i) == '.')) {
+                    i++;
+                }
+                operand = true;
+            } else if (c == ')' || c == ']') {
+                if (--depth < 0) {
+                    throw new IllegalArgumentException("Expression [" + expression + "] has unbalanced brackets");
+                }
+                i++;
+                operand = true;
+            } else if (c == '(' || c == '[') {
+                depth++;
+                i++;
+                operand = false;
+            } else if (c == '@') {
+                i++;
+                attribute = true;
+                operand = false;
+            } else if (c == '*') {
+                i++;
+                // wildcard is left as it is, multiplication is an operator
+                attribute = false;
+                operand = !operand;
+            } else if (c == '$') {
+                i = nameEnd(expression, i + 1);
+                operand = true;
+            } else if ("/|,+-=!<>".indexOf(c) >= 0) {
+                i++;
+                operand = false;
+            } else if (c == ':' && expression.startsWith("::", i)) {
+                i += 2;
+                operand = false;
+            } else if (Character.isLetter(c) || c == '_') {
+                i = nameEnd(expression, i);
+                boolean prefixed = false;
+                if (i + 1 < length && expression.charAt(i) == ':' && expression.charAt(i + 1) != ':') {
+                    prefixed = true;
+                    i = expression.charAt(i + 1) == '*' ? i + 2 : nameEnd(expression, i + 1);
+                }
+                int next = i;
+                while (next < length && Character.isWhitespace(expression.charAt(next))) {
+                    next++;
+                }
+                if (operand) {
+                    // and, or, mod, div
+                    operand = false;
+                } else if (next < length && expression.charAt(next) == '(') {
+                    // function call or node type test
+                    operand = false;
+                } else if (expression.startsWith("::", next)) {
+                    String axis = expression.substring(start, i);
+                    attribute = "attribute".equals(axis) || "namespace".equals(axis);
+                    operand = false;
+                } else {
+                    if (!prefixed && !attribute) {
+                        sb.append(prefix).append(':');
+                    }
+                    attribute = false;
+                    operand = true;
+                }
+            } else {
+                throw new IllegalArgumentException("Expression [" + expression + "] cannot be namespaced, unexpected character '" + c + "' at "
+                        + i);
+            }
+            sb.append(expression, start, i);
+        }
+        if (depth != 0) {
+            throw new IllegalArgumentException("Expression [" + expression + "] has unbalanced brackets");
+        }
+        String result = sb.toString();
+        namespaced = new String[] { prefix, result };
+        return result;
+    }
+
+    private static int nameEnd(String expression, int i) {
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.')) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * appends given value to given builder as XPath string literal. Value containing both kinds of quotes is written as <code>concat()</code>
+     *
+     * @param sb
+     * @param value
+     * @return given builder
+     */
+    public static StringBuilder appendLiteral(StringBuilder sb, String value) {
+        if (value.indexOf('\'') < 0) {
+            return sb.append('\'').append(value).append('\'');
+        }
+        if (value.indexOf('"') < 0) {
+            return sb.append('"').append(value).append('"');
+        }
+        sb.append("concat(");
+        int start = 0;
+        for (int i = value.indexOf('\''); i >= 0; i = value.indexOf('\'', start)) {
+            sb.append('\'').append(value, start, i).append("',\"'\",");
+            start = i + 1;
+        }
+        return sb.append('\'').append(value, start, value.length()).append("')");
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * single location step, positions are offsets within path expression
+     */
+    public static class Step {
+        private final String axis;
+        private final boolean descendant;
+        private final int predicatesStart;
+        private final int end;
+        private final String name;
+        private final String predicates;
+
+        Step(String axis, boolean descendant, int predicatesStart, int end, String name, String predicates) {
+            this.axis = axis;
+            this.descendant = descendant;
+            this.predicatesStart = predicatesStart;
+            this.end = end;
+            this.name = name;
+            this.predicates = predicates;
+        }
+
+        /**
+         *
+         * @return axis of this step or null when abbreviated
+         */
+        public String getAxis() {
+            return axis;
+        }
+
+        /**
+         *
+         * @return true if step selects descendants (<code>//</code> or descendant axis) rather than children
+         */
+        public boolean isDescendant() {
+            return descendant;
+        }
+
+        /**
+         *
+         * @return name test of this step (without axis and predicates)
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         *
+         * @return true if step has at least one predicate
+         */
+        public boolean hasPredicates() {
+            return predicatesStart < end;
+        }
+
+        /**
+         *
+         * @return predicates of this step (including brackets), empty if there are none
+         */
+        public String getPredicates() {
+            return predicates;
+        }
+    }
+}
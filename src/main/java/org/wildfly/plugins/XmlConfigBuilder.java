@@ -21,15 +21,30 @@
  */
 package org.wildfly.plugins;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -54,15 +69,50 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
 public class XmlConfigBuilder {
 
     private static final String PREFIX = "x";
     private static final String PREFIX_CONTENT = "ns";
+    /**
+     * content files of this size or larger are not parsed, but streamed into target document (see {@link SnippetTemplate#streamed(File)})
+     */
+    static final long STREAMING_THRESHOLD = 256 * 1024;
+    /**
+     * estimated heap taken by DOM per byte of parsed file
+     */
+    static final int DOM_COST_FACTOR = 10;
     private static final Pattern NS_IN_XPATH = Pattern.compile("namespace-uri\\(\\)[^\']+\'([^\']+)");
     private List<Insert> inserts;
     private List<Remove> removes;
+    private List<Edit> edits;
     private boolean failNoMatch;
+    private boolean parallel;
+    private boolean preserveFormatting;
+    private FormatPreservingWriter preservingWriter;
+    private DocumentCache documentCache;
+    private ConfigSnapshot snapshot;
+    /**
+     * number of conditions evaluated by last build
+     */
+    private int conditionEvaluations;
+    private long memoryBudget;
+    private long timeBudget;
+    /**
+     * set by {@link #validate()} when estimated DOM cost does not fit memory budget
+     */
+    private boolean constrained;
+    private long estimatedCost;
+    private long started;
+    private long peakMemory;
+    private Strategy strategy;
+    private boolean formatted;
+    /**
+     * compiled insert contents, shared by inserts using same content
+     */
+    private final Map<String, SnippetTemplate> templates = new HashMap<String, SnippetTemplate>();
+    private Document prepared;
     private final File targetFile;
     private final File sourceFile;
     final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -108,19 +158,253 @@ public class XmlConfigBuilder {
         }
     }
 
+    private void info(String message) {
+        if (this.log != null) {
+            log.info(message);
+        } else {
+            System.out.println(message);
+        }
+    }
+
+    /**
+     * applies all edits to target file. Edits are {@link #validate() validated} first (unless it was done already), so nothing is written in case
+     * any of them fails
+     * 
+     * @throws Exception
+     */
     public void build() throws Exception {
-        DocumentBuilder dBuilder = factory.newDocumentBuilder();
-        Document srcDoc = dBuilder.parse(sourceFile);
+        build(null);
+    }
 
-        // sort inserts by the shortest
-        Collections.sort(getInserts(), new Comparator<Insert>() {
+    /**
+     * same as {@link #build()}, but target file is only staged in given transaction
+     * 
+     * @param tx can be null
+     * @throws Exception
+     */
+    public void build(FileTransaction tx) throws Exception {
+        validate();
+        File target = tx == null ? targetFile : tx.stage(targetFile);
+        if (preservingWriter != null && preservingWriter.write(prepared, target)) {
+            debug("Patched [" + sourceFile + "] into target file");
+            strategy = Strategy.PRESERVING;
+            formatted = false;
+        } else {
+            long elapsed = System.currentTimeMillis() - started;
+            formatted = timeBudget <= 0 || elapsed < timeBudget;
+            if (!formatted) {
+                warning("Time budget spent after " + elapsed + " ms, [" + target + "] will not be formatted");
+            }
+            strategy = constrained ? Strategy.STREAMING : Strategy.DOM;
+            writeTargetDcoument(prepared, target, formatted);
+        }
+        sampleMemory();
+        long elapsed = System.currentTimeMillis() - started;
+        info("Wrote [" + target + "] using " + strategy + " strategy" + (formatted ? "" : " without formatting") + " in " + elapsed
+                + " ms, estimated DOM size " + megabytes(estimatedCost) + " MB (budget " + megabytes(getMemoryBudget()) + " MB), peak heap "
+                + megabytes(peakMemory) + " MB");
+        if (timeBudget > 0 && elapsed > timeBudget) {
+            warning("Building [" + target + "] took " + elapsed + " ms, time budget is " + timeBudget + " ms");
+        }
+    }
 
-            public int compare(Insert o1, Insert o2) {
-                Integer o1Size = o1.getSelect().split("/").length;
-                Integer o2Size = o2.getSelect().split("/").length;
-                return o1Size.compareTo(o2Size);
+    /**
+     * sums size of source file and all insert content files, which are not streamed, multiplied by {@link #DOM_COST_FACTOR}
+     * 
+     * @return estimated heap needed to hold parsed documents
+     */
+    long estimateCost() {
+        long size = sourceFile.length();
+        Map<String, File> contents = new HashMap<String, File>();
+        for (Insert insert : getInserts()) {
+            if (insert.getContent() != null && insert.getContent().length() < STREAMING_THRESHOLD) {
+                contents.put(templateKey(insert), insert.getContent());
             }
-        });
+        }
+        for (File content : contents.values()) {
+            size += content.length();
+        }
+        return size * DOM_COST_FACTOR;
+    }
+
+    /**
+     * 
+     * @return memory budget set by {@link #memoryBudget(long)}, heap available to this JVM otherwise
+     */
+    public long getMemoryBudget() {
+        if (memoryBudget > 0) {
+            return memoryBudget;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * 
+     * @return strategy used by last build or null
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * 
+     * @return true if last build wrote whole document and formatted it
+     */
+    public boolean isFormatted() {
+        return formatted;
+    }
+
+    /**
+     * 
+     * @return highest heap usage sampled during last build (after parse, apply and write), in bytes
+     */
+    public long getPeakMemory() {
+        return peakMemory;
+    }
+
+    private void sampleMemory() {
+        peakMemory = Math.max(peakMemory, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    }
+
+    private static long megabytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    /**
+     * how target document was built
+     */
+    public enum Strategy {
+        /**
+         * source file and insert contents (up to {@link XmlConfigBuilder#STREAMING_THRESHOLD}) parsed, whole document written
+         */
+        DOM,
+        /**
+         * estimated DOM size did not fit memory budget, all insert contents streamed into source document, document cache bypassed, whole
+         * document written
+         */
+        STREAMING,
+        /**
+         * only changed elements written, see {@link FormatPreservingWriter}
+         */
+        PRESERVING
+    }
+
+    /**
+     * parses source file and all insert contents concurrently and applies all edits to parsed document in memory. All failures (unparsable
+     * content, failing xpath, select not matching anything when {@link #failNoMatch(boolean)} is set) are reported at once. Edited document is kept
+     * and written by {@link #build()}, so validation is not a wasted work
+     * 
+     * @return this builder
+     * @throws Exception listing all failures
+     */
+    public XmlConfigBuilder validate() throws Exception {
+        if (prepared != null) {
+            return this;
+        }
+        started = System.currentTimeMillis();
+        peakMemory = 0;
+        estimatedCost = estimateCost();
+        constrained = estimatedCost > getMemoryBudget();
+        if (constrained) {
+            debug("Estimated DOM size " + megabytes(estimatedCost) + " MB exceeds budget " + megabytes(getMemoryBudget())
+                    + " MB, contents will be streamed and document cache skipped");
+        }
+        List<String> errors = new ArrayList<String>();
+        Document srcDoc = parseAll(errors);
+        sampleMemory();
+        preservingWriter = preserveFormatting ? FormatPreservingWriter.attach(sourceFile, srcDoc) : null;
+        if (preserveFormatting && preservingWriter == null) {
+            debug("Formatting of [" + sourceFile + "] cannot be preserved, whole document will be written");
+        }
+        apply(srcDoc, errors);
+        sampleMemory();
+        if (!errors.isEmpty()) {
+            StringBuilder sb = new StringBuilder("Failed to update [" + targetFile.getAbsolutePath() + "] :");
+            for (String error : errors) {
+                sb.append("\n  ").append(error);
+            }
+            throw new Exception(sb.toString());
+        }
+        prepared = srcDoc;
+        return this;
+    }
+
+    /**
+     * parses source document and contents of all inserts using up to 1 thread per CPU
+     * 
+     * @param errors list to add content parsing failures to
+     * @return parsed source document
+     * @throws Exception when source document cannot be parsed
+     */
+    private Document parseAll(List<String> errors) throws Exception {
+        final Map<String, Insert> contents = new LinkedHashMap<String, Insert>();
+        for (Insert insert : getInserts()) {
+            if (!templates.containsKey(templateKey(insert)) && !contents.containsKey(templateKey(insert))) {
+                contents.put(templateKey(insert), insert);
+            }
+        }
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), contents.size() + 1));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Future<Document> source = executor.submit(new Callable<Document>() {
+
+                public Document call() throws Exception {
+                    DocumentBuilder dBuilder = newDocumentBuilder();
+                    if (documentCache != null && !constrained) {
+                        // cache keeps its own copy
+                        return documentCache.parse(dBuilder, sourceFile);
+                    }
+                    if (snapshot != null) {
+                        int hits = snapshot.getHits();
+                        Document doc = snapshot.parse(dBuilder, sourceFile);
+                        debug((snapshot.getHits() > hits ? "Loaded [" : "Parsed [") + sourceFile + "], snapshot ["
+                                + snapshot.getSnapshotFile() + "]");
+                        return doc;
+                    }
+                    return dBuilder.parse(sourceFile);
+                }
+            });
+            Map<String, Future<SnippetTemplate>> parsed = new LinkedHashMap<String, Future<SnippetTemplate>>();
+            for (final Insert insert : contents.values()) {
+                parsed.put(templateKey(insert), executor.submit(new Callable<SnippetTemplate>() {
+
+                    public SnippetTemplate call() throws Exception {
+                        return parseTemplate(newDocumentBuilder(), insert);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<SnippetTemplate>> entry : parsed.entrySet()) {
+                try {
+                    templates.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    errors.add(contents.get(entry.getKey()) + " content cannot be parsed : " + e.getCause().getMessage());
+                }
+            }
+            try {
+                return source.get();
+            } catch (ExecutionException e) {
+                throw new Exception("Failed to parse [" + sourceFile.getAbsolutePath() + "] : " + e.getCause().getMessage(), e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private DocumentBuilder newDocumentBuilder() throws Exception {
+        synchronized (factory) {
+            return factory.newDocumentBuilder();
+        }
+    }
+
+    /**
+     * applies all removes and inserts to given document
+     * 
+     * @param srcDoc
+     * @param errors list to add failures to
+     * @throws Exception
+     */
+    private void apply(Document srcDoc, List<String> errors) throws Exception {
         debug("Building [" + this.sourceFile + "] ");
         // if our target document defines namespace in root element, let's read
         // it
@@ -129,71 +413,397 @@ public class XmlConfigBuilder {
             namespaceContext.mapping(PREFIX, namespace);
         }
 
-        for (Insert insert : getInserts()) {
-            debug("Applying " + insert);
-            String expression = insert.getSelect();
+        // conditions see source document as it was parsed, each distinct expression is evaluated once
+        Map<String, Boolean> conditions = evaluateConditions(srcDoc, namespace, errors);
 
+        for (Remove remove : getRemoves()) {
+            if (!holds(conditions, remove.getWhen(), remove.getUnless(), remove)) {
+                continue;
+            }
+            debug("Applying " + remove);
+            String expression = remove.getSelect();
             if (namespace != null) {
-                // enhance given xpath to use namespaces
                 expression = xpath2Namespaced(expression, PREFIX);
                 debug("Expression " + expression);
             }
-            XPathExpression expr = xpath.compile(expression);
+            NodeList nl;
+            try {
+                nl = select(srcDoc, expression);
+            } catch (XPathExpressionException e) {
+                errors.add(remove + " cannot be evaluated : " + e.getMessage());
+                continue;
+            }
+            if (nl.getLength() == 0) {
+                if (failNoMatch) {
+                    errors.add(remove + " does not select any element");
+                }
+                warning(remove + " does not select any element");
+            }
+            for (int i = 0; i < nl.getLength(); i++) {
+                Node node = nl.item(i);
+                if (node.getParentNode() != null) {
+                    node.getParentNode().removeChild(node);
+                }
+            }
+        }
+
+        NamespaceScopeIndex namespaces = new NamespaceScopeIndex(srcDoc);
+
+        // inserts selecting content added by other inserts must go after them
+        InsertScheduler scheduler = new InsertScheduler();
+        for (Insert insert : getInserts()) {
+            if (!holds(conditions, insert.getWhen(), insert.getUnless(), insert)) {
+                continue;
+            }
+            SnippetTemplate template = templates.get(templateKey(insert));
+            scheduler.add(insert, template == null ? null : template.getRootName());
+        }
+        List<Insert> ordered = scheduler.order();
+        Map<Insert, PreparedInsert> preparedInserts = parallel && ordered.size() > 1 ? prepareInserts(ordered, namespace) : null;
+        for (Insert insert : ordered) {
+            applyInsert(srcDoc, namespace, namespaces, insert, preparedInserts == null ? null : preparedInserts.get(insert), errors);
+        }
+
+        // edits go last, so they can change inserted content
+        EditContext context = new EditContext(srcDoc, namespace);
+        for (Edit edit : getEdits()) {
+            if (holds(conditions, edit.getWhen(), edit.getUnless(), edit)) {
+                applyEdit(context, edit, errors);
+            }
+        }
+    }
+
+    /**
+     * evaluates all distinct <code>when</code> and <code>unless</code> expressions of removes, inserts and edits as booleans
+     * 
+     * @param srcDoc
+     * @param namespace namespace of source document, can be null
+     * @param errors list to add failures to
+     * @return condition results by expression, expressions which failed to evaluate are missing
+     */
+    private Map<String, Boolean> evaluateConditions(Document srcDoc, String namespace, List<String> errors) {
+        Set<String> expressions = new LinkedHashSet<String>();
+        for (Remove remove : getRemoves()) {
+            addCondition(expressions, remove.getWhen());
+            addCondition(expressions, remove.getUnless());
+        }
+        for (Insert insert : getInserts()) {
+            addCondition(expressions, insert.getWhen());
+            addCondition(expressions, insert.getUnless());
+        }
+        for (Edit edit : getEdits()) {
+            addCondition(expressions, edit.getWhen());
+            addCondition(expressions, edit.getUnless());
+        }
+        conditionEvaluations = 0;
+        Map<String, Boolean> conditions = new HashMap<String, Boolean>();
+        for (String expression : expressions) {
+            String namespaced = expression;
+            try {
+                if (namespace != null) {
+                    namespaced = xpath2Namespaced(expression, PREFIX);
+                }
+                Boolean result = (Boolean) xpath.compile(namespaced).evaluate(srcDoc, XPathConstants.BOOLEAN);
+                conditionEvaluations++;
+                debug("Condition " + namespaced + " is " + result);
+                conditions.put(expression, result);
+            } catch (XPathExpressionException e) {
+                errors.add("condition [" + expression + "] cannot be evaluated : " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                errors.add("condition [" + expression + "] cannot be namespaced : " + e.getMessage());
+            }
+        }
+        return conditions;
+    }
+
+    private static void addCondition(Set<String> expressions, String expression) {
+        if (expression != null) {
+            expressions.add(expression);
+        }
+    }
+
+    /**
+     * 
+     * @param conditions results of {@link #evaluateConditions(Document, String, List)}
+     * @param when can be null
+     * @param unless can be null
+     * @param item remove, insert or edit being checked
+     * @return true if given item is to be applied
+     */
+    private boolean holds(Map<String, Boolean> conditions, String when, String unless, Object item) {
+        if (when != null && !Boolean.TRUE.equals(conditions.get(when))) {
+            debug("Skipping " + item + ", condition [" + when + "] is not met");
+            return false;
+        }
+        if (unless != null && !Boolean.FALSE.equals(conditions.get(unless))) {
+            debug("Skipping " + item + ", condition [" + unless + "] is met");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 
+     * @return number of distinct conditions evaluated by last build
+     */
+    int getConditionEvaluations() {
+        return conditionEvaluations;
+    }
+
+    /**
+     * applies given edit to all elements it selects
+     * 
+     * @param context
+     * @param edit
+     * @param errors list to add failures to
+     */
+    private void applyEdit(EditContext context, Edit edit, List<String> errors) {
+        debug("Applying " + edit);
+        List<Element> elements;
+        try {
+            elements = context.select(edit.getSelect());
+        } catch (Exception e) {
+            errors.add(edit + " cannot be evaluated : " + e.getMessage());
+            return;
+        }
+        if (elements.isEmpty()) {
+            if (failNoMatch) {
+                errors.add(edit + " does not select any element");
+            }
+            warning(edit + " does not select any element");
+            return;
+        }
+        EditOperation operation = EditOperations.get(edit.getOperation());
+        for (Element element : elements) {
             try {
-                NodeList nl = (NodeList) expr.evaluate(srcDoc, XPathConstants.NODESET);
-                if (nl.getLength() == 0) {
-                    if (failNoMatch) {
-                        throw new Exception("Failed to update [" + targetFile.getAbsolutePath() + "] " + insert + " does not select any element");
+                operation.apply(element, edit.getParameters(), context);
+            } catch (Exception e) {
+                errors.add(edit + " failed : " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * prepares everything inserts need, that does not depend on source document - compiles select and content root (identity) expressions and
+     * creates content instances. Inserts are partitioned by top-level subtree their select points to and partitions are prepared concurrently. DOM
+     * is not thread-safe even for reads, so source document is not touched here at all
+     * 
+     * @param inserts
+     * @param namespace namespace of source document root
+     * @return prepared inserts, insert failed to prepare is missing
+     */
+    private Map<Insert, PreparedInsert> prepareInserts(List<Insert> inserts, final String namespace) throws Exception {
+        Map<String, List<Insert>> partitions = new LinkedHashMap<String, List<Insert>>();
+        for (Insert insert : inserts) {
+            String key = partitionKey(insert.getSelect());
+            if (!partitions.containsKey(key)) {
+                partitions.put(key, new ArrayList<Insert>());
+            }
+            partitions.get(key).add(insert);
+        }
+        debug("Preparing " + inserts.size() + " inserts in " + partitions.size() + " partitions");
+        Map<Insert, PreparedInsert> result = new HashMap<Insert, PreparedInsert>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), partitions.size())));
+        try {
+            List<Future<Map<Insert, PreparedInsert>>> futures = new ArrayList<Future<Map<Insert, PreparedInsert>>>();
+            for (final List<Insert> partition : partitions.values()) {
+                futures.add(executor.submit(new Callable<Map<Insert, PreparedInsert>>() {
+
+                    public Map<Insert, PreparedInsert> call() throws Exception {
+                        Map<Insert, PreparedInsert> prepared = new HashMap<Insert, PreparedInsert>();
+                        XPath xp;
+                        synchronized (factory) {
+                            xp = XPathFactory.newInstance().newXPath();
+                        }
+                        for (Insert insert : partition) {
+                            try {
+                                prepared.put(insert, prepareInsert(xp, namespace, insert));
+                            } catch (Exception e) {
+                                // insert is applied serially and reports the failure
+                            }
+                        }
+                        return prepared;
                     }
-                    warning(insert + " does not select any element");
-                    continue;
+                }));
+            }
+            for (Future<Map<Insert, PreparedInsert>> future : futures) {
+                result.putAll(future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * 
+     * @param select
+     * @return first 2 steps of given select (i.e. <code>/server/profile[@name='full']</code>)
+     */
+    private static String partitionKey(String select) {
+        XPathPath path = XPathPath.parse(select);
+        int steps = 0;
+        while (steps < Math.min(2, path.getSteps().size()) && !path.getSteps().get(steps).isDescendant()) {
+            steps++;
+        }
+        return steps == 0 ? "" : path.head(steps);
+    }
+
+    private PreparedInsert prepareInsert(XPath xp, String namespace, Insert insert) throws Exception {
+        SnippetTemplate template = templates.get(templateKey(insert));
+        if (template == null || template.isStreamed()) {
+            // streamed content is read directly into target document when applied
+            return null;
+        }
+        PreparedInsert prepared = new PreparedInsert();
+        prepared.expression = namespace == null ? insert.getSelect() : xpath2Namespaced(insert.getSelect(), PREFIX);
+        NamespaceContextImpl context = new NamespaceContextImpl();
+        if (namespace != null) {
+            context.mapping(PREFIX, namespace);
+        }
+        xp.setNamespaceContext(context);
+        prepared.path = ElementPath.compile(prepared.expression, context);
+        if (prepared.path == null) {
+            prepared.select = xp.compile(prepared.expression);
+        }
+        String contentNs = template.getNamespace();
+        String recentNsFromXpath = findRecentNamespaceFromXpath(prepared.expression);
+        Properties[] parameterSets = parameterSets(insert);
+        prepared.instances = new Element[parameterSets.length];
+        prepared.contentExprs = new XPathExpression[parameterSets.length];
+        prepared.contentPaths = new ElementPath[parameterSets.length];
+        for (int i = 0; i < parameterSets.length; i++) {
+            prepared.instances[i] = template.instantiate(parameterSets[i]);
+            // each expression gets it's own context, content prefix differs among inserts
+            context = new NamespaceContextImpl();
+            if (namespace != null) {
+                context.mapping(PREFIX, namespace);
+            }
+            xp.setNamespaceContext(context);
+            String contentExpression = createContentRootExpression(context, prepared.instances[i], contentNs, recentNsFromXpath, namespace,
+                    insert.getAttribute());
+            prepared.contentPaths[i] = ElementPath.compile(contentExpression, context);
+            if (prepared.contentPaths[i] == null) {
+                prepared.contentExprs[i] = compileContentRootExpression(xp, contentExpression);
+            }
+        }
+        return prepared;
+    }
+
+    private static Properties[] parameterSets(Insert insert) {
+        return insert.getParameters() == null || insert.getParameters().length == 0 ? new Properties[] { null } : insert.getParameters();
+    }
+
+    /**
+     * applies single insert to given document
+     * 
+     * @param srcDoc
+     * @param namespace namespace of document root
+     * @param namespaces
+     * @param insert
+     * @param errors list to add failures to
+     */
+    private void applyInsert(Document srcDoc, String namespace, NamespaceScopeIndex namespaces, Insert insert, PreparedInsert prepared,
+            List<String> errors) {
+        debug("Applying " + insert);
+        String expression = insert.getSelect();
+
+        if (prepared != null) {
+            expression = prepared.expression;
+        } else if (namespace != null) {
+            // enhance given xpath to use namespaces
+            expression = xpath2Namespaced(expression, PREFIX);
+            debug("Expression " + expression);
+        }
+        SnippetTemplate template = templates.get(templateKey(insert));
+        if (template == null) {
+            // content failed to parse, it's been reported already
+            return;
+        }
+        try {
+            NodeList nl;
+            if (prepared == null) {
+                nl = select(srcDoc, expression);
+            } else if (prepared.path != null) {
+                nl = prepared.path.select(srcDoc);
+            } else {
+                nl = (NodeList) prepared.select.evaluate(srcDoc, XPathConstants.NODESET);
+            }
+            if (nl.getLength() == 0) {
+                if (failNoMatch) {
+                    errors.add(insert + " does not select any element");
                 }
-                debug("Expression evaluated to " + nl.getLength() + " nodes");
-                Document contentDoc = null;
-                if (insert.getContent() != null) {
-                    debug("Loading content XML from file " + insert.getContent());
-                    contentDoc = dBuilder.parse(insert.getContent());
+                warning(insert + " does not select any element");
+                return;
+            }
+            debug("Expression evaluated to " + nl.getLength() + " nodes");
+            String contentNs = template.getNamespace();
+            String recentNsFromXpath = findRecentNamespaceFromXpath(expression);
+            Properties[] parameterSets = parameterSets(insert);
+
+            for (int p = 0; p < parameterSets.length; p++) {
+                Properties parameters = parameterSets[p];
+                // is the root node of inserting content already present? (this
+                // expression does not depend on matched node)
+                Element instance;
+                ElementPath contentPath;
+                XPathExpression contentExpr = null;
+                if (prepared != null) {
+                    instance = (Element) srcDoc.adoptNode(prepared.instances[p]);
+                    contentPath = prepared.contentPaths[p];
+                    contentExpr = prepared.contentExprs[p];
                 } else {
-                    debug("Loading content XML from string");
-                    contentDoc = dBuilder.parse(new ByteArrayInputStream(insert.getXml().getBytes()));
+                    instance = template.instantiate(srcDoc, parameters);
+                    String contentExpression = createContentRootExpression(namespaceContext, instance, contentNs, recentNsFromXpath, namespace,
+                            insert.getAttribute());
+                    contentPath = ElementPath.compile(contentExpression, namespaceContext);
+                    if (contentPath == null) {
+                        contentExpr = compileContentRootExpression(xpath, contentExpression);
+                    }
                 }
 
                 for (int i = 0; i < nl.getLength(); i++) {
                     Node node = nl.item(i);
                     if (node instanceof Element) {
                         Element element = (Element) node;
-                        Node inserting = contentDoc.getDocumentElement().cloneNode(true);
-                        srcDoc.adoptNode(inserting);
-                        String recentNs = findRecentNamespaceFromXpath(expression);
-                        // is the root node of inserting content already
-                        // present?
-
-                        XPathExpression contentExpr = createContentRootExpression(contentDoc, recentNs, namespace, insert.getAttribute());
-                        NodeList existingNodes = (NodeList) contentExpr.evaluate(element, XPathConstants.NODESET);
-                        if (existingNodes.getLength() > 0) {
+                        Element inserting = instance != null ? instance : template.instantiate(srcDoc, parameters);
+                        instance = null;
+
+                        Node existing;
+                        if (contentPath != null) {
+                            existing = contentPath.findLastChild(element);
+                        } else {
+                            NodeList existingNodes = (NodeList) contentExpr.evaluate(element, XPathConstants.NODESET);
+                            existing = existingNodes.getLength() > 0 ? existingNodes.item(existingNodes.getLength() - 1) : null;
+                        }
+                        if (existing != null) {
                             // we need to remove those? (could be many)
                             // we'll replace the last guy
-                            element.replaceChild(inserting, existingNodes.item(existingNodes.getLength() - 1));
+                            element.replaceChild(inserting, existing);
                         } else {
                             element.appendChild(inserting);
                         }
 
-                        String contentNs = getNameSpace(contentDoc);
-                        // find most recent NS from inserted node back to root
-                        // node and assign to it
-                        recentNs = findRecentNamespace(srcDoc, inserting);
-                        if (contentNs == null && recentNs != null) {
-                            // content document does not have namespace, let's
-                            // rename it to our namespace
-                            renameNamespaceRecursive(srcDoc, inserting, recentNs);
-                        }
+                        // most recent NS from inserted node back to root node
+                        // is looked up in index, in case content document does
+                        // not have namespace, let's rename it to our namespace
+                        String recentNs = namespaces.getNamespace(element);
+                        namespaces.inserted(srcDoc, inserting, contentNs == null ? recentNs : null);
                     }
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
+        } catch (Exception e) {
+            errors.add(insert + " failed : " + e.getMessage());
         }
-        writeTargetDcoument(srcDoc);
+    }
+
+    /**
+     * evaluates given (already namespaced) expression on document, simple element paths are evaluated without XPath (see {@link ElementPath})
+     */
+    private NodeList select(Document doc, String expression) throws XPathExpressionException {
+        ElementPath path = ElementPath.compile(expression, namespaceContext);
+        return path != null ? path.select(doc) : (NodeList) xpath.compile(expression).evaluate(doc, XPathConstants.NODESET);
     }
 
     /**
@@ -211,147 +821,223 @@ public class XmlConfigBuilder {
         return ns;
     }
 
-    private String findRecentNamespace(Document doc, Node node) {
-        Node parent = null;
-        while ((parent = node.getParentNode()) != null) {
-            Element parentEl = (Element) parent;
-            String ns = parentEl.getAttribute("xmlns");
-            if (!ns.isEmpty()) {
-                return ns;
-            }
-            if (parent.isSameNode(doc.getDocumentElement())) {
-                return null;
-            }
-            if (parent.isEqualNode(node)) {
-                return null;
-            }
-            node = parent;
-        }
-        return null;
-    }
-
-    private void writeTargetDcoument(Document doc) throws Exception {
+    private void writeTargetDcoument(Document doc, File targetFile, boolean format) throws Exception {
         debug("Writing target file..");
         TransformerFactory transformerFactory = TransformerFactory.newInstance();
         Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        // unformatted document keeps whitespace as it was parsed
+        transformer.setOutputProperty(OutputKeys.INDENT, format ? "yes" : "no");
         transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
         DOMSource source = new DOMSource(doc);
-        StreamResult result = new StreamResult(targetFile);
+        // formatting streams raw output from temporary file to target
+        File raw = format ? new File(targetFile.getAbsoluteFile().getParentFile(), targetFile.getName() + ".tmp") : targetFile;
+        StreamResult result = new StreamResult(raw);
 
         transformer.transform(source, result);
-        debug("Rewriting (formatting) target file..");
-        formatXmlDocument(this.targetFile);
+        sampleMemory();
+        if (format) {
+            debug("Rewriting (formatting) target file..");
+            try {
+                formatXmlDocument(raw, targetFile);
+            } finally {
+                raw.delete();
+            }
+        }
     }
 
+    /**
+     * adds given prefix to each unprefixed element name in given expression (see {@link XPathPath#namespaced(String)})
+     * 
+     * @param expression
+     * @param prefix
+     * @return
+     */
     public static String xpath2Namespaced(String expression, String prefix) {
-        String[] components = expression.split("/");
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < components.length; i++) {
-            String piece = components[i];
-            if (piece.matches("^\\w+.*")) {
-                piece = prefix + ":" + piece;
-            }
-            sb.append(piece + "/");
-        }
-        if (sb.length() > 0) {
-            sb.deleteCharAt(sb.length() - 1);
-        }
-        return sb.toString();
+        return XPathPath.parse(expression).namespaced(prefix);
     }
 
     public static String element2Xpath(Element element, String prefix, String defaultPrefix) {
         return element2Xpath(element, prefix, defaultPrefix, null);
     }
 
+    /**
+     * creates absolute xpath selecting given element by it's name and identity attribute (or all attributes in case identity attribute is not set)
+     * 
+     * @param element
+     * @param prefix prefix used in case element declares namespace
+     * @param defaultPrefix prefix used otherwise, can be null
+     * @param identityAttribute can be null
+     * @return
+     */
     public static String element2Xpath(Element element, String prefix, String defaultPrefix, String identityAttribute) {
-        StringBuilder sb = new StringBuilder("/");
-        String ns = element.getAttribute("xmlns");
-        String pref = "";
-        if (!ns.isEmpty()) {
-            pref = prefix + ":";
+        StringBuilder sb = new StringBuilder(64).append('/');
+        if (!element.getAttribute("xmlns").isEmpty()) {
+            sb.append(prefix).append(':');
         } else if (defaultPrefix != null) {
-            pref = defaultPrefix + ":";
+            sb.append(defaultPrefix).append(':');
         }
-        sb.append(pref + element.getLocalName());
+        sb.append(element.getLocalName());
         if (identityAttribute != null && !identityAttribute.isEmpty()) {
-            sb.append("[@" + identityAttribute + "='" + element.getAttribute(identityAttribute) + "']");
+            sb.append("[@").append(identityAttribute).append('=');
+            XPathPath.appendLiteral(sb, element.getAttribute(identityAttribute)).append(']');
         } else {
             // use all attributes
             NamedNodeMap attributes = element.getAttributes();
-            if (attributes.getLength() > 0) {
-                StringBuilder sbAttributes = new StringBuilder();
-                sbAttributes.append("[");
-                int validAttributes = 0;
-                for (int i = 0; i < attributes.getLength(); i++) {
-                    Node node = attributes.item(i);
-                    if ("xmlns".equals(node.getNodeName())) {
-                        // ignore this guy as it's handled with prefixing
-                        continue;
-                    }
-                    validAttributes++;
-                    sbAttributes.append("@" + node.getNodeName() + "='" + node.getNodeValue() + "' and ");
-                }
-                if (validAttributes > 0) {
-                    sbAttributes.delete(sbAttributes.length() - 5, sbAttributes.length()); // delete
-                                                                                           // last
-                                                                                           // '
-                                                                                           // and
-                                                                                           // '
-                    sbAttributes.append("]");
-                    sb.append(sbAttributes.toString());
+            int predicates = 0;
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node node = attributes.item(i);
+                if ("xmlns".equals(node.getNodeName())) {
+                    // ignore this guy as it's handled with prefixing
+                    continue;
                 }
+                sb.append(predicates++ == 0 ? "[@" : " and @").append(node.getNodeName()).append('=');
+                XPathPath.appendLiteral(sb, node.getNodeValue());
+            }
+            if (predicates > 0) {
+                sb.append(']');
             }
         }
-
         return sb.toString();
     }
 
-    private XPathExpression createContentRootExpression(Document contentDoc, String contentNamespace, String rootNamespace, String identityAttribute)
-            throws Exception {
+    /**
+     * creates absolute expression selecting content root, its prefixes are mapped in given context. Expression is evaluated relative to each
+     * matched element, see {@link ElementPath#findLastChild(Element)} and {@link #compileContentRootExpression(XPath, String)}
+     */
+    private String createContentRootExpression(NamespaceContextImpl namespaceContext, Element contentRoot, String contentRootNs,
+            String contentNamespace, String rootNamespace, String identityAttribute) {
         String expression = null;
 
         if (contentNamespace != null) {
-            expression = element2Xpath(contentDoc.getDocumentElement(), PREFIX_CONTENT, PREFIX_CONTENT, identityAttribute);
+            expression = element2Xpath(contentRoot, PREFIX_CONTENT, PREFIX_CONTENT, identityAttribute);
             namespaceContext.mapping(PREFIX_CONTENT, contentNamespace);
         } else {
-            String ns = getNameSpace(contentDoc);
-            if (ns != null) {
-                expression = element2Xpath(contentDoc.getDocumentElement(), PREFIX_CONTENT, null, identityAttribute);
-                namespaceContext.mapping(PREFIX_CONTENT, ns);
+            if (contentRootNs != null) {
+                expression = element2Xpath(contentRoot, PREFIX_CONTENT, null, identityAttribute);
+                namespaceContext.mapping(PREFIX_CONTENT, contentRootNs);
             } else {
-                expression = element2Xpath(contentDoc.getDocumentElement(), PREFIX_CONTENT, rootNamespace == null ? null : PREFIX, identityAttribute);
+                expression = element2Xpath(contentRoot, PREFIX_CONTENT, rootNamespace == null ? null : PREFIX, identityAttribute);
             }
         }
 
         debug("Content expression " + expression);
+        return expression;
+    }
+
+    private static XPathExpression compileContentRootExpression(XPath xpath, String expression) throws XPathExpressionException {
         // our expression always starts with /, but we'll be evaluating it in
         // context of some other node, thus it needs to be relative
         return xpath.compile(expression.substring(1));
     }
 
-    private void formatXmlDocument(File file) {
+    private void formatXmlDocument(File raw, File file) {
         try {
-            InputStream is = new ByteArrayInputStream(IOUtil.toByteArray(new FileInputStream(file)));
-            XmlUtil.prettyFormat(is, new FileOutputStream(file), 4, System.getProperty("line.separator"));
-            IOUtil.close(is);
+            // transformer writes UTF-8, reader and writer must not fall back to platform encoding
+            Reader reader = new InputStreamReader(new BufferedInputStream(new FileInputStream(raw)), "UTF-8");
+            Writer writer = null;
+            try {
+                writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file)), "UTF-8");
+                XmlUtil.prettyFormat(reader, writer, 4, System.getProperty("line.separator"));
+            } finally {
+                IOUtil.close(reader);
+                IOUtil.close(writer);
+            }
         } catch (Exception ex) {
             throw new RuntimeException("Error formatting file " + file.getAbsolutePath(), ex);
         }
     }
 
     public XmlConfigBuilder remove(Remove remove) throws Exception {
+        prepared = null;
         validateRemove(remove);
         getRemoves().add(remove);
         return this;
     }
 
     public XmlConfigBuilder failNoMatch(boolean failNoMatch) throws Exception {
+        prepared = null;
         this.failNoMatch = failNoMatch;
         return this;
     }
 
+    /**
+     * sets whether inserts are prepared (expressions compiled and contents instantiated) concurrently. Changes to document are still applied
+     * serially, in the same order
+     * 
+     * @param parallel
+     * @return
+     */
+    public XmlConfigBuilder parallel(boolean parallel) {
+        prepared = null;
+        this.parallel = parallel;
+        return this;
+    }
+
+    /**
+     * sets heap available for parsed documents. When source file and insert contents are estimated (see {@link #DOM_COST_FACTOR}) not to fit,
+     * all contents are streamed and document cache is not used (see {@link Strategy#STREAMING})
+     * 
+     * @param memoryBudget in bytes, 0 means heap currently available
+     * @return
+     */
+    public XmlConfigBuilder memoryBudget(long memoryBudget) {
+        prepared = null;
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    /**
+     * sets time budget of a build. Target file is not formatted (whitespace is kept as parsed) in case budget is spent by the time document is
+     * edited
+     * 
+     * @param timeBudget in milliseconds, 0 means no limit
+     * @return
+     */
+    public XmlConfigBuilder timeBudget(long timeBudget) {
+        prepared = null;
+        this.timeBudget = timeBudget;
+        return this;
+    }
+
+    /**
+     * sets whether to keep formatting of source file. Only changed elements are written, the rest is copied from source file as is (see
+     * {@link FormatPreservingWriter}). Whole document is written in case source file is not supported
+     * 
+     * @param preserveFormatting
+     * @return
+     */
+    public XmlConfigBuilder preserveFormatting(boolean preserveFormatting) {
+        prepared = null;
+        this.preserveFormatting = preserveFormatting;
+        return this;
+    }
+
+    /**
+     * sets cache to be used for parsing source file, this is useful when same config is being edited repeatedly by long-living process
+     * 
+     * @param documentCache
+     * @return
+     */
+    public XmlConfigBuilder documentCache(DocumentCache documentCache) {
+        this.documentCache = documentCache;
+        return this;
+    }
+
+    /**
+     * sets file to keep binary snapshot of parsed source file in (see {@link ConfigSnapshot}). As long as source file does not change, it's loaded
+     * from snapshot instead of being parsed. Ignored when {@link #documentCache(DocumentCache)} is set
+     * 
+     * @param snapshotFile can be null
+     * @return
+     */
+    public XmlConfigBuilder snapshot(File snapshotFile) {
+        this.snapshot = snapshotFile == null ? null : new ConfigSnapshot(snapshotFile);
+        return this;
+    }
+
     public XmlConfigBuilder removes(List<Remove> removes) throws Exception {
+        prepared = null;
         for (Remove i : removes) {
             validateRemove(i);
             getRemoves().add(i);
@@ -359,13 +1045,31 @@ public class XmlConfigBuilder {
         return this;
     }
 
+    public XmlConfigBuilder edit(Edit edit) throws Exception {
+        prepared = null;
+        validateEdit(edit);
+        getEdits().add(edit);
+        return this;
+    }
+
+    public XmlConfigBuilder edits(List<Edit> edits) throws Exception {
+        prepared = null;
+        for (Edit edit : edits) {
+            validateEdit(edit);
+            getEdits().add(edit);
+        }
+        return this;
+    }
+
     public XmlConfigBuilder insert(Insert insert) throws Exception {
+        prepared = null;
         validateInsert(insert);
         getInserts().add(insert);
         return this;
     }
 
     public XmlConfigBuilder inserts(List<Insert> inserts) throws Exception {
+        prepared = null;
         for (Insert i : inserts) {
             validateInsert(i);
             getInserts().add(i);
@@ -373,6 +1077,32 @@ public class XmlConfigBuilder {
         return this;
     }
 
+    private static String templateKey(Insert insert) {
+        return insert.getContent() != null ? "file:" + insert.getContent().getAbsolutePath() : "xml:" + insert.getXml();
+    }
+
+    /**
+     * parses insert's content into template
+     * 
+     * @param dBuilder
+     * @param insert
+     * @return
+     * @throws Exception
+     */
+    private SnippetTemplate parseTemplate(DocumentBuilder dBuilder, Insert insert) throws Exception {
+        if (insert.getContent() != null) {
+            if (insert.getContent().length() >= STREAMING_THRESHOLD || constrained) {
+                debug("Streaming content XML from file " + insert.getContent());
+                return SnippetTemplate.streamed(insert.getContent());
+            }
+            debug("Loading content XML from file " + insert.getContent());
+            return new SnippetTemplate(dBuilder.parse(insert.getContent()));
+        }
+        debug("Loading content XML from string");
+        // parsed from characters, so it does not depend on platform encoding
+        return new SnippetTemplate(dBuilder.parse(new InputSource(new StringReader(insert.getXml()))));
+    }
+
     private List<Insert> getInserts() {
         if (inserts == null) {
             inserts = new ArrayList<Insert>();
@@ -380,6 +1110,13 @@ public class XmlConfigBuilder {
         return inserts;
     }
 
+    private List<Edit> getEdits() {
+        if (edits == null) {
+            edits = new ArrayList<Edit>();
+        }
+        return edits;
+    }
+
     private List<Remove> getRemoves() {
         if (removes == null) {
             removes = new ArrayList<Remove>();
@@ -387,8 +1124,43 @@ public class XmlConfigBuilder {
         return removes;
     }
 
+    private void validateEdit(Edit edit) throws IllegalArgumentException, XPathExpressionException {
+        EditOperation operation = EditOperations.get(edit.getOperation());
+        if (operation == null) {
+            throw new IllegalArgumentException("unknown operation [" + edit.getOperation() + "], available operations are "
+                    + EditOperations.all().keySet());
+        }
+        validateExpression(edit.getSelect(), edit.getSelect());
+        operation.validate(edit.getParameters());
+        validateCondition(edit.getWhen());
+        validateCondition(edit.getUnless());
+    }
+
     private void validateRemove(Remove remove) throws XPathExpressionException {
-        xpath.compile(remove.getSelect());
+        validateExpression(remove.getSelect(), remove.getSelect());
+        validateCondition(remove.getWhen());
+        validateCondition(remove.getUnless());
+    }
+
+    private void validateCondition(String expression) throws XPathExpressionException {
+        if (expression == null) {
+            return;
+        }
+        validateExpression(expression, "condition " + expression);
+    }
+
+    /**
+     * checks given expression compiles and can be namespaced, so it does not silently select nothing in namespaced document
+     */
+    private void validateExpression(String expression, String description) throws XPathExpressionException {
+        try {
+            xpath.compile(expression);
+            xpath2Namespaced(expression, PREFIX);
+        } catch (XPathExpressionException xee) {
+            throw new XPathExpressionException(description + " is not a valid xpath : " + xee.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new XPathExpressionException(description + " cannot be namespaced : " + e.getMessage());
+        }
     }
 
     private void validateInsert(Insert insert) throws IllegalArgumentException, XPathExpressionException {
@@ -405,11 +1177,9 @@ public class XmlConfigBuilder {
                                                                    // slash
             insert.setSelect(expression.substring(0, expression.length() - 1));
         }
-        try {
-            xpath.compile(insert.getSelect());
-        } catch (XPathExpressionException xee) {
-            throw new XPathExpressionException(insert.getSelect() + " is not a valid xpath : " + xee.getMessage());
-        }
+        validateExpression(insert.getSelect(), insert.getSelect());
+        validateCondition(insert.getWhen());
+        validateCondition(insert.getUnless());
 
         // TODO validate expression must eval to NODELIST
     }
@@ -431,21 +1201,52 @@ public class XmlConfigBuilder {
         return ns;
     }
 
-    private static void renameNamespaceRecursive(Document doc, Node node, String namespace) {
-        if (node.getNodeType() == Node.ELEMENT_NODE) {
-            Element el = (Element) node;
-            if (el.getAttribute("xmlns").isEmpty()) {
-                doc.renameNode(node, namespace, node.getNodeName());
-            } else {
-                return; // stop renaming ns here, since all children of this
-                        // node belong to it's ns
-            }
+    /**
+     * context of edit operations, expressions are namespaced the same way as selects of inserts and removes
+     */
+    private class EditContext implements EditOperation.Context {
+        private final Document doc;
+        private final String namespace;
+        private final Map<String, Element> snippets = new HashMap<String, Element>();
 
+        EditContext(Document doc, String namespace) {
+            this.doc = doc;
+            this.namespace = namespace;
         }
 
-        NodeList list = node.getChildNodes();
-        for (int i = 0; i < list.getLength(); ++i) {
-            renameNamespaceRecursive(doc, list.item(i), namespace);
+        public List<Element> select(String expression) throws Exception {
+            if (namespace != null) {
+                expression = xpath2Namespaced(expression, PREFIX);
+            }
+            NodeList nl = XmlConfigBuilder.this.select(doc, expression);
+            List<Element> elements = new ArrayList<Element>(nl.getLength());
+            for (int i = 0; i < nl.getLength(); i++) {
+                if (nl.item(i) instanceof Element) {
+                    elements.add((Element) nl.item(i));
+                }
+            }
+            return elements;
+        }
+
+        public Element parse(String xml) throws Exception {
+            Element root = snippets.get(xml);
+            if (root == null) {
+                root = newDocumentBuilder().parse(new InputSource(new StringReader(xml))).getDocumentElement();
+                snippets.put(xml, root);
+            }
+            return root;
         }
     }
+
+    /**
+     * insert prepared by {@link XmlConfigBuilder#prepareInserts(List, String)}, arrays are indexed by parameter sets
+     */
+    private static class PreparedInsert {
+        private String expression;
+        private ElementPath path;
+        private XPathExpression select;
+        private Element[] instances;
+        private XPathExpression[] contentExprs;
+        private ElementPath[] contentPaths;
+    }
 }
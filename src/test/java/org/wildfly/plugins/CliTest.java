@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import junit.framework.Assert;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+public class CliTest {
+
+    private File config;
+
+    @Before
+    public void copyConfig() throws Exception {
+        config = new File(System.getProperty("java.io.tmpdir"), "cli-standalone.xml");
+        FileUtils.copyFile(new File("src/test/resources/root.xml"), config);
+    }
+
+    private int count(String expression) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(config);
+        return ((NodeList) XPathFactory.newInstance().newXPath().evaluate(expression, doc, XPathConstants.NODESET)).getLength();
+    }
+
+    @Test
+    public void testInsertAndRemove() throws Exception {
+        new Cli(new String[] { "insert", "--config", config.getPath(), "--select", "/server", "--content", "src/test/resources/content1Append.xml" })
+                .run();
+        Assert.assertEquals(2, count("/server/subsystem[@name='foobar']/child"));
+        Assert.assertTrue(new File(config.getPath() + ".old").isFile());
+
+        new Cli(new String[] { "remove", "--config", config.getPath(), "--select", "/server/subsystem[@name='foo']" }).run();
+        Assert.assertEquals(0, count("/server/subsystem[@name='foo']"));
+        Assert.assertEquals(1, count("/server/subsystem[@name='foobar']"));
+    }
+
+    @Test
+    public void testApply() throws Exception {
+        File props = new File(System.getProperty("java.io.tmpdir"), "cli-options.properties");
+        RegisterOptions options = new RegisterOptions().serverConfig(config).inserts(
+                new Insert[] { new Insert("/server/subsystem[@name='foo']", "<child attr=\"new\"/>") });
+        FileOutputStream fos = new FileOutputStream(props);
+        try {
+            options.toProperties().store(fos, null);
+        } finally {
+            fos.close();
+        }
+        new Cli(new String[] { "apply", props.getPath() }).run();
+        Assert.assertEquals(1, count("/server/subsystem[@name='foo']/child[@attr='new']"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingOption() throws Exception {
+        new Cli(new String[] { "insert", "--select", "/server", "--xml", "<foo/>" }).run();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import junit.framework.Assert;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+public class ConfigDaemonTest {
+
+    private ConfigDaemon daemon;
+    private Thread serving;
+    private File tokenDir;
+
+    @Before
+    public void startDaemon() throws Exception {
+        tokenDir = getTempFile("config-daemon-test");
+        FileUtils.deleteDirectory(tokenDir);
+        daemon = new ConfigDaemon(new SystemStreamLog(), 0, tokenDir);
+        daemon.readTimeout(500);
+        daemon.start();
+        serving = new Thread(new Runnable() {
+
+            public void run() {
+                daemon.serve();
+            }
+        });
+        serving.start();
+    }
+
+    @After
+    public void stopDaemon() throws Exception {
+        daemon.stop();
+        serving.join(5000);
+    }
+
+    private File getTempFile(String name) {
+        return new File(System.getProperty("java.io.tmpdir"), name);
+    }
+
+    private int count(File file, String expression) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        return ((NodeList) XPathFactory.newInstance().newXPath().evaluate(expression, doc, XPathConstants.NODESET)).getLength();
+    }
+
+    @Test
+    public void testRegisterRepeatedly() throws Exception {
+        File config = getTempFile("daemon-standalone.xml");
+        File backup = getTempFile("daemon-standalone.xml.old");
+        FileUtils.copyFile(new File("src/test/resources/root.xml"), config);
+        DaemonClient client = new DaemonClient(new SystemStreamLog(), daemon.getPort(), tokenDir);
+        Assert.assertTrue(client.isAvailable());
+
+        RegisterOptions options = new RegisterOptions().serverConfig(config).serverConfigBackup(backup)
+                .inserts(new Insert[] { new Insert("/server", new File("src/test/resources/content1Append.xml")) });
+        client.register(options);
+        client.register(options);
+        Assert.assertEquals(2, count(config, "/server/subsystem[@name='foobar']/child"));
+        Assert.assertEquals(2, count(backup, "/server/subsystem[@name='foobar']/child"));
+    }
+
+    @Test(expected = Exception.class)
+    public void testRegisterFailure() throws Exception {
+        RegisterOptions options = new RegisterOptions().serverConfig(getTempFile("daemon-missing.xml")).serverConfigBackup(
+                getTempFile("daemon-missing.xml.old"));
+        new DaemonClient(new SystemStreamLog(), daemon.getPort(), tokenDir).register(options);
+    }
+
+    @Test
+    public void testNotAvailable() throws Exception {
+        daemon.stop();
+        serving.join(5000);
+        Assert.assertFalse(new DaemonClient(new SystemStreamLog(), daemon.getPort(), tokenDir).isAvailable());
+    }
+
+    @Test
+    public void testTokenFile() throws Exception {
+        File tokenFile = ConfigDaemon.getTokenFile(tokenDir, daemon.getPort());
+        Assert.assertTrue(tokenFile.isFile());
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Assert.assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+        }
+        daemon.stop();
+        serving.join(5000);
+        Assert.assertFalse(tokenFile.exists());
+    }
+
+    @Test
+    public void testRejectInvalidToken() throws Exception {
+        Properties request = new Properties();
+        request.setProperty("operation", "install");
+        request.setProperty("token", "guessed");
+        Properties response = exchange(request);
+        Assert.assertEquals("error", response.getProperty("status"));
+
+        request.remove("token");
+        response = exchange(request);
+        Assert.assertEquals("error", response.getProperty("status"));
+    }
+
+    @Test
+    public void testIdleClient() throws Exception {
+        Socket idle = new Socket(InetAddress.getByName(null), daemon.getPort());
+        try {
+            // daemon gives up on idle client and serves next one
+            Assert.assertTrue(new DaemonClient(new SystemStreamLog(), daemon.getPort(), tokenDir).isAvailable());
+        } finally {
+            idle.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMessageTooLarge() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new DataOutputStream(bos).writeInt(ConfigDaemon.MAX_MESSAGE_SIZE + 1);
+        ConfigDaemon.readMessage(new ByteArrayInputStream(bos.toByteArray()));
+    }
+
+    private Properties exchange(Properties request) throws Exception {
+        Socket socket = new Socket(InetAddress.getByName(null), daemon.getPort());
+        try {
+            ConfigDaemon.writeMessage(socket.getOutputStream(), request);
+            return ConfigDaemon.readMessage(socket.getInputStream());
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Generates large server configurations and module zips for performance tests. Everything is written as a stream, so generating is linear in
+ * size of fixture.
+ */
+public class ConfigFixtures {
+
+    public static final String DOMAIN_NS = "urn:jboss:domain:1.7";
+
+    private ConfigFixtures() {
+
+    }
+
+    /**
+     * writes standalone configuration with given number of extensions/subsystems (<code>urn:test:subsystem:i</code> named <code>si</code>) and
+     * socket bindings (<code>bi</code>) in <code>standard-sockets</code> group
+     *
+     * @param file
+     * @param subsystems
+     * @param socketBindings
+     * @return given file
+     * @throws IOException
+     */
+    public static File standalone(File file, int subsystems, int socketBindings) throws IOException {
+        Writer w = writer(file);
+        try {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<server xmlns=\"" + DOMAIN_NS + "\">\n");
+            extensions(w, subsystems);
+            w.write("    <profile>\n");
+            subsystems(w, subsystems, "        ");
+            w.write("    </profile>\n    <interfaces>\n        <interface name=\"public\"><inet-address value=\"127.0.0.1\"/></interface>\n"
+                    + "    </interfaces>\n");
+            socketBindingGroup(w, "standard-sockets", socketBindings);
+            w.write("</server>\n");
+        } finally {
+            IOUtil.close(w);
+        }
+        return file;
+    }
+
+    /**
+     * writes domain configuration with given number of profiles (<code>pi</code>), each having given number of subsystems, and socket binding groups
+     * (<code>gi</code>), each having given number of socket bindings
+     *
+     * @param file
+     * @param profiles
+     * @param subsystems per profile
+     * @param socketBindings per group
+     * @return given file
+     * @throws IOException
+     */
+    public static File domain(File file, int profiles, int subsystems, int socketBindings) throws IOException {
+        Writer w = writer(file);
+        try {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<domain xmlns=\"" + DOMAIN_NS + "\">\n");
+            extensions(w, subsystems);
+            w.write("    <profiles>\n");
+            for (int p = 0; p < profiles; p++) {
+                w.write("        <profile name=\"p" + p + "\">\n");
+                subsystems(w, subsystems, "            ");
+                w.write("        </profile>\n");
+            }
+            w.write("    </profiles>\n    <socket-binding-groups>\n");
+            for (int g = 0; g < profiles; g++) {
+                socketBindingGroup(w, "g" + g, socketBindings);
+            }
+            w.write("    </socket-binding-groups>\n</domain>\n");
+        } finally {
+            IOUtil.close(w);
+        }
+        return file;
+    }
+
+    /**
+     * writes module zip with given number of modules (<code>org.test.mi</code>), each having module.xml and given number of resources
+     *
+     * @param file
+     * @param modules
+     * @param resources per module
+     * @return given file
+     * @throws IOException
+     */
+    public static File moduleZip(File file, int modules, int resources) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            byte[] content = new byte[256];
+            for (int m = 0; m < modules; m++) {
+                String path = "org/test/m" + m + "/main/";
+                StringBuilder xml = new StringBuilder("<module xmlns=\"urn:jboss:module:1.1\" name=\"org.test.m" + m + "\"><resources>");
+                for (int r = 0; r < resources; r++) {
+                    xml.append("<resource-root path=\"r" + r + ".jar\"/>");
+                }
+                xml.append("</resources><dependencies><module name=\"org.jboss.as.controller\"/></dependencies></module>");
+                zos.putNextEntry(new ZipEntry(path + "module.xml"));
+                zos.write(xml.toString().getBytes("UTF-8"));
+                zos.closeEntry();
+                for (int r = 0; r < resources; r++) {
+                    zos.putNextEntry(new ZipEntry(path + "r" + r + ".jar"));
+                    content[0] = (byte) r;
+                    zos.write(content);
+                    zos.closeEntry();
+                }
+            }
+        } finally {
+            zos.close();
+        }
+        return file;
+    }
+
+    private static Writer writer(File file) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    }
+
+    private static void extensions(Writer w, int count) throws IOException {
+        w.write("    <extensions>\n");
+        for (int i = 0; i < count; i++) {
+            w.write("        <extension module=\"org.test.m" + i + "\"/>\n");
+        }
+        w.write("    </extensions>\n");
+    }
+
+    private static void subsystems(Writer w, int count, String indent) throws IOException {
+        for (int i = 0; i < count; i++) {
+            w.write(indent + "<subsystem xmlns=\"urn:test:subsystem:" + i + "\" name=\"s" + i + "\">\n" + indent + "    <setting name=\"a\" value=\""
+                    + i + "\"/>\n" + indent + "</subsystem>\n");
+        }
+    }
+
+    private static void socketBindingGroup(Writer w, String name, int count) throws IOException {
+        w.write("    <socket-binding-group name=\"" + name + "\" default-interface=\"public\">\n");
+        for (int i = 0; i < count; i++) {
+            w.write("        <socket-binding name=\"b" + i + "\" port=\"" + (10000 + i) + "\"/>\n");
+        }
+        w.write("    </socket-binding-group>\n");
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.Assert;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class ConfigSnapshotTest {
+
+    private static final String CONFIG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- server config -->\n"
+            + "<server xmlns=\"urn:jboss:domain:1.7\" xmlns:x=\"urn:x\">\n  <extensions>\n    <extension module=\"org.foo\"/>\n  </extensions>\n"
+            + "  <profile><x:subsystem x:attr=\"č&amp;&lt;\"><![CDATA[<raw>]]><?pi data?></x:subsystem></profile>\n</server>";
+
+    private File tempDir;
+    private DocumentBuilder builder;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = new File(System.getProperty("java.io.tmpdir"), "config-snapshot-test");
+        FileUtils.deleteDirectory(tempDir);
+        tempDir.mkdirs();
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        builder = factory.newDocumentBuilder();
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        File config = new File(tempDir, "standalone.xml");
+        FileUtils.fileWrite(config.getAbsolutePath(), "UTF-8", CONFIG);
+        ConfigSnapshot snapshot = new ConfigSnapshot(new File(tempDir, "target/config.snapshot"));
+
+        Document parsed = snapshot.parse(builder, config);
+        Assert.assertEquals(0, snapshot.getHits());
+        Assert.assertTrue(snapshot.getSnapshotFile().isFile());
+
+        Document loaded = snapshot.parse(builder, config);
+        Assert.assertEquals(1, snapshot.getHits());
+        Assert.assertTrue(parsed.isEqualNode(loaded));
+        Assert.assertEquals("urn:x", loaded.getDocumentElement().getElementsByTagNameNS("urn:x", "subsystem").item(0).getNamespaceURI());
+
+        // content changed
+        FileUtils.fileWrite(config.getAbsolutePath(), "UTF-8", CONFIG.replace("org.foo", "org.bar"));
+        loaded = snapshot.parse(builder, config);
+        Assert.assertEquals(1, snapshot.getHits());
+        Assert.assertEquals(2, snapshot.getMisses());
+        Assert.assertEquals("org.bar", loaded.getElementsByTagName("extension").item(0).getAttributes().item(0).getNodeValue());
+
+        // corrupted snapshot is ignored and replaced
+        byte[] content = FileUtils.fileRead(snapshot.getSnapshotFile(), "ISO-8859-1").getBytes("ISO-8859-1");
+        FileUtils.fileWrite(snapshot.getSnapshotFile().getAbsolutePath(), "ISO-8859-1", new String(content, 0, content.length - 10, "ISO-8859-1"));
+        snapshot.parse(builder, config);
+        Assert.assertEquals(3, snapshot.getMisses());
+        snapshot.parse(builder, config);
+        Assert.assertEquals(2, snapshot.getHits());
+    }
+
+    /**
+     * config loaded from snapshot must be written the same way as parsed one
+     */
+    @Test
+    public void testBuildFromSnapshot() throws Exception {
+        File config = new File(tempDir, "standalone.xml");
+        FileUtils.fileWrite(config.getAbsolutePath(), "UTF-8", CONFIG);
+        File snapshotFile = new File(tempDir, "config.snapshot");
+        File parsed = new File(tempDir, "parsed.xml");
+        File loaded = new File(tempDir, "loaded.xml");
+        Insert insert = new Insert("/server/extensions", "<extension module=\"org.bar\"/>").withAttribute("module");
+
+        new XmlConfigBuilder(new SystemStreamLog(), config, parsed).insert(insert).snapshot(snapshotFile).build();
+        Assert.assertTrue(snapshotFile.isFile());
+        new XmlConfigBuilder(new SystemStreamLog(), config, loaded).insert(insert).snapshot(snapshotFile).build();
+        Assert.assertEquals(FileUtils.fileRead(parsed, "UTF-8"), FileUtils.fileRead(loaded, "UTF-8"));
+        Assert.assertTrue(FileUtils.fileRead(loaded, "UTF-8").contains("org.bar"));
+    }
+}
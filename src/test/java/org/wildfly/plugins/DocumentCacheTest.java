@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class DocumentCacheTest {
+
+    private File getResourceFile(String name) {
+        return new File("src/test/resources", name);
+    }
+
+    @Test
+    public void testEvictByBytes() throws Exception {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        File root = getResourceFile("root.xml");
+        File content = getResourceFile("content1Append.xml");
+        long rootBytes = root.length() * XmlConfigBuilder.DOM_COST_FACTOR;
+        DocumentCache cache = new DocumentCache(8, rootBytes);
+
+        cache.parse(builder, root);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(rootBytes, cache.getBytes());
+        // does not fit along with root.xml, which is evicted
+        cache.parse(builder, content);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(content.length() * XmlConfigBuilder.DOM_COST_FACTOR, cache.getBytes());
+    }
+
+    @Test
+    public void testSkipLargeDocument() throws Exception {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        File root = getResourceFile("root.xml");
+        DocumentCache cache = new DocumentCache(8, root.length() * XmlConfigBuilder.DOM_COST_FACTOR - 1);
+        Assert.assertNotNull(cache.parse(builder, root));
+        cache.preload(builder, root);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictByEntries() throws Exception {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        DocumentCache cache = new DocumentCache(1, Long.MAX_VALUE);
+        cache.parse(builder, getResourceFile("root.xml"));
+        cache.parse(builder, getResourceFile("content1Append.xml"));
+        Assert.assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import junit.framework.Assert;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+public class EditOperationTest {
+
+    private static final String CONFIG = "<server xmlns=\"urn:jboss:domain:1.7\">"
+            + "<profile><subsystem xmlns=\"urn:foo\" name=\"a\"/></profile>"
+            + "<socket-binding-group name=\"standard-sockets\">"
+            + "<socket-binding name=\"http\" port=\"8080\"/><socket-binding name=\"https\" port=\"8443\"/>"
+            + "</socket-binding-group>"
+            + "<interfaces/>"
+            + "</server>";
+
+    private File source;
+    private File target;
+
+    @Before
+    public void setUp() throws Exception {
+        source = new File(System.getProperty("java.io.tmpdir"), "edit-operations.xml");
+        target = new File(System.getProperty("java.io.tmpdir"), "edit-operations-new.xml");
+        FileUtils.fileWrite(source.getAbsolutePath(), "UTF-8", CONFIG);
+    }
+
+    private int count(String expression) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().parse(target);
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        xpath.setNamespaceContext(new NamespaceContextImpl().mapping("x", "urn:jboss:domain:1.7").mapping("f", "urn:foo"));
+        return ((NodeList) xpath.evaluate(expression, doc, XPathConstants.NODESET)).getLength();
+    }
+
+    @Test
+    public void testDiscovery() {
+        Assert.assertTrue(EditOperations.get("set-attribute") instanceof SetAttributeOperation);
+        Assert.assertTrue(EditOperations.get("rename") instanceof RenameOperation);
+        Assert.assertTrue(EditOperations.get("move") instanceof MoveOperation);
+        Assert.assertTrue(EditOperations.get("merge-children") instanceof MergeChildrenOperation);
+        Assert.assertNull(EditOperations.get("insert"));
+    }
+
+    @Test
+    public void testOperations() throws Exception {
+        new XmlConfigBuilder(new SystemStreamLog(), source, target)
+                .insert(new Insert("/server/profile", "<subsystem xmlns=\"urn:foo\" name=\"b\"/>").withAttribute("name"))
+                .edit(new Edit("/server/socket-binding-group/socket-binding[@name='http']", "set-attribute").with("name", "port").with("value", "8081"))
+                .edit(new Edit("/server/socket-binding-group/socket-binding[@name='https']", "set-attribute").with("name", "port"))
+                // edits see inserted content
+                .edit(new Edit("/server/profile/*[@name='b']", "rename").with("name", "renamed"))
+                .edit(new Edit("/server/profile/*[@name='a']", "move").with("to", "/server/interfaces"))
+                .build();
+        Assert.assertEquals(1, count("/x:server/x:socket-binding-group/x:socket-binding[@name='http' and @port='8081']"));
+        Assert.assertEquals(1, count("/x:server/x:socket-binding-group/x:socket-binding[@name='https' and not(@port)]"));
+        Assert.assertEquals(1, count("/x:server/x:profile/f:renamed[@name='b']"));
+        Assert.assertEquals(0, count("/x:server/x:profile/f:subsystem"));
+        Assert.assertEquals(1, count("/x:server/x:interfaces/f:subsystem[@name='a']"));
+    }
+
+    @Test
+    public void testMergeChildren() throws Exception {
+        new XmlConfigBuilder(new SystemStreamLog(), source, target)
+                .edit(new Edit("/server/socket-binding-group", "merge-children").with("xml",
+                        "<socket-binding-group><socket-binding name=\"http\" port=\"8081\"><client-mapping host=\"h\"/></socket-binding>"
+                                + "<socket-binding name=\"ajp\" port=\"8009\"/></socket-binding-group>"))
+                .build();
+        Assert.assertEquals(1, count("/x:server/x:socket-binding-group/x:socket-binding[@name='http' and @port='8081']/x:client-mapping"));
+        Assert.assertEquals(1, count("/x:server/x:socket-binding-group/x:socket-binding[@name='https' and @port='8443']"));
+        Assert.assertEquals(1, count("/x:server/x:socket-binding-group/x:socket-binding[@name='ajp']"));
+        Assert.assertEquals(3, count("/x:server/x:socket-binding-group/*"));
+    }
+
+    @Test
+    public void testInvalidEdits() throws Exception {
+        XmlConfigBuilder builder = new XmlConfigBuilder(new SystemStreamLog(), source, target);
+        try {
+            builder.edit(new Edit("/server", "unknown"));
+            Assert.fail("Unknown operation must be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("set-attribute"));
+        }
+        try {
+            builder.edit(new Edit("/server", "rename"));
+            Assert.fail("Missing parameter must be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("name"));
+        }
+        builder.edit(new Edit("/server/profile/*", "move").with("to", "/server/*"));
+        try {
+            builder.build();
+            Assert.fail("Move to multiple elements must fail");
+        } catch (Exception e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("1 expected"));
+        }
+    }
+}
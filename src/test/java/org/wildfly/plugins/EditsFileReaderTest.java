@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+public class EditsFileReaderTest {
+
+    private final File source = new File("src/test/resources/root.xml");
+    private final File target = new File(System.getProperty("java.io.tmpdir"), "edits-standalone.xml");
+
+    private int count(String expression) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(target);
+        return ((NodeList) XPathFactory.newInstance().newXPath().evaluate(expression, doc, XPathConstants.NODESET)).getLength();
+    }
+
+    @Test
+    public void testXml() throws Exception {
+        XmlConfigBuilder builder = new XmlConfigBuilder(source, target);
+        Assert.assertEquals(5, new EditsFileReader(null).read(new File("src/test/resources/edits.xml"), builder));
+        builder.build();
+        Assert.assertEquals(1, count("/server/subsystem[@name='foobar' and @enabled='true']"));
+        Assert.assertEquals(2, count("/server/subsystem[@name='foobar']/child"));
+        Assert.assertEquals(1, count("/server/subsystem[@name='foo']/child[@attr='inline']"));
+        Assert.assertEquals(1, count("/server/subsystem[@name='foo']/child[@attr='cdata']"));
+        Assert.assertEquals(0, count("/server/subsystem[@name='foo']/child[@attr='value2']"));
+    }
+
+    @Test
+    public void testJson() throws Exception {
+        XmlConfigBuilder builder = new XmlConfigBuilder(source, target);
+        Assert.assertEquals(3, new EditsFileReader(null).read(new File("src/test/resources/edits.json"), builder));
+        builder.build();
+        Assert.assertEquals(2, count("/server/subsystem[@name='foobar']/child"));
+        Assert.assertEquals(1, count("/server/subsystem[@name='foo']/child[@attr='inline']"));
+        Assert.assertEquals(0, count("/server/subsystem[@name='foo']/child[@attr='value2']"));
+    }
+
+    @Test
+    public void testInvalidOperations() throws Exception {
+        try {
+            new EditsFileReader(null).read(new File("src/test/resources/editsInvalid.json"), new XmlConfigBuilder(source, target));
+            Assert.fail("Invalid operations must be reported");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("3 invalid operation(s)"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("editsInvalid.json:2: insert"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("editsInvalid.json:4: rename"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("editsInvalid.json:5: remove"));
+        }
+    }
+}
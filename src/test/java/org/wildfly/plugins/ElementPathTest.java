@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class ElementPathTest {
+
+    private static final String XML = "<server xmlns=\"urn:jboss:domain:1.7\"><profile>"
+            + "<subsystem xmlns=\"urn:a\" name=\"a\"/><subsystem xmlns=\"urn:b\" name=\"b\" enabled=\"true\"/></profile>"
+            + "<socket-binding-group name=\"standard-sockets\"><socket-binding name=\"http\" port=\"8080\"/>"
+            + "<socket-binding name=\"it's\" port=\"1\"/><socket-binding name=\"http\" port=\"8081\"/></socket-binding-group></server>";
+
+    private final NamespaceContextImpl context = new NamespaceContextImpl().mapping("p", "urn:jboss:domain:1.7").mapping("c", "urn:b");
+
+    private Document parse() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(XML.getBytes("UTF-8")));
+    }
+
+    /**
+     * compiled path must select the same elements as XPath
+     */
+    private void assertSameAsXPath(Document doc, String expression) throws Exception {
+        ElementPath path = ElementPath.compile(expression, context);
+        Assert.assertNotNull(expression, path);
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        xpath.setNamespaceContext(context);
+        NodeList expected = (NodeList) xpath.evaluate(expression, doc, XPathConstants.NODESET);
+        NodeList actual = path.select(doc);
+        Assert.assertEquals(expression, expected.getLength(), actual.getLength());
+        for (int i = 0; i < expected.getLength(); i++) {
+            Assert.assertSame(expression, expected.item(i), actual.item(i));
+        }
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        Document doc = parse();
+        assertSameAsXPath(doc, "/p:server/p:profile");
+        assertSameAsXPath(doc, "/p:server/p:profile/c:subsystem");
+        assertSameAsXPath(doc, "/p:server/p:profile/c:subsystem[@name='b' and @enabled=\"true\"]");
+        assertSameAsXPath(doc, "/p:server/p:socket-binding-group[@name='standard-sockets']/p:socket-binding[@name='http']");
+        assertSameAsXPath(doc, "/p:server/p:socket-binding-group/p:socket-binding[@name=\"it's\"][@port='1']");
+        assertSameAsXPath(doc, "/p:server/p:socket-binding-group/p:socket-binding[@missing='']");
+        assertSameAsXPath(doc, "/server/profile");
+    }
+
+    @Test
+    public void testFindLastChild() throws Exception {
+        Document doc = parse();
+        Element group = (Element) ElementPath.compile("/p:server/p:socket-binding-group", context).select(doc).item(0);
+        Element last = ElementPath.compile("/p:socket-binding[@name='http']", context).findLastChild(group);
+        Assert.assertEquals("8081", last.getAttribute("port"));
+        Assert.assertNull(ElementPath.compile("/p:socket-binding[@name='https']", context).findLastChild(group));
+    }
+
+    @Test
+    public void testNotSimple() {
+        String[] expressions = { "//p:socket-binding", "/p:server//p:socket-binding", "p:server/p:profile", "/p:server/*",
+                "/p:server/child::p:profile", "/p:server/p:profile | /p:server", "/p:server/p:profile[1]", "/p:server/p:profile[@name!='a']",
+                "/p:server/p:profile[@name='a' or @name='b']", "/p:server/p:profile[@name=concat('a','b')]", "/x:server",
+                "/p:server/p:profile[local-name()='profile']", "/p:server/@name", "/p:server/text()" };
+        for (String expression : expressions) {
+            Assert.assertNull(expression, ElementPath.compile(expression, context));
+        }
+    }
+
+    @Test
+    public void testParsePredicates() {
+        Assert.assertEquals(0, ElementPath.parsePredicates("").length);
+        String[] attrs = ElementPath.parsePredicates("[ @a = 'x/y' and\t@b=\"it's\" ][@c='']");
+        Assert.assertEquals("[a, x/y, b, it's, c, ]", Arrays.toString(attrs));
+        Assert.assertNull(ElementPath.parsePredicates("[@a='x' and]"));
+        Assert.assertNull(ElementPath.parsePredicates("[@a='x'"));
+        Assert.assertNull(ElementPath.parsePredicates("[@a='x]"));
+    }
+}
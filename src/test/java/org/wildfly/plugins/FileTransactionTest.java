@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileTransactionTest {
+
+    private File tempDir;
+
+    @Before
+    public void createTempDir() throws Exception {
+        tempDir = new File(System.getProperty("java.io.tmpdir"), "file-transaction-test");
+        FileUtils.deleteDirectory(tempDir);
+        tempDir.mkdirs();
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        File existing = new File(tempDir, "standalone.xml");
+        FileUtils.fileWrite(existing.getAbsolutePath(), "old");
+        File created = new File(tempDir, "modules/org/foo/main/module.xml");
+
+        FileTransaction tx = new FileTransaction(new SystemStreamLog(), tempDir);
+        FileUtils.fileWrite(tx.stage(created).getAbsolutePath(), "module");
+        FileUtils.fileWrite(tx.stage(existing).getAbsolutePath(), "new");
+        Assert.assertFalse(created.exists());
+        Assert.assertEquals("old", FileUtils.fileRead(existing));
+        Assert.assertEquals(tx.stage(created), tx.resolve(created));
+
+        tx.commit();
+        Assert.assertEquals("module", FileUtils.fileRead(created));
+        Assert.assertEquals("new", FileUtils.fileRead(existing));
+        // modules, standalone.xml and no staging directory
+        Assert.assertEquals(2, tempDir.list().length);
+    }
+
+    @Test
+    public void testRollbackOnFailure() throws Exception {
+        File existing = new File(tempDir, "standalone.xml");
+        FileUtils.fileWrite(existing.getAbsolutePath(), "old");
+        File created = new File(tempDir, "new.xml");
+        File nested = new File(tempDir, "modules/org/foo/main/module.xml");
+        // target which cannot be replaced by file
+        File blocked = new File(tempDir, "blocked");
+        new File(blocked, "child").mkdirs();
+
+        FileTransaction tx = new FileTransaction(new SystemStreamLog(), tempDir);
+        FileUtils.fileWrite(tx.stage(existing).getAbsolutePath(), "new");
+        FileUtils.fileWrite(tx.stage(created).getAbsolutePath(), "new");
+        FileUtils.fileWrite(tx.stage(nested).getAbsolutePath(), "module");
+        FileUtils.fileWrite(tx.stage(blocked).getAbsolutePath(), "new");
+        try {
+            tx.commit();
+            Assert.fail("Commit should fail");
+        } catch (IOException e) {
+            // expected
+        }
+        Assert.assertEquals("old", FileUtils.fileRead(existing));
+        Assert.assertFalse(created.exists());
+        Assert.assertTrue(new File(blocked, "child").isDirectory());
+        // directories created for nested target are removed as well
+        Assert.assertEquals(2, tempDir.list().length);
+    }
+
+    @Test
+    public void testRollbackRemovesCreatedDirectories() throws Exception {
+        File home = new File(tempDir, "home");
+        FileTransaction tx = new FileTransaction(new SystemStreamLog(), home);
+        FileUtils.fileWrite(tx.stage(new File(home, "standalone.xml")).getAbsolutePath(), "new");
+        Assert.assertTrue(home.isDirectory());
+        tx.rollback();
+        Assert.assertFalse(home.exists());
+    }
+
+    @Test
+    public void testSweepStaleStagingDirectory() throws Exception {
+        File stale = new File(tempDir, FileTransaction.STAGING_PREFIX + "1-1");
+        stale.mkdirs();
+        FileUtils.fileWrite(new File(stale, "0-standalone.xml").getAbsolutePath(), "new");
+
+        FileTransaction tx = new FileTransaction(new SystemStreamLog(), tempDir);
+        tx.stage(new File(tempDir, "standalone.xml"));
+        Assert.assertFalse(stale.exists());
+        tx.rollback();
+
+        File interrupted = new File(tempDir, FileTransaction.STAGING_PREFIX + "2-2");
+        new File(interrupted, "originals").mkdirs();
+        FileUtils.fileWrite(new File(interrupted, "originals/0-standalone.xml").getAbsolutePath(), "old");
+        try {
+            new FileTransaction(new SystemStreamLog(), tempDir).stage(new File(tempDir, "standalone.xml"));
+            Assert.fail("Staging should fail on interrupted commit");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(interrupted.getName()));
+        }
+        Assert.assertTrue(new File(interrupted, "originals/0-standalone.xml").isFile());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.Assert;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class FormatPreservingWriterTest {
+
+    private static final String CONFIG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!-- my server -->\n"
+            + "<server xmlns=\"urn:jboss:domain:1.7\">\n"
+            + "  <extensions>\n"
+            + "      <!-- keep me -->\n"
+            + "      <extension module=\"org.a\"/>\n"
+            + "      <extension module=\"org.old\"/>\n"
+            + "  </extensions>\n"
+            + "  <profile>\n"
+            + "    <subsystem xmlns=\"urn:foo\" name='x'   attr=\"1&amp;\"/>   <!-- trailing -->\n"
+            + "  </profile>\n"
+            + "  <interfaces/>\n"
+            + "</server>\n";
+
+    private File source;
+    private File target;
+
+    @Before
+    public void setUp() throws Exception {
+        File tempDir = new File(System.getProperty("java.io.tmpdir"), "format-preserving-test");
+        FileUtils.deleteDirectory(tempDir);
+        tempDir.mkdirs();
+        source = new File(tempDir, "standalone.xml");
+        target = new File(tempDir, "standalone-new.xml");
+        FileUtils.fileWrite(source.getAbsolutePath(), "UTF-8", CONFIG);
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        List<FormatPreservingWriter.Span> spans = FormatPreservingWriter.scan(CONFIG.getBytes("UTF-8"));
+        Assert.assertEquals(7, spans.size());
+        FormatPreservingWriter.Span subsystem = spans.get(5);
+        Assert.assertTrue(subsystem.selfClosing);
+        Assert.assertTrue(CONFIG.substring(subsystem.start, subsystem.end).startsWith("<subsystem"));
+        Assert.assertTrue(CONFIG.substring(subsystem.start, subsystem.end).endsWith("\"1&amp;\"/>"));
+        FormatPreservingWriter.Span extensions = spans.get(1);
+        Assert.assertEquals("</extensions>", CONFIG.substring(extensions.contentEnd, extensions.end));
+        Assert.assertNull(FormatPreservingWriter.scan("<!DOCTYPE server><server/>".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testNothingChanged() throws Exception {
+        new XmlConfigBuilder(new SystemStreamLog(), source, target).preserveFormatting(true).build();
+        Assert.assertEquals(CONFIG, FileUtils.fileRead(target, "UTF-8"));
+    }
+
+    @Test
+    public void testPatch() throws Exception {
+        new XmlConfigBuilder(new SystemStreamLog(), source, source).preserveFormatting(true)
+                .remove(new Remove("/server/extensions/extension[@module='org.old']"))
+                .insert(new Insert("/server/extensions", "<extension module=\"org.b\"/>").withAttribute("module"))
+                .insert(new Insert("/server/profile", "<subsystem xmlns=\"urn:bar\"><a><b/></a></subsystem>"))
+                .insert(new Insert("/server/interfaces", "<interface name=\"public\"/>").withAttribute("name")).build();
+        String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!-- my server -->\n"
+                + "<server xmlns=\"urn:jboss:domain:1.7\">\n"
+                + "  <extensions>\n"
+                + "      <!-- keep me -->\n"
+                + "      <extension module=\"org.a\"/>\n"
+                + "      <extension module=\"org.b\"/>\n"
+                + "  </extensions>\n"
+                + "  <profile>\n"
+                + "    <subsystem xmlns=\"urn:foo\" name='x'   attr=\"1&amp;\"/>   <!-- trailing -->\n"
+                + "    <subsystem xmlns=\"urn:bar\">\n"
+                + "      <a>\n"
+                + "        <b/>\n"
+                + "      </a>\n"
+                + "    </subsystem>\n"
+                + "  </profile>\n"
+                + "  <interfaces>\n"
+                + "    <interface name=\"public\"/>\n"
+                + "  </interfaces>\n"
+                + "</server>\n";
+        Assert.assertEquals(expected, FileUtils.fileRead(source, "UTF-8"));
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        new XmlConfigBuilder(new SystemStreamLog(), source, target).preserveFormatting(true)
+                .insert(new Insert("/server/extensions", "<extension module=\"org.old\" foo=\"bar\"/>").withAttribute("module"))
+                .insert(new Insert("/server/profile", "<subsystem xmlns=\"urn:foo\" name=\"x\" attr=\"2\"/>").withAttribute("name")).build();
+        String result = FileUtils.fileRead(target, "UTF-8");
+        Assert.assertTrue(result, result.contains("      <extension module=\"org.a\"/>\n      <extension foo=\"bar\" module=\"org.old\"/>\n  </extensions>"));
+        Assert.assertTrue(result, result.contains("  <profile>\n    <subsystem xmlns=\"urn:foo\" attr=\"2\" name=\"x\"/>   <!-- trailing -->\n"));
+        Assert.assertTrue(result, result.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- my server -->\n"));
+    }
+
+    @Test
+    public void testStartTagChanged() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().parse(source);
+        FormatPreservingWriter writer = FormatPreservingWriter.attach(source, doc);
+        Element subsystem = (Element) doc.getElementsByTagNameNS("urn:foo", "subsystem").item(0);
+        subsystem.setAttribute("attr", "<2>");
+        subsystem.setAttribute("added", "yes");
+        subsystem.appendChild(doc.createElementNS("urn:foo", "child"));
+        Assert.assertTrue(writer.write(doc, target));
+        String result = FileUtils.fileRead(target, "UTF-8");
+        Assert.assertTrue(result, result.contains("  <profile>\n    <subsystem xmlns=\"urn:foo\" name=\"x\" attr=\"&lt;2>\" added=\"yes\">\n"
+                + "      <child/>\n    </subsystem>   <!-- trailing -->\n"));
+
+        // source changed since it was parsed
+        source.setLastModified(source.lastModified() - 10000);
+        Assert.assertFalse(writer.write(doc, target));
+    }
+
+    /**
+     * changes which cannot be patched are written by regenerating changed element only
+     */
+    @Test
+    public void testRegenerateElement() throws Exception {
+        // comment preceding removed element is still in document
+        new XmlConfigBuilder(new SystemStreamLog(), source, target).preserveFormatting(true)
+                .remove(new Remove("/server/extensions/extension[@module='org.a']")).build();
+        String result = FileUtils.fileRead(target, "UTF-8");
+        Assert.assertTrue(result, result.contains("<!-- keep me -->"));
+        Assert.assertFalse(result, result.contains("org.a"));
+        Assert.assertTrue(result, result.contains("  <profile>\n    <subsystem xmlns=\"urn:foo\" name='x'   attr=\"1&amp;\"/>   <!-- trailing -->\n"));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class InsertSchedulerTest {
+
+    @Test
+    public void testContainment() {
+        Insert child = new Insert("/server/profile/subsystem[@name='a/b']/child", "<foo/>");
+        Insert subsystem = new Insert("/server/profile", "<subsystem name=\"a/b\"/>");
+        Insert sockets = new Insert("/server/socket-binding-group", "<socket-binding name=\"a\"/>");
+        Insert extension = new Insert("/server/extensions", "<extension module=\"a\"/>");
+        Insert anywhere = new Insert("//socket-binding[@name='a']", "<client-mapping/>");
+        List<List<Insert>> levels = new InsertScheduler().add(child, "child").add(subsystem, "subsystem").add(sockets, "socket-binding")
+                .add(extension, "extension").add(anywhere, "client-mapping").schedule();
+        Assert.assertEquals(2, levels.size());
+        Assert.assertEquals(3, levels.get(0).size());
+        Assert.assertSame(subsystem, levels.get(0).get(0));
+        Assert.assertSame(sockets, levels.get(0).get(1));
+        Assert.assertSame(extension, levels.get(0).get(2));
+        Assert.assertSame(child, levels.get(1).get(0));
+        Assert.assertSame(anywhere, levels.get(1).get(1));
+    }
+
+    @Test
+    public void testWildcardAndCycle() {
+        Insert a = new Insert("/server/*", "<foo/>");
+        Insert b = new Insert("/server", "<bar/>");
+        Insert c = new Insert("/server/x:bar/foo", "<baz/>");
+        InsertScheduler scheduler = new InsertScheduler().add(a, "foo").add(b, "bar").add(c, "baz");
+        Assert.assertTrue(scheduler.dependsOn(0, 1));
+        Assert.assertTrue(scheduler.dependsOn(2, 0));
+        Assert.assertEquals("[[" + b + "], [" + a + "], [" + c + "]]", scheduler.schedule().toString());
+
+        // d and e match content of each other, cycle is broken by original order
+        Insert d = new Insert("//a", "<b/>");
+        Insert e = new Insert("//b", "<a/>");
+        scheduler = new InsertScheduler().add(d, "b").add(e, "a");
+        Assert.assertTrue(scheduler.dependsOn(0, 1));
+        Assert.assertTrue(scheduler.dependsOn(1, 0));
+        Assert.assertEquals("[" + d + ", " + e + "]", scheduler.order().toString());
+    }
+}
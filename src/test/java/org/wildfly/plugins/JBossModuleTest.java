@@ -0,0 +1,276 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.Assert;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JBossModuleTest {
+
+    private static final String MODULE_XML = "<module xmlns=\"urn:jboss:module:1.1\" name=\"org.foo\">"
+            + "<resources><resource-root path=\"foo.jar\"/></resources></module>";
+
+    private File tempDir;
+
+    @Before
+    public void createTempDir() throws Exception {
+        tempDir = new File(System.getProperty("java.io.tmpdir"), "jboss-module-test");
+        FileUtils.deleteDirectory(tempDir);
+        tempDir.mkdirs();
+    }
+
+    /**
+     * creates zip file
+     * 
+     * @param name
+     * @param entries entry name followed by it's content
+     * @return
+     * @throws Exception
+     */
+    private File zip(String name, String... entries) throws Exception {
+        File zip = new File(tempDir, name);
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            for (int i = 0; i < entries.length; i += 2) {
+                zos.putNextEntry(new ZipEntry(entries[i]));
+                zos.write(entries[i + 1].getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+        return zip;
+    }
+
+    @Test
+    public void testInstallZip() throws Exception {
+        File zip = zip("module.zip", "org/foo/main/module.xml", MODULE_XML, "org/foo/main/foo.jar", "jar");
+        File modules = new File(tempDir, "modules");
+        JBossModule module = JBossModule.readFromZipFile(new SystemStreamLog(), zip);
+        Assert.assertEquals("org.foo", module.getModuleId());
+        List<File> installed = module.installTo(modules);
+        Assert.assertEquals(2, installed.size());
+        Assert.assertTrue(new File(modules, "org/foo/main/foo.jar").isFile());
+    }
+
+    @Test
+    public void testInstallChanged() throws Exception {
+        File zip = zip("module.zip", "org/foo/main/module.xml", MODULE_XML, "org/foo/main/foo.jar", "jar", "org/foo/main/bar.txt", "bar");
+        File modules = new File(tempDir, "modules");
+        JBossModule module = JBossModule.readFromZipFile(new SystemStreamLog(), zip);
+        module.installTo(modules);
+        Map<String, Long> checksums = module.getEntryChecksums();
+
+        zip = zip("module.zip", "org/foo/main/module.xml", MODULE_XML, "org/foo/main/foo.jar", "jar2");
+        module = JBossModule.readFromZipFile(new SystemStreamLog(), zip);
+        List<File> installed = module.installChangedTo(modules, checksums);
+        Assert.assertEquals(1, installed.size());
+        Assert.assertEquals("foo.jar", installed.get(0).getName());
+        Assert.assertEquals("jar2", FileUtils.fileRead(new File(modules, "org/foo/main/foo.jar")));
+        Assert.assertFalse(new File(modules, "org/foo/main/bar.txt").exists());
+        Assert.assertEquals(2, checksums.size());
+
+        Assert.assertTrue(module.installChangedTo(modules, checksums).isEmpty());
+    }
+
+    @Test
+    public void testInstallZipEscapingEntry() throws Exception {
+        File zip = zip("module.zip", "org/foo/main/module.xml", MODULE_XML, "../../evil.txt", "evil");
+        File modules = new File(tempDir, "modules");
+        JBossModule module = JBossModule.readFromZipFile(new SystemStreamLog(), zip);
+        try {
+            module.installTo(modules);
+            Assert.fail("entry outside of modules directory must be rejected");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("../../evil.txt"));
+        }
+        try {
+            module.installChangedTo(modules, new HashMap<String, Long>());
+            Assert.fail("entry outside of modules directory must be rejected");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("../../evil.txt"));
+        }
+        Assert.assertFalse(new File(tempDir.getParentFile(), "evil.txt").exists());
+    }
+
+    @Test
+    public void testInstallChangedEscapingChecksum() throws Exception {
+        File victim = new File(tempDir, "victim.txt");
+        FileUtils.fileWrite(victim.getAbsolutePath(), "victim");
+        File zip = zip("module.zip", "org/foo/main/module.xml", MODULE_XML);
+        File modules = new File(tempDir, "modules");
+        Map<String, Long> checksums = new HashMap<String, Long>();
+        checksums.put("../victim.txt", 0L);
+        JBossModule.readFromZipFile(new SystemStreamLog(), zip).installChangedTo(modules, checksums);
+        Assert.assertTrue(victim.isFile());
+        Assert.assertEquals("[org/foo/main/module.xml]", checksums.keySet().toString());
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        File zip = zip("module.zip", "org/foo/main/module.xml", MODULE_XML, "org/foo/main/foo.jar", "jar", "org/foo/main/bar.txt", "bar");
+        File modules = new File(tempDir, "modules");
+        ModuleVerifier verifier = new ModuleVerifier(new SystemStreamLog());
+        Assert.assertEquals(3, verifier.verify(zip, modules).getMissing().size());
+
+        JBossModule.readFromZipFile(new SystemStreamLog(), zip).installTo(modules);
+        ModuleVerifier.Report report = verifier.verify(zip, modules);
+        Assert.assertTrue(report.toString(), report.isClean());
+        Assert.assertEquals(3, report.getFiles().size());
+
+        // same size, different content
+        FileUtils.fileWrite(new File(modules, "org/foo/main/foo.jar").getAbsolutePath(), "JAR");
+        new File(modules, "org/foo/main/bar.txt").delete();
+        FileUtils.fileWrite(new File(modules, "org/foo/main/extra.txt").getAbsolutePath(), "extra");
+        report = verifier.verify(zip, modules);
+        Assert.assertFalse(report.isClean());
+        Assert.assertEquals("[org/foo/main/bar.txt]", report.getMissing().toString());
+        Assert.assertEquals("[org/foo/main/foo.jar]", report.getModified().toString());
+        Assert.assertEquals("[org/foo/main/extra.txt]", report.getExtra().toString());
+    }
+
+    @Test
+    public void testInstallDirLink() throws Exception {
+        File moduleDir = new File(tempDir, "module");
+        moduleDir.mkdirs();
+        FileUtils.fileWrite(new File(moduleDir, "module.xml").getAbsolutePath(), MODULE_XML);
+        FileUtils.fileWrite(new File(moduleDir, "foo.jar").getAbsolutePath(), "jar");
+        File modules = new File(tempDir, "modules");
+        File installed = new File(modules, "org/foo/main/foo.jar");
+
+        JBossModule.readFromDir(new SystemStreamLog(), moduleDir).installTo(modules);
+        Assert.assertEquals("jar", FileUtils.fileRead(installed));
+        Assert.assertFalse(Files.isSameFile(installed.toPath(), new File(moduleDir, "foo.jar").toPath()));
+
+        JBossModule.readFromDir(new SystemStreamLog(), moduleDir).installMode(JBossModule.InstallMode.LINK).installTo(modules);
+        Assert.assertTrue(Files.isSameFile(installed.toPath(), new File(moduleDir, "foo.jar").toPath()));
+        Assert.assertTrue(new File(modules, "org/foo/main/module.xml").isFile());
+    }
+
+    @Test
+    public void testInstallDirNested() throws Exception {
+        File moduleDir = new File(tempDir, "module");
+        new File(moduleDir, "lib/conf").mkdirs();
+        FileUtils.fileWrite(new File(moduleDir, "module.xml").getAbsolutePath(), "<module xmlns=\"urn:jboss:module:1.1\" name=\"org.foo\" slot=\"1.0\">"
+                + "<resources><resource-root path=\"lib\"/></resources></module>");
+        FileUtils.fileWrite(new File(moduleDir, "lib/foo.jar").getAbsolutePath(), "jar");
+        FileUtils.fileWrite(new File(moduleDir, "lib/conf/subsystem-snippet.xml").getAbsolutePath(), "<subsystem/>");
+        File modules = new File(tempDir, "modules");
+
+        List<File> installed = JBossModule.readFromDir(new SystemStreamLog(), moduleDir).installTo(modules);
+        Assert.assertEquals(3, installed.size());
+        Assert.assertTrue(installed.contains(new File(modules, "org/foo/1.0/lib/conf/subsystem-snippet.xml")));
+        for (File f : installed) {
+            Assert.assertTrue(f.getAbsolutePath(), f.isFile());
+        }
+    }
+
+    @Test
+    public void testInstallDirEscapingResource() throws Exception {
+        File moduleDir = new File(tempDir, "module");
+        moduleDir.mkdirs();
+        FileUtils.fileWrite(new File(moduleDir, "module.xml").getAbsolutePath(), "<module xmlns=\"urn:jboss:module:1.1\" name=\"org.foo\">"
+                + "<resources><resource-root path=\"../secret.txt\"/></resources></module>");
+        FileUtils.fileWrite(new File(tempDir, "secret.txt").getAbsolutePath(), "secret");
+        File modules = new File(tempDir, "modules");
+        try {
+            JBossModule.readFromDir(new SystemStreamLog(), moduleDir).installTo(modules);
+            Assert.fail("resource outside of module directory must be rejected");
+        } catch (MojoFailureException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("../secret.txt"));
+        }
+        Assert.assertFalse(new File(modules, "org/foo/secret.txt").exists());
+    }
+
+    @Test
+    public void testReadEntry() throws Exception {
+        File zip = zip("module.zip", "org/foo/main/module.xml", MODULE_XML, "org/foo/1.0/subsystem-snippet.xml", "<subsystem/>");
+        JBossModule module = JBossModule.readFromZipFile(new SystemStreamLog(), zip);
+        Assert.assertEquals(2, module.getEntryNames().size());
+        Assert.assertEquals("org/foo/1.0/subsystem-snippet.xml", module.findEntry("subsystem-snippet.xml"));
+        Assert.assertNull(module.findEntry("socket-binding-snippet.xml"));
+        Assert.assertEquals("[org/foo/1.0/subsystem-snippet.xml]", module.findEntries("subsystem-snippet.xml").toString());
+        Assert.assertTrue(module.findEntries("socket-binding-snippet.xml").isEmpty());
+        Assert.assertEquals("<subsystem/>", module.readEntry("org/foo/1.0/subsystem-snippet.xml"));
+    }
+
+    @Test
+    public void testReadMultipleModules() throws Exception {
+        String lib = "<module xmlns=\"urn:jboss:module:1.1\" name=\"org.foo.lib\" slot=\"1.0\">"
+                + "<resources><resource-root path=\"lib.jar\"/></resources></module>";
+        String ext = "<module xmlns=\"urn:jboss:module:1.1\" name=\"org.foo.%s\"><resources><resource-root path=\"ext.jar\"/></resources>"
+                + "<dependencies><module name=\"org.jboss.as.controller\"/><module name=\"org.foo.lib\" slot=\"1.0\"/></dependencies></module>";
+        File zip = zip("modules.zip", "org/foo/lib/1.0/module.xml", lib, "org/foo/lib/1.0/lib.jar", "lib", "org/foo/a/main/module.xml",
+                String.format(ext, "a"), "org/foo/a/main/ext.jar", "a", "org/foo/b/main/module.xml", String.format(ext, "b"), "org/foo/b/main/ext.jar",
+                "b");
+        JBossModule module = JBossModule.readFromZipFile(new SystemStreamLog(), zip);
+        Assert.assertEquals(3, module.getModules().size());
+        Assert.assertEquals("org.foo.lib:1.0", module.getModules().get(0).toString());
+        Assert.assertEquals("[org.jboss.as.controller, org.foo.lib]", module.getModules().get(1).getDependencies().toString());
+        Assert.assertEquals("[org.foo.a, org.foo.b]", module.getExtensionModuleIds().toString());
+        Assert.assertEquals("org.foo.a", module.getModuleId());
+
+        File modules = new File(tempDir, "modules");
+        Assert.assertEquals(6, module.installTo(modules).size());
+        Assert.assertTrue(new File(modules, "org/foo/lib/1.0/lib.jar").isFile());
+    }
+
+    @Test
+    public void testReadSingleModuleWithoutController() throws Exception {
+        String lib = "<module xmlns=\"urn:jboss:module:1.1\" name=\"org.foo.lib\">"
+                + "<resources><resource-root path=\"lib.jar\"/></resources><dependencies><module name=\"javax.api\"/></dependencies></module>";
+        File zip = zip("lib.zip", "org/foo/lib/main/module.xml", lib, "org/foo/lib/main/lib.jar", "lib");
+        JBossModule module = JBossModule.readFromZipFile(new SystemStreamLog(), zip);
+        Assert.assertEquals(1, module.getModules().size());
+        Assert.assertEquals("[org.foo.lib]", module.getExtensionModuleIds().toString());
+        Assert.assertEquals("org.foo.lib", module.getModuleId());
+
+        File modules = new File(tempDir, "modules");
+        Assert.assertEquals(2, module.installTo(modules).size());
+        Assert.assertTrue(new File(modules, "org/foo/lib/main/lib.jar").isFile());
+    }
+
+    @Test
+    public void testReadMultipleModulesWithoutController() throws Exception {
+        String lib = "<module xmlns=\"urn:jboss:module:1.1\" name=\"org.foo.%s\"><resources><resource-root path=\"lib.jar\"/></resources></module>";
+        File zip = zip("libs.zip", "org/foo/a/main/module.xml", String.format(lib, "a"), "org/foo/b/main/module.xml", String.format(lib, "b"));
+        JBossModule module = JBossModule.readFromZipFile(new SystemStreamLog(), zip);
+        Assert.assertEquals(2, module.getModules().size());
+        Assert.assertEquals("[org.foo.a]", module.getExtensionModuleIds().toString());
+        Assert.assertEquals("org.foo.a", module.getModuleId());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.Assert;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ModuleRepositoryIndexTest {
+
+    private File tempDir;
+    private File repository;
+
+    @Before
+    public void createRepository() throws Exception {
+        tempDir = new File(System.getProperty("java.io.tmpdir"), "module-index-test");
+        FileUtils.deleteDirectory(tempDir);
+        repository = new File(tempDir, "modules");
+        module("system/layers/base/org/jboss/as/controller/main", "org.jboss.as.controller", null);
+        module("system/layers/base/org/foo/lib/1.0", "org.foo.lib", "1.0");
+    }
+
+    private void module(String path, String name, String slot) throws Exception {
+        File dir = new File(repository, path);
+        new File(dir, "lib").mkdirs();
+        FileUtils.fileWrite(new File(dir, "module.xml").getAbsolutePath(), "<module xmlns=\"urn:jboss:module:1.1\" name=\"" + name + "\""
+                + (slot == null ? "" : " slot=\"" + slot + "\"") + "/>");
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        File indexFile = new File(tempDir, "target/modules.index");
+        ModuleRepositoryIndex index = new ModuleRepositoryIndex(new SystemStreamLog(), repository, indexFile).load();
+        Assert.assertEquals(2, index.size());
+        Assert.assertTrue(index.contains("org.jboss.as.controller", "main"));
+        Assert.assertTrue(index.contains("org.foo.lib", "1.0"));
+        Assert.assertFalse(index.contains("org.foo.lib", "main"));
+        Assert.assertEquals(new File(repository, "system/layers/base/org/foo/lib/1.0").getAbsoluteFile(), index.getModuleDir("org.foo.lib", "1.0"));
+        Assert.assertTrue(indexFile.isFile());
+
+        // nothing changed, so no directory is listed
+        index = new ModuleRepositoryIndex(new SystemStreamLog(), repository, indexFile).load();
+        Assert.assertEquals(0, index.getScanned());
+        Assert.assertEquals(2, index.size());
+
+        File bar = new File(repository, "system/layers/base/org/bar");
+        Thread.sleep(1000);
+        module("system/layers/base/org/bar/main", "org.bar", null);
+        index = new ModuleRepositoryIndex(new SystemStreamLog(), repository, indexFile).load();
+        Assert.assertTrue(index.contains("org.bar", "main"));
+        Assert.assertEquals(3, index.getScanned());
+
+        FileUtils.deleteDirectory(bar);
+        index = new ModuleRepositoryIndex(new SystemStreamLog(), repository, indexFile).load();
+        Assert.assertFalse(index.contains("org.bar", "main"));
+        Assert.assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testCheckModule() throws Exception {
+        File zip = new File(tempDir, "module.zip");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            zos.putNextEntry(new ZipEntry("org/foo/main/module.xml"));
+            zos.write(("<module xmlns=\"urn:jboss:module:1.1\" name=\"org.foo\"><resources><resource-root path=\"foo.jar\"/>"
+                    + "<resource-root path=\"missing.jar\"/><resource-root path=\"conf\"/></resources><dependencies>"
+                    + "<module name=\"org.jboss.as.controller\"/><module name=\"org.foo.lib\" slot=\"1.0\"/><module name=\"org.foo.lib\"/>"
+                    + "<module name=\"org.optional\" optional=\"true\"/></dependencies></module>").getBytes("UTF-8"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("org/foo/main/foo.jar"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("org/foo/main/conf/foo.properties"));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+        JBossModule module = JBossModule.readFromZipFile(new SystemStreamLog(), zip);
+        List<String> missing = ModuleRepositoryIndex.findMissingResourceRoots(module);
+        Assert.assertEquals(1, missing.size());
+        Assert.assertTrue(missing.get(0), missing.get(0).contains("missing.jar"));
+
+        ModuleRepositoryIndex index = new ModuleRepositoryIndex(new SystemStreamLog(), repository, null).load();
+        missing = index.findMissingDependencies(module);
+        Assert.assertEquals(1, missing.size());
+        Assert.assertTrue(missing.get(0), missing.get(0).contains("org.foo.lib:main"));
+    }
+}
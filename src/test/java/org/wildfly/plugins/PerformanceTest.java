@@ -0,0 +1,266 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import junit.framework.Assert;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Builds and installs generated large fixtures (see {@link ConfigFixtures}) of two sizes, the larger one having twice as many elements and
+ * operations. Cost of linear build doubles, quadratic behavior (i.e. each operation walking whole document) makes it four times higher, so
+ * allocation of calling thread must not grow more than {@link #MAX_GROWTH} times. Allocation does not depend on speed of the machine, so
+ * fixtures reduced {@link #REDUCTION} times are checked by every build.
+ * <p>
+ * Full size fixtures, which are also expected to fit {@link #BUILD_MILLIS} so redeploy by watch goal stays interactive, are built in
+ * <code>perf</code> profile only: <code>mvn test -Pperf -Dtest=PerformanceTest</code>
+ */
+public class PerformanceTest {
+
+    /**
+     * doubling input of linear build doubles its cost, quadratic build quadruples it
+     */
+    private static final double MAX_GROWTH = 2.5;
+    /**
+     * redeploy of configuration with thousands of elements is expected to feel immediate
+     */
+    private static final long BUILD_MILLIS = 2000;
+    /**
+     * full size fixtures and time targets are checked in perf profile only
+     */
+    private static final boolean PERF = Boolean.getBoolean("perf");
+    private static final int REDUCTION = 2;
+
+    private final Log log = new SystemStreamLog();
+    private File tempDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = new File(System.getProperty("java.io.tmpdir"), "performance-test");
+        FileUtils.deleteDirectory(tempDir);
+        tempDir.mkdirs();
+    }
+
+    @Test
+    public void testStandaloneBuild() throws Exception {
+        warmUp();
+        Measurement small = buildStandalone(size(1000));
+        Measurement large = buildStandalone(size(2000));
+        assertLinear("standalone build", small, large);
+        assertWithin("standalone build", large, BUILD_MILLIS);
+    }
+
+    @Test
+    public void testDomainBuild() throws Exception {
+        warmUp();
+        Measurement small = buildDomain(size(100));
+        Measurement large = buildDomain(size(200));
+        assertLinear("domain build", small, large);
+        assertWithin("domain build", large, BUILD_MILLIS);
+    }
+
+    @Test
+    public void testModuleInstall() throws Exception {
+        Measurement small = installModules(size(10));
+        Measurement large = installModules(size(20));
+        assertLinear("module install", small, large);
+    }
+
+    /**
+     * builds standalone configuration with given number of subsystems and socket bindings, every 20th of them is replaced, added, removed and
+     * edited
+     */
+    private Measurement buildStandalone(int size) throws Exception {
+        File source = ConfigFixtures.standalone(new File(tempDir, "standalone-" + size + ".xml"), size, size);
+        File target = new File(tempDir, "standalone-" + size + "-new.xml");
+        int operations = size / 20;
+
+        XmlConfigBuilder builder = new XmlConfigBuilder(log, source, target);
+        for (int i = 0; i < operations; i++) {
+            builder.insert(new Insert("/server/profile", "<subsystem xmlns=\"urn:test:subsystem:" + i * 20 + "\" name=\"s" + i * 20
+                    + "\"><setting name=\"b\" value=\"" + i + "\"/></subsystem>").withAttribute("name"));
+            builder.insert(new Insert("/server/socket-binding-group[@name='standard-sockets']", "<socket-binding name=\"new" + i + "\" port=\""
+                    + (20000 + i) + "\"/>").withAttribute("name"));
+            builder.remove(new Remove("/server/socket-binding-group/socket-binding[@name='b" + (i * 2 + 1) + "']"));
+            builder.edit(new Edit("/server/socket-binding-group/socket-binding[@name='b" + i * 2 + "']", "set-attribute").with("name", "port")
+                    .with("value", "0"));
+        }
+        Measurement measurement = new Measurement(size);
+        builder.build();
+        measurement.stop();
+
+        Document doc = parse(target);
+        Assert.assertEquals((double) size, count(doc, "/*[local-name()='server']/*[local-name()='profile']/*[local-name()='subsystem']"));
+        Assert.assertEquals((double) operations, count(doc, "//*[local-name()='setting' and @name='b']"));
+        Assert.assertEquals((double) size, count(doc, "//*[local-name()='socket-binding']"));
+        Assert.assertEquals((double) operations, count(doc, "//*[local-name()='socket-binding' and @port='0']"));
+        return measurement;
+    }
+
+    /**
+     * builds domain configuration with given number of profiles, 5 tenant subsystems are added to each profile
+     */
+    private Measurement buildDomain(int profiles) throws Exception {
+        File source = ConfigFixtures.domain(new File(tempDir, "domain-" + profiles + ".xml"), profiles, 20, 20);
+        File target = new File(tempDir, "domain-" + profiles + "-new.xml");
+
+        Properties[] tenants = new Properties[5];
+        for (int i = 0; i < tenants.length; i++) {
+            tenants[i] = new Properties();
+            tenants[i].setProperty("tenant", "t" + i);
+        }
+        XmlConfigBuilder builder = new XmlConfigBuilder(log, source, target);
+        builder.insert(new Insert("/domain/profiles/profile", "<subsystem xmlns=\"urn:test:tenant\" name=\"${tenant}\"/>").withAttribute("name")
+                .withParameters(tenants));
+        builder.insert(new Insert("/domain/socket-binding-groups/socket-binding-group", "<socket-binding name=\"b1\" port=\"1\"/>")
+                .withAttribute("name").withWhen("/domain/profiles/profile[@name='p0']"));
+        builder.remove(new Remove("/domain/profiles/profile/*[local-name()='subsystem' and @name='s19']"));
+        Measurement measurement = new Measurement(profiles);
+        builder.build();
+        measurement.stop();
+
+        Document doc = parse(target);
+        Assert.assertEquals(profiles * 24.0, count(doc, "//*[local-name()='subsystem']"));
+        Assert.assertEquals((double) profiles, count(doc, "//*[local-name()='socket-binding' and @name='b1' and @port='1']"));
+        return measurement;
+    }
+
+    /**
+     * installs zip with given number of modules, each having 250 resources
+     */
+    private Measurement installModules(int modules) throws Exception {
+        File zip = ConfigFixtures.moduleZip(new File(tempDir, "modules-" + modules + ".zip"), modules, 250);
+        File modulesHome = new File(tempDir, "modules-" + modules);
+
+        Measurement measurement = new Measurement(modules);
+        JBossModule module = JBossModule.readFromZipFile(log, zip);
+        List<File> installed = module.installTo(modulesHome);
+        measurement.stop();
+
+        Assert.assertEquals(modules, module.getModules().size());
+        Assert.assertEquals(modules * 251, installed.size());
+        Assert.assertTrue(new File(modulesHome, "org/test/m" + (modules - 1) + "/main/r249.jar").isFile());
+        return measurement;
+    }
+
+    /**
+     * builds small fixture, so measured build does not include class loading and interpreted code
+     */
+    private void warmUp() throws Exception {
+        File source = ConfigFixtures.standalone(new File(tempDir, "warm-up.xml"), 50, 50);
+        List<Insert> inserts = new ArrayList<Insert>();
+        for (int i = 0; i < 50; i++) {
+            inserts.add(new Insert("/server/profile", "<subsystem xmlns=\"urn:test:subsystem:" + i + "\" name=\"s" + i + "\"/>").withAttribute("name"));
+        }
+        for (int round = 0; round < 5; round++) {
+            new XmlConfigBuilder(source, new File(tempDir, "warm-up-new.xml")).inserts(inserts).build();
+        }
+    }
+
+    private void assertLinear(String name, Measurement small, Measurement large) {
+        log.info(name + " : " + small + ", " + large);
+        if (small.bytes < 0) {
+            log.warn("JVM does not measure thread allocation, growth of " + name + " is not checked");
+            return;
+        }
+        double growth = (double) large.bytes / small.bytes;
+        Assert.assertTrue(name + " allocation grew " + String.format("%.1f", growth) + " times for twice the input (" + small + ", " + large
+                + "), at most " + MAX_GROWTH + " is linear", growth <= MAX_GROWTH);
+    }
+
+    private static int size(int full) {
+        return PERF ? full : full / REDUCTION;
+    }
+
+    private void assertWithin(String name, Measurement measurement, long maxMillis) {
+        if (!PERF) {
+            return;
+        }
+        Assert.assertTrue(name + " took " + measurement + ", target is " + maxMillis + " ms", measurement.millis <= maxMillis);
+    }
+
+    private Document parse(File file) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(file);
+    }
+
+    private double count(Document doc, String expression) throws Exception {
+        return (Double) XPathFactory.newInstance().newXPath().evaluate("count(" + expression + ")", doc, XPathConstants.NUMBER);
+    }
+
+    /**
+     * time and bytes allocated by current thread between creation and {@link #stop()}
+     */
+    private static class Measurement {
+        private final int size;
+        private final long start = System.nanoTime();
+        private final long allocated = allocatedBytes();
+        private long millis;
+        private long bytes;
+
+        Measurement(int size) {
+            this.size = size;
+        }
+
+        void stop() {
+            millis = (System.nanoTime() - start) / 1000000;
+            bytes = allocated < 0 ? -1 : allocatedBytes() - allocated;
+        }
+
+        @Override
+        public String toString() {
+            return "size " + size + " took " + millis + " ms" + (bytes < 0 ? "" : " and allocated " + bytes / 1024 + " KB");
+        }
+
+        /**
+         * 
+         * @return bytes allocated by current thread or -1 if JVM does not tell
+         */
+        private static long allocatedBytes() {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+                if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -22,6 +22,7 @@
 package org.wildfly.plugins;
 
 import java.io.File;
+import java.util.Properties;
 
 import junit.framework.Assert;
 
@@ -51,4 +52,29 @@ public class RegisterOptionsTest {
         o1.extend(o2);
         Assert.assertEquals(subsystem2, o1.getSubsystem());
     }
+
+    @Test
+    public void testProperties() {
+        RegisterOptions o1 = new RegisterOptions().serverConfig(new File("standalone.xml").getAbsoluteFile()).socketBindingGroups(new String[] { "a", "b" })
+                .withExtensions("org.foo", "org.bar").registerExtension(false).memoryBudget(64L * 1024 * 1024)
+                .inserts(new Insert[] { new Insert("/server", "<foo/>").withAttribute("name").withWhen("/server/a"), new Insert("/server/profile", new File("foo.xml").getAbsoluteFile()) });
+
+        RegisterOptions o2 = RegisterOptions.fromProperties(o1.toProperties());
+        Assert.assertEquals(o1.toString(), o2.toString());
+        Assert.assertFalse(o2.shouldRegisterExtension());
+        Assert.assertEquals(64L * 1024 * 1024, o2.getMemoryBudget());
+        Assert.assertEquals("name", o2.getInserts()[0].getAttribute());
+        Assert.assertEquals("/server/a", o2.getInserts()[0].getWhen());
+        Assert.assertEquals("org.foo", o2.getModuleId());
+        Assert.assertEquals(2, o2.getModuleIds().length);
+
+        Properties params = new Properties();
+        params.setProperty("tenant", "a.b");
+        Insert template = new Insert("/server", "<foo name=\"${tenant}\"/>").withParameters(new Properties(), params);
+        template.getParameters()[0].setProperty("tenant", "x");
+        Insert decoded = RegisterOptions.fromProperties(new RegisterOptions().inserts(new Insert[] { template }).toProperties()).getInserts()[0];
+        Assert.assertEquals(2, decoded.getParameters().length);
+        Assert.assertEquals("x", decoded.getParameters()[0].getProperty("tenant"));
+        Assert.assertEquals("a.b", decoded.getParameters()[1].getProperty("tenant"));
+    }
 }
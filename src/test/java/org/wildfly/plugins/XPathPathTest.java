@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.wildfly.plugins;
+
+import java.lang.management.ManagementFactory;
+
+import javax.xml.xpath.XPathFactory;
+
+import junit.framework.Assert;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class XPathPathTest {
+
+    private static final String EXPRESSION = "/server/profile/subsystem[@name='foo']/deployment[@path='a/b' and @enabled='true']";
+
+    @Test
+    public void testParse() {
+        XPathPath path = XPathPath.parse(EXPRESSION);
+        Assert.assertEquals(4, path.getSteps().size());
+        Assert.assertEquals("deployment", path.getSteps().get(3).getName());
+        Assert.assertTrue(path.getSteps().get(3).hasPredicates());
+        Assert.assertFalse(path.getSteps().get(0).hasPredicates());
+        Assert.assertSame(path, XPathPath.parse(EXPRESSION));
+
+        path = XPathPath.parse("//attribute::name | child::foo[bar='/']");
+        Assert.assertEquals(2, path.getSteps().size());
+        Assert.assertEquals("attribute", path.getSteps().get(0).getAxis());
+        Assert.assertEquals("//attribute::name | child::x:foo[x:bar='/']", path.namespaced("x"));
+    }
+
+    @Test
+    public void testNamespacedNested() {
+        Assert.assertEquals("not(/x:server/x:profile/x:subsystem[@name='x'])",
+                XPathPath.parse("not(/server/profile/subsystem[@name='x'])").namespaced("x"));
+        Assert.assertEquals("count(/x:server/x:extensions/x:extension) > 0",
+                XPathPath.parse("count(/server/extensions/extension) > 0").namespaced("x"));
+        Assert.assertEquals("/x:server/x:interfaces | (/x:server/x:profile/x:subsystem)[1]",
+                XPathPath.parse("/server/interfaces | (/server/profile/subsystem)[1]").namespaced("x"));
+        Assert.assertEquals("/x:a[x:b and @c or count(x:d) div 2 mod 3 > 1]/x:e",
+                XPathPath.parse("/a[b and @c or count(d) div 2 mod 3 > 1]/e").namespaced("x"));
+        Assert.assertEquals("/x:a/@*/.. | //x:b/text() | //*[local-name()='c'] | y:d",
+                XPathPath.parse("/a/@*/.. | //b/text() | //*[local-name()='c'] | y:d").namespaced("x"));
+        Assert.assertEquals("descendant::x:a/attribute::b/self::node()",
+                XPathPath.parse("descendant::a/attribute::b/self::node()").namespaced("x"));
+    }
+
+    @Test
+    public void testNamespacedRejected() {
+        for (String expression : new String[] { "/a[@b='c]", "not(/a", "/a]", "/a#b" }) {
+            try {
+                XPathPath.parse(expression).namespaced("x");
+                Assert.fail(expression + " must not be namespaced");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testLiteral() throws Exception {
+        Assert.assertEquals("'a/b'", XPathPath.appendLiteral(new StringBuilder(), "a/b").toString());
+        Assert.assertEquals("\"it's\"", XPathPath.appendLiteral(new StringBuilder(), "it's").toString());
+        String literal = XPathPath.appendLiteral(new StringBuilder(), "it's \"x\"").toString();
+        Assert.assertEquals("it's \"x\"", XPathFactory.newInstance().newXPath().evaluate(literal, (Object) null));
+    }
+
+    /**
+     * namespacing already parsed path must allocate a fraction of what the former split based implementation did
+     */
+    @Test
+    public void testNamespacedAllocation() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+        int calls = 100000;
+        for (int i = 0; i < calls; i++) {
+            XmlConfigBuilder.xpath2Namespaced(EXPRESSION, "x");
+            splitNamespaced(EXPRESSION, "x");
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            XmlConfigBuilder.xpath2Namespaced(EXPRESSION, "x");
+        }
+        long perCall = (threads.getThreadAllocatedBytes(threadId) - before) / calls;
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            splitNamespaced(EXPRESSION, "x");
+        }
+        long referencePerCall = (threads.getThreadAllocatedBytes(threadId) - before) / calls;
+        Assert.assertTrue("Allocated " + perCall + " bytes per call, split based implementation allocated " + referencePerCall,
+                perCall * 10 <= referencePerCall);
+    }
+
+    /**
+     * former implementation of {@link XmlConfigBuilder#xpath2Namespaced(String, String)}, splitting expression on every call
+     */
+    private static String splitNamespaced(String expression, String prefix) {
+        String[] components = expression.split("/");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < components.length; i++) {
+            String piece = components[i];
+            if (piece.matches("^\\w+.*")) {
+                piece = prefix + ":" + piece;
+            }
+            sb.append(piece + "/");
+        }
+        if (sb.length() > 0) {
+            sb.deleteCharAt(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+}
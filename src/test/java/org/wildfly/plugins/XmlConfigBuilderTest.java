@@ -24,6 +24,9 @@ package org.wildfly.plugins;
 import java.io.File;
 import java.io.FileReader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -35,6 +38,8 @@ import javax.xml.xpath.XPathFactory;
 
 import junit.framework.Assert;
 
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.junit.Test;
 import org.w3c.dom.Document;
@@ -97,6 +102,9 @@ public class XmlConfigBuilderTest {
         Assert.assertEquals("", XmlConfigBuilder.xpath2Namespaced("", ""));
         Assert.assertEquals("x:test/x:test1", XmlConfigBuilder.xpath2Namespaced("test/test1", "x"));
         Assert.assertEquals("/x:test[@a='x']/*[@b='y']", XmlConfigBuilder.xpath2Namespaced("/test[@a='x']/*[@b='y']", "x"));
+        // predicates containing slash and axes
+        Assert.assertEquals("/x:server/x:deployment[@path='a/b']/@name", XmlConfigBuilder.xpath2Namespaced("/server/deployment[@path='a/b']/@name", "x"));
+        Assert.assertEquals("/x:a/child::x:b/text() | //x:c", XmlConfigBuilder.xpath2Namespaced("/a/child::b/text() | //c", "x"));
     }
 
     @Test
@@ -113,6 +121,9 @@ public class XmlConfigBuilderTest {
         // element with ns and attributes
         Assert.assertEquals("/x:test[@attr1='val1' and @attr2='val2']",
                 XmlConfigBuilder.element2Xpath(xml("<test attr1=\"val1\" xmlns=\"foo\"  attr2=\"val2\"></test>").getDocumentElement(), "x", null));
+        // identity attribute containing quote
+        Assert.assertEquals("/test[@name=\"it's\"]",
+                XmlConfigBuilder.element2Xpath(xml("<test name=\"it's\" attr2=\"val2\"></test>").getDocumentElement(), "x", null, "name"));
 
     }
 
@@ -255,6 +266,228 @@ public class XmlConfigBuilderTest {
         assertXpath("/x:server/ns:subsystem[@name='bar']/ns:subsystem[@name='foobar']/ns:child", doc, 2);
     }
 
+    @Test
+    public void testNSRootAppendIntoInsertedContent() throws Exception {
+        XmlConfigBuilder builder = new XmlConfigBuilder(getResourceFile("rootNS.xml"), getTempFile());
+        builder.insert(new Insert("/server", getResourceFile("content1AppendNestedNS.xml")));
+        builder.insert(new Insert("/server/subsystem[@name='foobar']/*[local-name()='child2']", "<added name=\"a\"/>"));
+        builder.insert(new Insert("/server/subsystem[@name='foobar']", "<added name=\"b\"/>"));
+        builder.build();
+        Document doc = dBuilder.parse(builder.getTargetFile());
+        String xmlns = doc.getDocumentElement().getAttribute("xmlns");
+        xpath.setNamespaceContext(new NamespaceContextImpl().mapping("x", xmlns).mapping("k", "keepme"));
+        assertXpath("/x:server/x:subsystem[@name='foobar']/x:added[@name='b']", doc, 1);
+        assertXpath("/x:server/x:subsystem[@name='foobar']/k:child2/k:added[@name='a']", doc, 1);
+        assertXpath("/x:server/x:subsystem[@name='foobar']/k:child2/k:keepme", doc, 1);
+    }
+
+    @Test
+    public void testInsertIntoContentOfLaterInsert() throws Exception {
+        XmlConfigBuilder builder = new XmlConfigBuilder(getResourceFile("rootNS.xml"), getTempFile());
+        builder.insert(new Insert("//subsystem[@name='later']", "<added name=\"a\"/>"));
+        builder.insert(new Insert("/server", "<subsystem name=\"later\"/>").withAttribute("name"));
+        builder.build();
+        Document doc = dBuilder.parse(builder.getTargetFile());
+        xpath.setNamespaceContext(new NamespaceContextImpl().mapping("x", "urn:jboss:domain:2.1"));
+        assertXpath("/x:server/x:subsystem[@name='later']/x:added[@name='a']", doc, 1);
+    }
+
+    /**
+     * compares parallel and serial apply of many inserts into many profiles, both must produce same document
+     */
+    @Test
+    public void testParallelMatchesSerial() throws Exception {
+        int profiles = 20;
+        int subsystems = 20;
+        File source = new File(System.getProperty("java.io.tmpdir"), "profiles.xml");
+        StringBuilder sb = new StringBuilder("<server xmlns=\"urn:jboss:domain:2.1\">");
+        for (int p = 0; p < profiles; p++) {
+            sb.append("<profile name=\"p" + p + "\">");
+            for (int s = 0; s < subsystems; s += 2) {
+                sb.append("<subsystem xmlns=\"urn:foo:" + s + "\" name=\"s" + s + "\"><old/></subsystem>");
+            }
+            sb.append("</profile>");
+        }
+        FileUtils.fileWrite(source.getAbsolutePath(), sb.append("</server>").toString());
+        List<Insert> inserts = new ArrayList<Insert>();
+        for (int p = 0; p < profiles; p++) {
+            for (int s = 0; s < subsystems; s++) {
+                inserts.add(new Insert("/server/profile[@name='p" + p + "']", "<subsystem xmlns=\"urn:foo:" + s + "\" name=\"s" + s + "\">"
+                        + "<child attr=\"${jboss.bind.address:" + p + "}\"/></subsystem>").withAttribute("name"));
+            }
+        }
+        File serial = new File(System.getProperty("java.io.tmpdir"), "profiles-serial.xml");
+        File parallel = new File(System.getProperty("java.io.tmpdir"), "profiles-parallel.xml");
+        SystemStreamLog log = new SystemStreamLog();
+        long serialTime = 0;
+        long parallelTime = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            new XmlConfigBuilder(log, source, serial).inserts(inserts).build();
+            serialTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            new XmlConfigBuilder(log, source, parallel).inserts(inserts).parallel(true).build();
+            parallelTime = System.nanoTime() - start;
+        }
+        log.info("Applied " + inserts.size() + " inserts serially in " + serialTime / 1000000 + "ms, in parallel in " + parallelTime / 1000000
+                + "ms");
+        Assert.assertEquals(FileUtils.fileRead(serial), FileUtils.fileRead(parallel));
+        Document doc = dBuilder.parse(parallel);
+        xpath.setNamespaceContext(new NamespaceContextImpl().mapping("x", "urn:jboss:domain:2.1").mapping("f", "urn:foo:4"));
+        assertXpath("/x:server/x:profile/*[local-name()='subsystem']", doc, profiles * subsystems);
+        assertXpath("/x:server/x:profile[@name='p3']/f:subsystem[@name='s4']/f:child[@attr='${jboss.bind.address:3}']", doc, 1);
+        assertXpath("//f:old", doc, 0);
+    }
+
+    @Test
+    public void testTemplateParameters() throws Exception {
+        Properties[] tenants = new Properties[3];
+        for (int i = 0; i < tenants.length; i++) {
+            tenants[i] = new Properties();
+            tenants[i].setProperty("tenant", "t" + i);
+        }
+        XmlConfigBuilder builder = new XmlConfigBuilder(getResourceFile("rootNS.xml"), getTempFile());
+        builder.insert(new Insert("/server", "<subsystem name=\"${tenant}\"><child attr=\"${jboss.bind.address:${tenant}}\">${tenant}</child></subsystem>")
+                .withAttribute("name").withParameters(tenants));
+        builder.insert(new Insert("/server/subsystem[@name='t1']", "<added name=\"a\"/>"));
+        builder.build();
+        Document doc = dBuilder.parse(builder.getTargetFile());
+        xpath.setNamespaceContext(new NamespaceContextImpl().mapping("x", "urn:jboss:domain:2.1"));
+        assertXpath("/x:server/x:subsystem[@name='t0' or @name='t1' or @name='t2']", doc, 3);
+        assertXpath("/x:server/x:subsystem[@name='t2']/x:child[@attr='${jboss.bind.address:t2}' and text()='t2']", doc, 1);
+        assertXpath("/x:server/x:subsystem[@name='t1']/x:added", doc, 1);
+    }
+
+    /**
+     * conditions are evaluated against source document before any change, each distinct one only once
+     */
+    @Test
+    public void testConditions() throws Exception {
+        String exists = "/server/subsystem[@name='foo']";
+        String missing = "/server/subsystem[@name='missing']";
+        XmlConfigBuilder builder = new XmlConfigBuilder(getResourceFile("rootNS.xml"), getTempFile());
+        builder.remove(new Remove(exists).withWhen(exists));
+        builder.insert(new Insert("/server", "<subsystem name=\"a\"/>").withAttribute("name").withWhen(exists));
+        builder.insert(new Insert("/server", "<subsystem name=\"b\"/>").withAttribute("name").withUnless(exists));
+        builder.insert(new Insert("/server", "<subsystem name=\"c\"/>").withAttribute("name").withWhen(missing));
+        builder.insert(new Insert("/server", "<subsystem name=\"d\"/>").withAttribute("name").withWhen(exists).withUnless(missing));
+        builder.edit(new Edit("/server/subsystem[@name='a']", "set-attribute").with("name", "enabled").with("value", "true").withUnless(missing));
+        builder.edit(new Edit("/server/subsystem[@name='d']", "set-attribute").with("name", "enabled").with("value", "true").withWhen(missing));
+        builder.build();
+        Assert.assertEquals(2, builder.getConditionEvaluations());
+        Document doc = dBuilder.parse(builder.getTargetFile());
+        xpath.setNamespaceContext(new NamespaceContextImpl().mapping("x", "urn:jboss:domain:2.1"));
+        assertXpath("/x:server/x:subsystem[@name='foo']", doc, 0);
+        assertXpath("/x:server/x:subsystem[@name='a' and @enabled='true']", doc, 1);
+        assertXpath("/x:server/x:subsystem[@name='b' or @name='c']", doc, 0);
+        assertXpath("/x:server/x:subsystem[@name='d' and not(@enabled)]", doc, 1);
+    }
+
+    /**
+     * paths wrapped in functions must be namespaced as well
+     */
+    @Test
+    public void testFunctionConditions() throws Exception {
+        String missing = "not(/server/subsystem[@name='foo'])";
+        String none = "count(/server/subsystem[@name='missing'])=0";
+        XmlConfigBuilder builder = new XmlConfigBuilder(getResourceFile("rootNS.xml"), getTempFile());
+        builder.insert(new Insert("/server", "<subsystem name=\"a\"/>").withAttribute("name").withWhen(missing));
+        builder.insert(new Insert("/server", "<subsystem name=\"b\"/>").withAttribute("name").withUnless(missing));
+        builder.insert(new Insert("/server", "<subsystem name=\"c\"/>").withAttribute("name").withWhen(none));
+        builder.insert(new Insert("/server", "<subsystem name=\"d\"/>").withAttribute("name").withUnless(none));
+        builder.build();
+        Assert.assertEquals(2, builder.getConditionEvaluations());
+        Document doc = dBuilder.parse(builder.getTargetFile());
+        xpath.setNamespaceContext(new NamespaceContextImpl().mapping("x", "urn:jboss:domain:2.1"));
+        assertXpath("/x:server/x:subsystem[@name='a' or @name='d']", doc, 0);
+        assertXpath("/x:server/x:subsystem[@name='b']", doc, 1);
+        assertXpath("/x:server/x:subsystem[@name='c']", doc, 1);
+    }
+
+    @Test(expected = XPathExpressionException.class)
+    public void invalidCondition() throws Exception {
+        XmlConfigBuilder builder = new XmlConfigBuilder(getResourceFile("rootNS.xml"), getTempFile());
+        builder.remove(new Remove("/server").withWhen("/serv hello?"));
+    }
+
+    /**
+     * large content is streamed into target document, result must be same as if it was parsed
+     */
+    @Test
+    public void testStreamedContent() throws Exception {
+        File content = new File(System.getProperty("java.io.tmpdir"), "streamed-content.xml");
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- generated -->\n");
+        sb.append("<subsystem xmlns=\"urn:big\" xmlns:k=\"keepme\" name=\"${tenant}\">\n");
+        for (int i = 0; sb.length() < XmlConfigBuilder.STREAMING_THRESHOLD; i++) {
+            sb.append("    <child k:attr=\"").append(i).append("\" value=\"${tenant}-&amp;-č\">text ${tenant} &lt;").append(i)
+                    .append("&gt;<![CDATA[<raw/>]]><!-- c --><?pi data?></child>\n");
+        }
+        sb.append("</subsystem>\n");
+        FileUtils.fileWrite(content.getAbsolutePath(), "UTF-8", sb.toString());
+        Properties tenant = new Properties();
+        tenant.setProperty("tenant", "t1");
+
+        SnippetTemplate streamed = SnippetTemplate.streamed(content);
+        SnippetTemplate parsed = new SnippetTemplate(dBuilder.parse(content));
+        Assert.assertTrue(streamed.isStreamed());
+        Assert.assertEquals(parsed.getRootName(), streamed.getRootName());
+        Assert.assertEquals("urn:big", streamed.getNamespace());
+        Document owner = xml("<server/>");
+        Assert.assertTrue(parsed.instantiate(owner, tenant).isEqualNode(streamed.instantiate(owner, tenant)));
+        Assert.assertTrue(parsed.instantiate(owner, null).isEqualNode(streamed.instantiate(owner, null)));
+
+        XmlConfigBuilder builder = new XmlConfigBuilder(getResourceFile("rootNS.xml"), getTempFile());
+        builder.insert(new Insert("/server", content).withAttribute("name").withParameters(tenant));
+        builder.insert(new Insert("/server", "<subsystem name=\"č\"/>").withAttribute("name"));
+        builder.build();
+        Document doc = dBuilder.parse(builder.getTargetFile());
+        xpath.setNamespaceContext(new NamespaceContextImpl().mapping("x", "urn:jboss:domain:2.1").mapping("b", "urn:big").mapping("k", "keepme"));
+        assertXpath("/x:server/b:subsystem[@name='t1']/b:child[@k:attr='0' and @value='t1-&-č']", doc, 1);
+        assertXpath("/x:server/x:subsystem[@name='č']", doc, 1);
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        XmlConfigBuilder builder = new XmlConfigBuilder(getResourceFile("rootNS.xml"), getTempFile());
+        builder.insert(new Insert("/server", getResourceFile("content1Append.xml")));
+        builder.build();
+        Assert.assertEquals(XmlConfigBuilder.Strategy.DOM, builder.getStrategy());
+        Assert.assertTrue(builder.isFormatted());
+        Assert.assertTrue(builder.getPeakMemory() > 0);
+
+        // does not fit, content is streamed
+        builder = new XmlConfigBuilder(getResourceFile("rootNS.xml"), getTempFile()).memoryBudget(1);
+        builder.insert(new Insert("/server", getResourceFile("content1Append.xml")));
+        Assert.assertEquals(getResourceFile("rootNS.xml").length() * XmlConfigBuilder.DOM_COST_FACTOR
+                + getResourceFile("content1Append.xml").length() * XmlConfigBuilder.DOM_COST_FACTOR, builder.estimateCost());
+        builder.build();
+        Assert.assertEquals(XmlConfigBuilder.Strategy.STREAMING, builder.getStrategy());
+        Document doc = dBuilder.parse(builder.getTargetFile());
+        xpath.setNamespaceContext(new NamespaceContextImpl().mapping("x", "urn:jboss:domain:2.1"));
+        assertXpath("/x:server/x:subsystem[@name='foobar']", doc, 1);
+    }
+
+    @Test
+    public void testValidateReportsAllFailures() throws Exception {
+        File target = getTempFile();
+        target.delete();
+        XmlConfigBuilder builder = new XmlConfigBuilder(getResourceFile("root.xml"), target).failNoMatch(true);
+        builder.insert(new Insert("/server/nothing", "<foo/>"));
+        builder.insert(new Insert("/server", "<broken>"));
+        builder.remove(new Remove("/server/nothing-else"));
+        builder.insert(new Insert("/server", getResourceFile("content1Append.xml")));
+        try {
+            builder.build();
+            Assert.fail("Validation should fail");
+        } catch (Exception e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("select=/server/nothing "));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("xml=<broken>"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("select=/server/nothing-else"));
+            Assert.assertFalse(e.getMessage(), e.getMessage().contains("content1Append.xml"));
+        }
+        Assert.assertFalse(target.exists());
+    }
+
     @Test(expected = XPathExpressionException.class)
     public void invalidSelect() throws Exception {
         XmlConfigBuilder builder = new XmlConfigBuilder(getResourceFile("rotNS.xml"), getTempFile());